@@ -20,8 +20,12 @@
 
 package grondag.canvas.apiimpl;
 
+import java.util.Set;
+
 import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.client.resources.language.I18n;
+import net.minecraft.resources.ResourceLocation;
 
 import io.vram.frex.base.renderer.ao.AoFace;
 
@@ -29,6 +33,7 @@ import grondag.canvas.CanvasMod;
 import grondag.canvas.apiimpl.rendercontext.CanvasBlockRenderContext;
 import grondag.canvas.apiimpl.rendercontext.CanvasEntityBlockRenderContext;
 import grondag.canvas.apiimpl.rendercontext.CanvasItemRenderContext;
+import grondag.canvas.buffer.format.TerrainEncoder;
 import grondag.canvas.config.Configurator;
 import grondag.canvas.material.property.TextureMaterialState;
 import grondag.canvas.perf.ChunkRebuildCounters;
@@ -46,6 +51,14 @@ import grondag.canvas.terrain.util.ChunkColorCache;
 
 public class CanvasState {
 	public static void recompileIfNeeded(boolean forceRecompile) {
+		recompileIfNeeded(forceRecompile, false);
+	}
+
+	/**
+	 * @param rebuildTerrain true when all terrain regions are rebuilt afterwards, so the terrain
+	 * vertex format can change. Otherwise a format change triggers a full reload instead.
+	 */
+	public static void recompileIfNeeded(boolean forceRecompile, boolean rebuildTerrain) {
 		while (CanvasMod.RECOMPILE.consumeClick()) {
 			forceRecompile = true;
 		}
@@ -54,11 +67,25 @@ public class CanvasState {
 			CanvasMod.LOG.info(I18n.get("info.canvas.recompile"));
 			PipelineLoader.reload(Minecraft.getInstance().getResourceManager());
 			PipelineManager.reload();
+
+			if (TerrainEncoder.needsReload()) {
+				final LevelRenderer levelRenderer = Minecraft.getInstance().levelRenderer;
+
+				if (rebuildTerrain || levelRenderer == null) {
+					TerrainEncoder.reload();
+				} else {
+					// terrain already built in the old format can't be drawn by programs for the new one
+					levelRenderer.allChanged();
+					return;
+				}
+			}
+
 			PreReleaseShaderCompat.reload();
 			MaterialProgram.reload();
-			GlShaderManager.INSTANCE.reload();
-			GlProgramManager.INSTANCE.reload();
-			GlMaterialProgramManager.INSTANCE.reload();
+			final Set<ResourceLocation> changedShaderFiles = GlShaderManager.INSTANCE.reload();
+			GlProgramManager.INSTANCE.reload(changedShaderFiles);
+			GlMaterialProgramManager.INSTANCE.reload(changedShaderFiles);
+			GlShaderManager.INSTANCE.assembleSources();
 			// LightmapHdTexture.reload();
 			// LightmapHd.reload();
 			TextureMaterialState.reload();
@@ -23,6 +23,7 @@ package grondag.canvas.apiimpl.rendercontext.encoder;
 import io.vram.frex.api.model.InputContext;
 import io.vram.frex.base.renderer.mesh.BaseQuadEmitter;
 
+import grondag.canvas.buffer.format.QuadPositionTransform;
 import grondag.canvas.buffer.format.TerrainEncoder;
 import grondag.canvas.buffer.input.VertexCollectorList;
 import grondag.canvas.material.state.CanvasRenderMaterial;
@@ -33,6 +34,9 @@ public class TerrainQuadEncoder extends BaseQuadEncoder {
 	/** Used by some terrain render configs to pass a region ID into vertex encoding. */
 	private int sectorId;
 	private int sectorRelativeRegionOrigin;
+	private final QuadPositionTransform positionTransform = new QuadPositionTransform();
+	/** Model-space x, y, z for four vertices, transformed in place during encoding. */
+	private final float[] quadPositions = new float[12];
 
 	public TerrainQuadEncoder(BaseQuadEmitter emitter, InputContext inputContext) {
 		super(emitter, inputContext);
@@ -57,6 +61,14 @@ public class TerrainQuadEncoder extends BaseQuadEncoder {
 		TerrainEncoder.encodeQuad(this, collectors.get((CanvasRenderMaterial) emitter.material()));
 	}
 
+	public QuadPositionTransform positionTransform() {
+		return positionTransform;
+	}
+
+	public float[] quadPositions() {
+		return quadPositions;
+	}
+
 	public BaseQuadEmitter emitter() {
 		return emitter;
 	}
@@ -76,6 +76,17 @@ public class CanvasVertexFormat {
 		}
 	}
 
+	/** Attribute names in binding order. Identifies the bindings made by {@link #bindProgramAttributes(int)}. */
+	public String attributeKey() {
+		final StringBuilder builder = new StringBuilder();
+
+		for (final CanvasVertexFormatElement e : elements) {
+			builder.append(e.attributeName).append(',');
+		}
+
+		return builder.toString();
+	}
+
 	public int attributeCount() {
 		return elements.length;
 	}
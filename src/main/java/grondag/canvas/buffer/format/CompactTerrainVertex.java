@@ -0,0 +1,198 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.buffer.format;
+
+/**
+ * Bit packing for the optional 16-byte terrain vertex format.  Kept free of game
+ * and GL dependencies so the encoding can be checked in isolation.
+ *
+ * <p>Layout, one vertex per four ints:
+ * <pre>
+ * 0: x (16) | y (16)
+ * 1: z (16) | sector id (9) | normal x (4) | alpha (3)
+ * 2: RGB 565 color (16) | material (16)
+ * 3: u (8) | v (8) | block light (4) | sky light (4) | ao (4) | normal y (4)
+ * </pre>
+ *
+ * <p>Positions are relative to the padded sector origin, same as the full format,
+ * but with 1/256 block precision.  UV is sprite-normalized with 8 bits per axis,
+ * light and AO are quantized to 16 levels and normals are octahedral-encoded with 15 levels per axis.
+ * Tangents are not stored and are derived from the normal in the vertex shader.
+ * These losses are why the format is opt-in.
+ */
+public final class CompactTerrainVertex {
+	private CompactTerrainVertex() { }
+
+	public static final int VERTEX_STRIDE_INTS = 4;
+	public static final int QUAD_STRIDE_INTS = VERTEX_STRIDE_INTS * 4;
+
+	static final float POSITION_SCALE = 256f;
+	private static final float INVERSE_POSITION_SCALE = 1f / POSITION_SCALE;
+	private static final int MAX_POSITION = 0xFFFF;
+	private static final int NORMAL_LEVELS = 7;
+
+	public static void encodeVertex(int[] target, int index, float x, float y, float z, int sectorId, int packedNormal, int color, int u, int v, int blockLight, int skyLight, int ao, int material) {
+		assert sectorId >= 0 && sectorId < 0x200;
+		assert material >= 0 && material <= 0xFFFF;
+
+		final int alpha = ((color >>> 24) * 7 + 127) / 255;
+		final int octNormal = packNormal(packedNormal);
+
+		target[index] = packPosition(x) | (packPosition(y) << 16);
+
+		target[index + 1] = packPosition(z) | (sectorId << 16)
+				| (octNormal & 0xF) << 25
+				| alpha << 29;
+
+		target[index + 2] = packColor(color) | (material << 16);
+
+		target[index + 3] = packUv(u) | (packUv(v) << 8)
+				| (packLight(blockLight) << 16)
+				| (packLight(skyLight) << 20)
+				| (packAo(ao) << 24)
+				| ((octNormal >> 4) << 28);
+	}
+
+	static int packPosition(float pos) {
+		final int result = Math.round(pos * POSITION_SCALE);
+		return result < 0 ? 0 : result > MAX_POSITION ? MAX_POSITION : result;
+	}
+
+	/** Packs an ABGR color to RGB 565, dropping alpha. */
+	static int packColor(int color) {
+		final int r = ((color & 0xFF) * 31 + 127) / 255;
+		final int g = (((color >> 8) & 0xFF) * 63 + 127) / 255;
+		final int b = (((color >> 16) & 0xFF) * 31 + 127) / 255;
+		return (r << 11) | (g << 5) | b;
+	}
+
+	/** Input is a normalized 16-bit texture coordinate, as written to the full format. */
+	private static int packUv(int uv) {
+		return (uv * 0xFF + 0x7FFF) / 0xFFFF;
+	}
+
+	/** Input is 0-255. */
+	private static int packAo(int ao) {
+		return (ao * 15 + 127) / 255;
+	}
+
+	/** Input is a lightmap coordinate in the 0-240 range. */
+	private static int packLight(int light) {
+		final int result = (light + 8) >> 4;
+		return result > 15 ? 15 : result;
+	}
+
+	/**
+	 * Input is a packed normal with signed bytes for x, y and z.
+	 * Output is octahedral x in the low four bits and y in the next four.
+	 */
+	static int packNormal(int packedNormal) {
+		float x = (byte) packedNormal;
+		float y = (byte) (packedNormal >> 8);
+		final float z = (byte) (packedNormal >> 16);
+		final float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+		if (l1 == 0) {
+			return NORMAL_LEVELS | (NORMAL_LEVELS << 4);
+		}
+
+		x /= l1;
+		y /= l1;
+
+		if (z < 0) {
+			final float ox = (1 - Math.abs(y)) * (x >= 0 ? 1 : -1);
+			y = (1 - Math.abs(x)) * (y >= 0 ? 1 : -1);
+			x = ox;
+		}
+
+		return (Math.round(x * NORMAL_LEVELS) + NORMAL_LEVELS) | ((Math.round(y * NORMAL_LEVELS) + NORMAL_LEVELS) << 4);
+	}
+
+	public static float x(int[] data, int index) {
+		return (data[index] & 0xFFFF) * INVERSE_POSITION_SCALE;
+	}
+
+	public static float y(int[] data, int index) {
+		return (data[index] >>> 16) * INVERSE_POSITION_SCALE;
+	}
+
+	public static float z(int[] data, int index) {
+		return (data[index + 1] & 0xFFFF) * INVERSE_POSITION_SCALE;
+	}
+
+	public static int sectorId(int[] data, int index) {
+		return (data[index + 1] >> 16) & 0x1FF;
+	}
+
+	/** Decodes color as ABGR, matching the byte order of the full format. */
+	public static int color(int[] data, int index) {
+		final int rgb = data[index + 2] & 0xFFFF;
+		final int r = ((rgb >> 11) * 255 + 15) / 31;
+		final int g = (((rgb >> 5) & 0x3F) * 255 + 31) / 63;
+		final int b = ((rgb & 0x1F) * 255 + 15) / 31;
+		final int a = ((data[index + 1] >>> 29) * 255 + 3) / 7;
+		return r | (g << 8) | (b << 16) | (a << 24);
+	}
+
+	public static int material(int[] data, int index) {
+		return data[index + 2] >>> 16;
+	}
+
+	public static float u(int[] data, int index) {
+		return (data[index + 3] & 0xFF) / 255f;
+	}
+
+	public static float v(int[] data, int index) {
+		return ((data[index + 3] >> 8) & 0xFF) / 255f;
+	}
+
+	/** Lightmap coordinate in the 0-240 range. */
+	public static int blockLight(int[] data, int index) {
+		return ((data[index + 3] >> 16) & 0xF) << 4;
+	}
+
+	/** Lightmap coordinate in the 0-240 range. */
+	public static int skyLight(int[] data, int index) {
+		return ((data[index + 3] >> 20) & 0xF) << 4;
+	}
+
+	public static float ao(int[] data, int index) {
+		return ((data[index + 3] >> 24) & 0xF) / 15f;
+	}
+
+	/** Decodes the normal the same way as the vertex shader. */
+	public static void normal(int[] data, int index, float[] out) {
+		float x = (((data[index + 1] >> 25) & 0xF) - NORMAL_LEVELS) / (float) NORMAL_LEVELS;
+		float y = ((data[index + 3] >>> 28) - NORMAL_LEVELS) / (float) NORMAL_LEVELS;
+		final float z = 1 - Math.abs(x) - Math.abs(y);
+
+		if (z < 0) {
+			final float ox = (1 - Math.abs(y)) * (x >= 0 ? 1 : -1);
+			y = (1 - Math.abs(x)) * (y >= 0 ? 1 : -1);
+			x = ox;
+		}
+
+		final float scale = 1f / (float) Math.sqrt(x * x + y * y + z * z);
+		out[0] = x * scale;
+		out[1] = y * scale;
+		out[2] = z * scale;
+	}
+}
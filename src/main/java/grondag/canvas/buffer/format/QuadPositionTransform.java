@@ -0,0 +1,126 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.buffer.format;
+
+import io.vram.frex.api.math.FastMatrix4f;
+
+/**
+ * Transforms the four vertex positions of a quad by a model matrix, with specialised
+ * paths for the identity and translate-only matrices used for nearly all terrain.
+ *
+ * <p>Specialised paths skip the multiplies but keep the translation as a float add,
+ * so output matches a full affine transform and encodes to identical vertex data.
+ * Not thread-safe - use one instance per encoder.
+ */
+public final class QuadPositionTransform {
+	public static final int GENERAL = 0;
+	public static final int TRANSLATE = 1;
+	public static final int IDENTITY = 2;
+
+	private float m00, m01, m02;
+	private float m10, m11, m12;
+	private float m20, m21, m22;
+	private float m30, m31, m32;
+	private int mode = IDENTITY;
+
+	/** Captures the affine components of the matrix. Call once per quad before {@link #transform(float[])}. */
+	public void prepare(FastMatrix4f matrix) {
+		set(matrix.f_m00(), matrix.f_m01(), matrix.f_m02(),
+			matrix.f_m10(), matrix.f_m11(), matrix.f_m12(),
+			matrix.f_m20(), matrix.f_m21(), matrix.f_m22(),
+			matrix.f_m30(), matrix.f_m31(), matrix.f_m32());
+	}
+
+	public void set(float m00, float m01, float m02, float m10, float m11, float m12, float m20, float m21, float m22, float m30, float m31, float m32) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m02 = m02;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.m12 = m12;
+		this.m20 = m20;
+		this.m21 = m21;
+		this.m22 = m22;
+		this.m30 = m30;
+		this.m31 = m31;
+		this.m32 = m32;
+
+		if (m00 == 1f && m11 == 1f && m22 == 1f && m01 == 0f && m02 == 0f && m10 == 0f && m12 == 0f && m20 == 0f && m21 == 0f) {
+			mode = m30 == 0f && m31 == 0f && m32 == 0f ? IDENTITY : TRANSLATE;
+		} else {
+			mode = GENERAL;
+		}
+	}
+
+	public int mode() {
+		return mode;
+	}
+
+	/**
+	 * Transforms x, y, z for four vertices in place.
+	 *
+	 * <p>For finite input, {@code 1 * x + 0 * y + 0 * z + t} is exactly {@code x + t},
+	 * which is why the translate path matches the general path.  The only possible
+	 * difference is the sign of a zero result, which encodes the same.
+	 */
+	public void transform(float[] xyz) {
+		switch (mode) {
+			case IDENTITY:
+				break;
+
+			case TRANSLATE: {
+				final float tx = m30;
+				final float ty = m31;
+				final float tz = m32;
+				xyz[0] += tx;
+				xyz[1] += ty;
+				xyz[2] += tz;
+				xyz[3] += tx;
+				xyz[4] += ty;
+				xyz[5] += tz;
+				xyz[6] += tx;
+				xyz[7] += ty;
+				xyz[8] += tz;
+				xyz[9] += tx;
+				xyz[10] += ty;
+				xyz[11] += tz;
+				break;
+			}
+
+			default:
+				transformGeneral(xyz, 0);
+				transformGeneral(xyz, 3);
+				transformGeneral(xyz, 6);
+				transformGeneral(xyz, 9);
+				break;
+		}
+	}
+
+	private void transformGeneral(float[] xyz, int i) {
+		final float x = xyz[i];
+		final float y = xyz[i + 1];
+		final float z = xyz[i + 2];
+
+		xyz[i] = m00 * x + m10 * y + m20 * z + m30;
+		xyz[i + 1] = m01 * x + m11 * y + m21 * z + m31;
+		xyz[i + 2] = m02 * x + m12 * y + m22 * z + m32;
+	}
+}
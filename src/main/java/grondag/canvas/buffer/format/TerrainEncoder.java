@@ -44,12 +44,13 @@ import net.minecraft.util.Mth;
 
 import io.vram.frex.api.material.MaterialConstants;
 import io.vram.frex.api.math.FastMatrix3f;
-import io.vram.frex.api.math.FastMatrix4f;
 import io.vram.frex.base.renderer.mesh.MeshEncodingHelper;
 
 import grondag.canvas.apiimpl.rendercontext.encoder.TerrainQuadEncoder;
 import grondag.canvas.buffer.input.VertexCollector;
+import grondag.canvas.config.Configurator;
 import grondag.canvas.material.state.CanvasRenderMaterial;
+import grondag.canvas.pipeline.Pipeline;
 
 public class TerrainEncoder {
 	private TerrainEncoder() { }
@@ -71,12 +72,49 @@ public class TerrainEncoder {
 
 	private static final int TERRAIN_VERTEX_STRIDE = TERRAIN_MATERIAL.vertexStrideInts;
 
+	private static final CanvasVertexFormatElement COMPACT_4UI = new CanvasVertexFormatElement(VertexFormatElement.Type.UINT, 4, "in_compact", false, true);
+
+	/**
+	 * Optional 16-byte terrain format.  Trades position, UV, color, light and normal
+	 * precision for memory and bandwidth, and drops tangents.  See {@link CompactTerrainVertex}.
+	 */
+	public static final CanvasVertexFormat TERRAIN_COMPACT = new CanvasVertexFormat(COMPACT_4UI);
+
+	private static CanvasVertexFormat terrainFormat = TERRAIN_MATERIAL;
+
+	static {
+		assert TERRAIN_COMPACT.vertexStrideInts == CompactTerrainVertex.VERTEX_STRIDE_INTS;
+	}
+
+	/** Format used for terrain collectors, programs and slabs created after the last full terrain rebuild. */
+	public static CanvasVertexFormat terrainFormat() {
+		return terrainFormat;
+	}
+
+	public static boolean isCompact() {
+		return terrainFormat == TERRAIN_COMPACT;
+	}
+
+	/** Pipelines that enable PBR need real tangents, so they always get the full format. */
+	private static CanvasVertexFormat configuredFormat() {
+		return Configurator.compactTerrainVertices && !Pipeline.config().enablePBR ? TERRAIN_COMPACT : TERRAIN_MATERIAL;
+	}
+
+	/** True when config or pipeline now call for a different format than terrain was built with. */
+	public static boolean needsReload() {
+		return configuredFormat() != terrainFormat;
+	}
+
+	/** Call only when all terrain will be rebuilt. Regions already built can't be drawn in another format. */
+	public static void reload() {
+		terrainFormat = configuredFormat();
+	}
+
 	public static void encodeQuad(TerrainQuadEncoder encoder, VertexCollector buff) {
 		final var quad = encoder.emitter();
 		final var inputContext = encoder.inputContext();
 
 		final var matrixStack = inputContext.matrixStack();
-		final FastMatrix4f matrix = matrixStack.modelMatrix();
 		final FastMatrix3f normalMatrix = matrixStack.normalMatrix();
 
 		final boolean isNormalMatrixUseful = !normalMatrix.f_isIdentity();
@@ -94,6 +132,7 @@ public class TerrainEncoder {
 		int normalSignBit = 0;
 		int packedNormal = 0;
 		int transformedNormal = 0;
+		int fullNormal = 0;
 
 		final int quadTangetFlags = quad.tangentFlags();
 		final int faceTangent = quadTangetFlags == 0b1111 ? 0 : quad.packedFaceTanget();
@@ -107,6 +146,8 @@ public class TerrainEncoder {
 		final boolean unlit = mat.unlit();
 
 		final int[] target = buff.target();
+		// Collectors created before a format change keep their stride, so check the collector and not the config
+		final boolean compact = target.length == CompactTerrainVertex.QUAD_STRIDE_INTS;
 		final int baseSourceIndex = quad.vertexStart();
 		final int[] source = quad.data();
 
@@ -115,19 +156,33 @@ public class TerrainEncoder {
 		assert sectorId >= 0;
 		final int sectorRelativeRegionOrigin = encoder.sectorRelativeRegionOrigin();
 
+		// Transform all four positions at once - during terrain builds the model matrix
+		// is nearly always translate-only, which skips the multiplies entirely.
+		final float[] pos = encoder.quadPositions();
+
+		for (int i = 0, j = baseSourceIndex; i < 12; i += 3, j += MESH_VERTEX_STRIDE) {
+			pos[i] = Float.intBitsToFloat(source[j + VERTEX_X]);
+			pos[i + 1] = Float.intBitsToFloat(source[j + VERTEX_Y]);
+			pos[i + 2] = Float.intBitsToFloat(source[j + VERTEX_Z]);
+		}
+
+		final QuadPositionTransform transform = encoder.positionTransform();
+		transform.prepare(matrixStack.modelMatrix());
+		transform.transform(pos);
+
 		for (int i = 0; i < 4; i++) {
 			final int vertexMask = 1 << i;
 			final int fromIndex = baseSourceIndex + i * MESH_VERTEX_STRIDE;
-			final int toIndex = i * TERRAIN_VERTEX_STRIDE;
+			final int toIndex = i * (compact ? CompactTerrainVertex.VERTEX_STRIDE_INTS : TERRAIN_VERTEX_STRIDE);
 
 			// We do this here because we need to pack the normal Z sign bit with sector ID
 			final int p = ((quadNormalFlags & vertexMask) == 0) ? faceNormal : source[fromIndex + VERTEX_NORMAL];
 
 			if (p != packedNormal) {
 				packedNormal = p;
-				transformedNormal = isNormalMatrixUseful ? normalMatrix.f_transformPacked3f(packedNormal) : packedNormal;
-				normalSignBit = (transformedNormal >>> 10) & 0x2000;
-				transformedNormal = transformedNormal & 0xFFFF;
+				fullNormal = isNormalMatrixUseful ? normalMatrix.f_transformPacked3f(packedNormal) : packedNormal;
+				normalSignBit = (fullNormal >>> 10) & 0x2000;
+				transformedNormal = fullNormal & 0xFFFF;
 			}
 
 			// We do this here because we need to pack the tangent Z sign bit with sector ID
@@ -140,14 +195,27 @@ public class TerrainEncoder {
 				transformedTangent = transformedTangent << 16;
 			}
 
-			// PERF: Consider fixed precision integer math
-			final float x = Float.intBitsToFloat(source[fromIndex + VERTEX_X]);
-			final float y = Float.intBitsToFloat(source[fromIndex + VERTEX_Y]);
-			final float z = Float.intBitsToFloat(source[fromIndex + VERTEX_Z]);
+			final float xOut = pos[i * 3];
+			final float yOut = pos[i * 3 + 1];
+			final float zOut = pos[i * 3 + 2];
 
-			final float xOut = matrix.f_m00() * x + matrix.f_m10() * y + matrix.f_m20() * z + matrix.f_m30();
-			final float yOut = matrix.f_m01() * x + matrix.f_m11() * y + matrix.f_m21() * z + matrix.f_m31();
-			final float zOut = matrix.f_m02() * x + matrix.f_m12() * y + matrix.f_m22() * z + matrix.f_m32();
+			// TODO: should probably pass unlit as a flag vs forcing lightmap
+			final int packedLight = unlit ? MeshEncodingHelper.FULL_BRIGHTNESS : source[fromIndex + VERTEX_LIGHTMAP];
+			final int blockLight = packedLight & 0xFF;
+			final int skyLight = (packedLight >> 16) & 0xFF;
+
+			final int u = (source[fromIndex + VERTEX_U] + UV_ROUNDING_BIT) >> UV_EXTRA_PRECISION;
+			final int v = (source[fromIndex + VERTEX_V] + UV_ROUNDING_BIT) >> UV_EXTRA_PRECISION;
+
+			if (compact) {
+				CompactTerrainVertex.encodeVertex(target, toIndex,
+						xOut + (sectorRelativeRegionOrigin & 0xFF),
+						yOut + ((sectorRelativeRegionOrigin >> 8) & 0xFF),
+						zOut + ((sectorRelativeRegionOrigin >> 16) & 0xFF),
+						sectorId, fullNormal, source[fromIndex + VERTEX_COLOR], u, v, blockLight, skyLight,
+						aoDisabled ? 0xFF : aoData[i], material >>> 16);
+				continue;
+			}
 
 			int xInt = Mth.floor(xOut);
 			int yInt = Mth.floor(yOut);
@@ -170,13 +238,7 @@ public class TerrainEncoder {
 
 			target[toIndex + 3] = source[fromIndex + VERTEX_COLOR];
 
-			target[toIndex + 4] = (source[fromIndex + VERTEX_U] + UV_ROUNDING_BIT) >> UV_EXTRA_PRECISION
-					| ((source[fromIndex + VERTEX_V] + UV_ROUNDING_BIT) >> UV_EXTRA_PRECISION << 16);
-
-			// TODO: should probably pass unlit as a flag vs forcing lightmap
-			final int packedLight = unlit ? MeshEncodingHelper.FULL_BRIGHTNESS : source[fromIndex + VERTEX_LIGHTMAP];
-			final int blockLight = packedLight & 0xFF;
-			final int skyLight = (packedLight >> 16) & 0xFF;
+			target[toIndex + 4] = u | (v << 16);
 			target[toIndex + 5] = blockLight | (skyLight << 8) | material;
 
 			target[toIndex + 6] = transformedNormal | transformedTangent;
@@ -23,7 +23,6 @@ package grondag.canvas.buffer.input;
 import java.nio.IntBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import net.minecraft.util.Mth;
 import net.minecraft.world.phys.Vec3;
 
 import grondag.canvas.buffer.render.TransferBuffer;
@@ -31,30 +30,42 @@ import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
 
 public abstract class ArrayVertexCollector extends BaseVertexCollector {
-	protected int capacity = 1024;
-	protected int[] vertexData = new int[capacity];
+	/** Borrowed from {@link IntArrayPool} on first use and kept until {@link #releaseStorage()}. */
+	protected int capacity = 0;
+	protected int[] vertexData = IntArrayPool.EMPTY;
 
 	public ArrayVertexCollector(RenderState renderState, int[] target) {
 		super(renderState, target);
 		arrayCount.incrementAndGet();
-		arryBytes.addAndGet(capacity);
 	}
 
 	protected final void grow(int newSize) {
-		final int oldCapacity = capacity;
-
-		if (newSize > oldCapacity) {
-			final int newCapacity = Mth.smallestEncompassingPowerOfTwo(newSize);
-			final int[] newData = new int[newCapacity];
-			System.arraycopy(vertexData, 0, newData, 0, oldCapacity);
-			arryBytes.addAndGet(newCapacity - oldCapacity);
-			capacity = newCapacity;
+		if (newSize > capacity) {
+			final int[] newData = IntArrayPool.claim(newSize);
+
+			if (integerSize > 0) {
+				System.arraycopy(vertexData, 0, newData, 0, integerSize);
+			}
+
+			IntArrayPool.release(vertexData);
+			capacity = newData.length;
 			vertexData = newData;
 		}
 	}
 
 	@Override
-	public final void commit(int size) {
+	public void releaseStorage() {
+		assert integerSize == 0;
+
+		if (capacity != 0) {
+			IntArrayPool.release(vertexData);
+			vertexData = IntArrayPool.EMPTY;
+			capacity = 0;
+		}
+	}
+
+	@Override
+	public void commit(int size) {
 		final int targetIndex = integerSize;
 		final int newSize = targetIndex + size;
 		grow(newSize);
@@ -63,15 +74,20 @@ public abstract class ArrayVertexCollector extends BaseVertexCollector {
 	}
 
 	@Override
-	public final void toBuffer(IntBuffer intBuffer) {
+	public void toBuffer(IntBuffer intBuffer) {
 		intBuffer.put(vertexData, 0, integerSize);
 	}
 
 	@Override
-	public final void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex) {
+	public void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex) {
 		targetBuffer.put(vertexData, 0, bufferTargetIndex, integerSize);
 	}
 
+	@Override
+	public TransferBuffer takeTransferBuffer() {
+		return null;
+	}
+
 	@Override
 	public void sortIfNeeded() { }
 
@@ -91,7 +107,7 @@ public abstract class ArrayVertexCollector extends BaseVertexCollector {
 	}
 
 	@Override
-	public final int[] saveState(int[] priorState) {
+	public int[] saveState(int[] priorState) {
 		final int integerSize = this.integerSize;
 
 		if (integerSize == 0) {
@@ -112,7 +128,7 @@ public abstract class ArrayVertexCollector extends BaseVertexCollector {
 	}
 
 	@Override
-	public final void loadState(int[] stateData) {
+	public void loadState(int[] stateData) {
 		clear();
 
 		if (stateData != null) {
@@ -124,9 +140,9 @@ public abstract class ArrayVertexCollector extends BaseVertexCollector {
 	}
 
 	private static AtomicInteger arrayCount = new AtomicInteger();
-	private static AtomicInteger arryBytes = new AtomicInteger();
 
 	public static String debugReport() {
-		return String.format("Vertex collectors: %d %4.1fMb", arrayCount.get(), arryBytes.get() / 1048576f);
+		return String.format("Vertex collectors: %d %4.1fMb peak:%4.1fMb pooled:%4.1fMb",
+				arrayCount.get(), IntArrayPool.borrowedMb(), IntArrayPool.peakBorrowedMb(), IntArrayPool.pooledMb());
 	}
 }
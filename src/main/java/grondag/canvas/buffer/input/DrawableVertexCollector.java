@@ -28,6 +28,7 @@ import org.jetbrains.annotations.Nullable;
 import net.minecraft.world.phys.Vec3;
 
 import grondag.canvas.buffer.render.TransferBuffer;
+import grondag.canvas.buffer.render.TransferBufferChain;
 import grondag.canvas.buffer.util.DrawableStream;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
@@ -39,6 +40,14 @@ public interface DrawableVertexCollector extends VertexCollector {
 
 	void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex);
 
+	/**
+	 * Gives up ownership of vertex data already written to transfer buffers,
+	 * or returns null if the collector holds its data on-heap and must use
+	 * {@link #toBuffer(TransferBuffer, int)} instead.
+	 */
+	@Nullable
+	TransferBuffer takeTransferBuffer();
+
 	void sortIfNeeded();
 
 	boolean sorted();
@@ -55,6 +64,34 @@ public interface DrawableVertexCollector extends VertexCollector {
 		buffer.close();
 	}
 
+	/**
+	 * Chains the transfer buffers of non-empty collectors in order.
+	 * Returns null if the collectors keep their data on-heap.
+	 */
+	@Nullable
+	static TransferBuffer takeTransferBuffers(DrawableVertexCollector... collectors) {
+		TransferBufferChain result = null;
+
+		for (final DrawableVertexCollector c : collectors) {
+			if (!c.isEmpty()) {
+				final TransferBuffer buffer = c.takeTransferBuffer();
+
+				if (buffer == null) {
+					assert result == null : "Mixed direct and on-heap collectors";
+					return null;
+				}
+
+				if (result == null) {
+					result = new TransferBufferChain();
+				}
+
+				result.append(buffer, c.byteSize());
+			}
+		}
+
+		return result;
+	}
+
 	boolean sortTerrainQuads(Vec3 sortPos, RegionRenderSector sector);
 
 	@Nullable
@@ -65,4 +102,10 @@ public interface DrawableVertexCollector extends VertexCollector {
 	FaceBucket[] faceBuckets();
 
 	FaceBucket faceBucket(int index);
+
+	/**
+	 * Returns pooled storage after {@link #clear()}. The collector borrows again when next used.
+	 * For collectors that are cleared rarely; those cleared every frame should keep their storage.
+	 */
+	default void releaseStorage() { }
 }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.buffer.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-thread pool of power-of-two int arrays for vertex collectors.
+ * Collectors borrow when they grow and return arrays they outgrow. Terrain
+ * collectors also return theirs after each region build, so arrays are
+ * recycled across materials and builds instead of being left to the GC.
+ *
+ * <p>Arrays may be returned on a different thread than they were claimed.
+ * They simply join the pool of the returning thread.
+ *
+ * <p>Each thread holds at most {@link #MAX_POOLED_INTS_PER_THREAD} idle ints.
+ * Arrays released past that are left to the GC, so a burst of large
+ * builds can't keep its peak memory pinned.
+ */
+final class IntArrayPool {
+	private IntArrayPool() { }
+
+	static final int[] EMPTY = new int[0];
+
+	private static final int MIN_CLASS_SHIFT = 10;
+	private static final int MAX_CLASS_SHIFT = 22;
+	private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+	/** Limits how many idle arrays of each size a thread can hold. */
+	private static final int MAX_POOLED_PER_CLASS = 8;
+	/** 32MB: one array of the largest pooled size plus as much again in smaller ones. */
+	private static final int MAX_POOLED_INTS_PER_THREAD = 2 << MAX_CLASS_SHIFT;
+
+	private static final AtomicLong borrowedInts = new AtomicLong();
+	private static final AtomicLong pooledInts = new AtomicLong();
+	private static final AtomicLong peakBorrowedInts = new AtomicLong();
+
+	private static class ThreadPool {
+		private final int[][][] arrays = new int[CLASS_COUNT][MAX_POOLED_PER_CLASS][];
+		private final int[] counts = new int[CLASS_COUNT];
+		private int pooledInts;
+	}
+
+	private static final ThreadLocal<ThreadPool> POOLS = ThreadLocal.withInitial(ThreadPool::new);
+
+	private static int sizeClass(int size) {
+		return Math.max(0, 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT);
+	}
+
+	/** Returns an array with length at least {@code minSize}. Contents are undefined. */
+	static int[] claim(int minSize) {
+		assert minSize > 0;
+		final int sizeClass = sizeClass(minSize);
+		int[] result = null;
+
+		if (sizeClass < CLASS_COUNT) {
+			final ThreadPool pool = POOLS.get();
+			final int count = pool.counts[sizeClass];
+
+			if (count > 0) {
+				final int[][] arrays = pool.arrays[sizeClass];
+				result = arrays[count - 1];
+				arrays[count - 1] = null;
+				pool.counts[sizeClass] = count - 1;
+				pool.pooledInts -= result.length;
+				pooledInts.addAndGet(-result.length);
+			}
+		}
+
+		if (result == null) {
+			result = new int[sizeClass < CLASS_COUNT ? 1 << (sizeClass + MIN_CLASS_SHIFT) : minSize];
+		}
+
+		final long borrowed = borrowedInts.addAndGet(result.length);
+
+		if (borrowed > peakBorrowedInts.get()) {
+			peakBorrowedInts.accumulateAndGet(borrowed, Math::max);
+		}
+
+		return result;
+	}
+
+	/** Gives an array obtained from {@link #claim(int)} back to the pool. */
+	static void release(int[] array) {
+		final int length = array.length;
+
+		if (length == 0) {
+			return;
+		}
+
+		borrowedInts.addAndGet(-length);
+		final int sizeClass = sizeClass(length);
+
+		if (sizeClass < CLASS_COUNT && length == 1 << (sizeClass + MIN_CLASS_SHIFT)) {
+			final ThreadPool pool = POOLS.get();
+			final int count = pool.counts[sizeClass];
+
+			if (count < MAX_POOLED_PER_CLASS && pool.pooledInts + length <= MAX_POOLED_INTS_PER_THREAD) {
+				pool.arrays[sizeClass][count] = array;
+				pool.counts[sizeClass] = count + 1;
+				pool.pooledInts += length;
+				pooledInts.addAndGet(length);
+			}
+		}
+	}
+
+	static float borrowedMb() {
+		return borrowedInts.get() * 4 / 1048576f;
+	}
+
+	static float pooledMb() {
+		return pooledInts.get() * 4 / 1048576f;
+	}
+
+	static float peakBorrowedMb() {
+		return peakBorrowedInts.get() * 4 / 1048576f;
+	}
+}
@@ -31,13 +31,20 @@ import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
 
 public class ShadowVertexCollector extends BaseVertexCollector {
-	protected final SimpleVertexCollector common;
-	protected final SimpleVertexCollector colorOnly;
+	protected final BaseVertexCollector common;
+	protected final BaseVertexCollector colorOnly;
 
 	public ShadowVertexCollector(RenderState renderState, int[] target) {
+		this(renderState, target, false);
+	}
+
+	/**
+	 * @param direct when true quads are written straight to transfer buffers
+	 */
+	public ShadowVertexCollector(RenderState renderState, int[] target, boolean direct) {
 		super(renderState, target);
-		common = new SimpleVertexCollector(renderState, target);
-		colorOnly = new SimpleVertexCollector(renderState, target);
+		common = direct ? new TransferVertexCollector(renderState, target) : new SimpleVertexCollector(renderState, target);
+		colorOnly = direct ? new TransferVertexCollector(renderState, target) : new SimpleVertexCollector(renderState, target);
 	}
 
 	@Override
@@ -83,15 +90,20 @@ public class ShadowVertexCollector extends BaseVertexCollector {
 	public void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex) {
 		if (!common.isEmpty()) {
 			common.toBuffer(targetBuffer, bufferTargetIndex);
-			bufferTargetIndex += common.integerSize;
+			bufferTargetIndex += common.integerSize();
 		}
 
 		if (!colorOnly.isEmpty()) {
 			colorOnly.toBuffer(targetBuffer, bufferTargetIndex);
-			bufferTargetIndex += colorOnly.integerSize;
+			bufferTargetIndex += colorOnly.integerSize();
 		}
 	}
 
+	@Override
+	public @Nullable TransferBuffer takeTransferBuffer() {
+		return DrawableVertexCollector.takeTransferBuffers(common, colorOnly);
+	}
+
 	@Override
 	public void sortIfNeeded() {
 		// NOOP
@@ -107,6 +119,12 @@ public class ShadowVertexCollector extends BaseVertexCollector {
 		throw new UnsupportedOperationException("ShadowVertexCollector vertex collector does not support sortTerrainQuads.");
 	}
 
+	@Override
+	public void releaseStorage() {
+		common.releaseStorage();
+		colorOnly.releaseStorage();
+	}
+
 	@Override
 	public @Nullable int[] saveState(@Nullable int[] translucentState) {
 		throw new UnsupportedOperationException("ShadowVertexCollector vertex collector does not support saveState.");
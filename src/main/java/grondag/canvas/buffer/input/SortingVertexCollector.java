@@ -20,27 +20,83 @@
 
 package grondag.canvas.buffer.input;
 
+import java.util.Arrays;
+
 import it.unimi.dsi.fastutil.Swapper;
 import it.unimi.dsi.fastutil.ints.IntComparator;
 
 import net.minecraft.util.Mth;
 import net.minecraft.world.phys.Vec3;
 
+import grondag.canvas.buffer.format.CompactTerrainVertex;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
+import grondag.canvas.terrain.region.RegionPosition;
+import grondag.canvas.terrain.region.TranslucentSortBounds;
 
+/**
+ * Collector for translucent quads that must be drawn back-to-front.
+ *
+ * <p>Quads are never reordered in place. The collector retains quads in the order
+ * they were first collected and sorting produces a permutation that is applied to
+ * rebuild the vertex data. This makes ties resolve the same way on every sort and
+ * means only changed orderings need to be uploaded.
+ *
+ * <p>When every quad is axis-aligned and the camera is outside the bounds of all quads
+ * on every axis, an approximate order can be chosen by which of the eight octants around the
+ * bounds contains the camera. Orderings for those octants are computed once, retained in
+ * saved state, and reused without sorting. A distance sort still happens inside or near the bounds.
+ */
 public class SortingVertexCollector extends SimpleVertexCollector {
+	/** Camera must be at least this far outside the bounds on every axis to use an octant ordering. */
+	private static final float OCTANT_MARGIN = 1f;
+	private static final int NO_OCTANT = -1;
+	private static final int OCTANT_COUNT = 8;
+
+	private static final int STATE_INT_SIZE = 0;
+	private static final int STATE_OCTANT = 1;
+	private static final int STATE_FLAGS = 2;
+	private static final int STATE_BOUNDS = 3;
+	private static final int STATE_HEADER_INTS = 9;
+	private static final int FLAG_AXIS_ALIGNED = 1 << OCTANT_COUNT;
+
 	private float[] perQuadDistance = new float[512];
-	private final int[] swapData;
-	private boolean didSwap = false;
 	final QuadDistanceFunc distanceFunc;
+	private final boolean isTerrain;
+	private final boolean isCompactTerrain;
+
+	/** Vertex data in original collection order. All orderings are relative to this. */
+	private int[] unsortedData = new int[1024];
+	private boolean hasUnsortedData = false;
+
+	/** Permutation of unsorted quads reflected in current vertex data. */
+	private int[] currentOrder = new int[64];
+	/** Scratch permutation for new sorts. */
+	private int[] sortOrder = new int[64];
+	private int currentOctant = NO_OCTANT;
+
+	private boolean isAxisAligned;
+	private float minX, minY, minZ, maxX, maxY, maxZ;
+
+	/** Orderings for each camera octant, {@code quadCount} entries each. Valid if bit is set in {@link #octantMask}. */
+	private int[] octantOrders = new int[64 * OCTANT_COUNT];
+	private int octantMask;
 
 	public SortingVertexCollector(RenderState renderState, boolean isTerrain, int[] target) {
 		super(renderState, target);
-		swapData = new int[quadStrideInts * 2];
+		this.isTerrain = isTerrain;
+		isCompactTerrain = isTerrain && target.length == CompactTerrainVertex.QUAD_STRIDE_INTS;
 		distanceFunc = isTerrain ? this::getDistanceSqTerrain : this::getDistanceSq;
 	}
 
+	@Override
+	public void clear() {
+		super.clear();
+		hasUnsortedData = false;
+		currentOctant = NO_OCTANT;
+		octantMask = 0;
+	}
+
 	@Override
 	public boolean sortTerrainQuads(Vec3 sortPos, RegionRenderSector sector) {
 		return sortQuads(
@@ -51,26 +107,296 @@ public class SortingVertexCollector extends SimpleVertexCollector {
 	}
 
 	private boolean sortQuads(float x, float y, float z) {
+		captureUnsortedDataIfNeeded();
+
+		final int quadCount = quadCount();
+		final int octant = isAxisAligned ? cameraOctant(x, y, z) : NO_OCTANT;
+
+		if (octant != NO_OCTANT) {
+			if (octant == currentOctant) {
+				return false;
+			}
+
+			if ((octantMask & (1 << octant)) == 0) {
+				computeOctantOrder(octant, quadCount);
+			}
+
+			System.arraycopy(octantOrders, octant * quadCount, sortOrder, 0, quadCount);
+		} else {
+			final QuadDistanceFunc distanceFunc = this.distanceFunc;
+
+			for (int j = 0; j < quadCount; ++j) {
+				perQuadDistance[j] = distanceFunc.compute(x, y, z, j);
+				sortOrder[j] = j;
+			}
+
+			sortByDistance(quadCount);
+		}
+
+		currentOctant = octant;
+
+		if (Arrays.equals(sortOrder, 0, quadCount, currentOrder, 0, quadCount)) {
+			return false;
+		}
+
+		applyOrder(sortOrder, quadCount);
+		return true;
+	}
+
+	/**
+	 * Retains vertex data in collection order and captures bounds and
+	 * alignment of the quads. Subsequent sorts are relative to this data.
+	 */
+	private void captureUnsortedDataIfNeeded() {
+		if (hasUnsortedData) {
+			return;
+		}
+
+		final int integerSize = this.integerSize;
 		final int quadCount = quadCount();
-		final QuadDistanceFunc distanceFunc = this.distanceFunc;
 
+		ensureSortCapacity(quadCount);
+
+		if (unsortedData.length < integerSize) {
+			unsortedData = new int[Mth.smallestEncompassingPowerOfTwo(integerSize)];
+		}
+
+		System.arraycopy(vertexData, 0, unsortedData, 0, integerSize);
+
+		for (int j = 0; j < quadCount; ++j) {
+			currentOrder[j] = j;
+		}
+
+		hasUnsortedData = true;
+		currentOctant = NO_OCTANT;
+		octantMask = 0;
+
+		if (isTerrain) {
+			captureTerrainBounds(quadCount);
+		} else {
+			isAxisAligned = false;
+		}
+	}
+
+	private void ensureSortCapacity(int quadCount) {
 		if (perQuadDistance.length < quadCount) {
 			perQuadDistance = new float[Mth.smallestEncompassingPowerOfTwo(quadCount)];
 		}
 
+		if (currentOrder.length < quadCount) {
+			final int newSize = Mth.smallestEncompassingPowerOfTwo(quadCount);
+			currentOrder = new int[newSize];
+			sortOrder = new int[newSize];
+			octantOrders = new int[newSize * OCTANT_COUNT];
+		}
+	}
+
+	private void captureTerrainBounds(int quadCount) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		boolean isAxisAligned = true;
+		final int[] data = unsortedData;
+
+		for (int q = 0; q < quadCount; ++q) {
+			final int base = q * quadStrideInts;
+			boolean sameX = true, sameY = true, sameZ = true;
+			final float x0 = terrainX(data, base);
+			final float y0 = terrainY(data, base);
+			final float z0 = terrainZ(data, base);
+
+			for (int v = 0, i = base; v < 4; ++v, i += vertexStrideInts) {
+				final float x = terrainX(data, i);
+				final float y = terrainY(data, i);
+				final float z = terrainZ(data, i);
+
+				sameX &= x == x0;
+				sameY &= y == y0;
+				sameZ &= z == z0;
+
+				if (x < minX) minX = x;
+				if (x > maxX) maxX = x;
+				if (y < minY) minY = y;
+				if (y > maxY) maxY = y;
+				if (z < minZ) minZ = z;
+				if (z > maxZ) maxZ = z;
+			}
+
+			isAxisAligned &= sameX | sameY | sameZ;
+		}
+
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		this.isAxisAligned = isAxisAligned;
+	}
+
+	/**
+	 * Octant index with bits 0, 1 and 2 set when camera is on the positive
+	 * side of the bounds for X, Y and Z respectively, or {@link #NO_OCTANT} if
+	 * the camera is within or near the bounds on any axis.
+	 */
+	private int cameraOctant(float x, float y, float z) {
+		int result = 0;
+
+		if (x > maxX + OCTANT_MARGIN) {
+			result |= 1;
+		} else if (x >= minX - OCTANT_MARGIN) {
+			return NO_OCTANT;
+		}
+
+		if (y > maxY + OCTANT_MARGIN) {
+			result |= 2;
+		} else if (y >= minY - OCTANT_MARGIN) {
+			return NO_OCTANT;
+		}
+
+		if (z > maxZ + OCTANT_MARGIN) {
+			result |= 4;
+		} else if (z >= minZ - OCTANT_MARGIN) {
+			return NO_OCTANT;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Approximates back-to-front order for a camera in the given octant by sorting on quad
+	 * centroids projected onto the octant diagonal, most distant first. Like the centroid
+	 * distance sort it replaces, this is a heuristic: overlapping quads of different sizes
+	 * can still be misordered.
+	 *
+	 * <p>The ordering holds only while the camera stays in the same octant and more than
+	 * {@link #OCTANT_MARGIN} outside the bounds. Closer than that, the quads are sorted by
+	 * distance from the camera on every call. Stored orderings are dropped when the quads change.
+	 */
+	private void computeOctantOrder(int octant, int quadCount) {
+		final float sx = (octant & 1) == 0 ? 1 : -1;
+		final float sy = (octant & 2) == 0 ? 1 : -1;
+		final float sz = (octant & 4) == 0 ? 1 : -1;
+		final int[] data = unsortedData;
+
 		for (int j = 0; j < quadCount; ++j) {
-			perQuadDistance[j] = distanceFunc.compute(x, y, z, j);
+			float cx = 0, cy = 0, cz = 0;
+
+			for (int v = 0, i = j * quadStrideInts; v < 4; ++v, i += vertexStrideInts) {
+				cx += terrainX(data, i);
+				cy += terrainY(data, i);
+				cz += terrainZ(data, i);
+			}
+
+			// larger values are farther from the camera
+			perQuadDistance[j] = sx * cx + sy * cy + sz * cz;
+			sortOrder[j] = j;
 		}
 
-		didSwap = false;
+		sortByDistance(quadCount);
+		System.arraycopy(sortOrder, 0, octantOrders, octant * quadCount, quadCount);
+		octantMask |= 1 << octant;
+	}
 
+	private void sortByDistance(int quadCount) {
 		// sort the indexes by distance - farthest first
 		// mergesort is important here - quicksort causes problems
-		// PERF: consider sorting primitive packed long array with distance in high bits
-		// and then use result to reorder the array. Will need to copy vertex data.
 		it.unimi.dsi.fastutil.Arrays.mergeSort(0, quadCount, comparator, swapper);
+	}
+
+	/** Rebuilds vertex data from unsorted data using the given permutation. */
+	private void applyOrder(int[] order, int quadCount) {
+		final int quadStrideInts = this.quadStrideInts;
+		final int[] data = unsortedData;
+		final int[] vertexData = this.vertexData;
+
+		for (int j = 0; j < quadCount; ++j) {
+			System.arraycopy(data, order[j] * quadStrideInts, vertexData, j * quadStrideInts, quadStrideInts);
+		}
+
+		System.arraycopy(order, 0, currentOrder, 0, quadCount);
+	}
+
+	@Override
+	public int[] saveState(int[] priorState) {
+		final int integerSize = this.integerSize;
+
+		if (integerSize == 0) {
+			return null;
+		}
+
+		captureUnsortedDataIfNeeded();
+
+		final int quadCount = quadCount();
+		final int size = STATE_HEADER_INTS + integerSize + quadCount + (isAxisAligned ? quadCount * OCTANT_COUNT : 0);
+		int[] result = priorState;
+
+		if (result == null || result.length != size) {
+			result = new int[size];
+		}
+
+		result[STATE_INT_SIZE] = integerSize;
+		result[STATE_OCTANT] = currentOctant;
+		result[STATE_FLAGS] = octantMask | (isAxisAligned ? FLAG_AXIS_ALIGNED : 0);
+		result[STATE_BOUNDS] = Float.floatToRawIntBits(minX);
+		result[STATE_BOUNDS + 1] = Float.floatToRawIntBits(minY);
+		result[STATE_BOUNDS + 2] = Float.floatToRawIntBits(minZ);
+		result[STATE_BOUNDS + 3] = Float.floatToRawIntBits(maxX);
+		result[STATE_BOUNDS + 4] = Float.floatToRawIntBits(maxY);
+		result[STATE_BOUNDS + 5] = Float.floatToRawIntBits(maxZ);
+
+		int index = STATE_HEADER_INTS;
+		System.arraycopy(unsortedData, 0, result, index, integerSize);
+		index += integerSize;
+		System.arraycopy(currentOrder, 0, result, index, quadCount);
+		index += quadCount;
+
+		if (isAxisAligned) {
+			System.arraycopy(octantOrders, 0, result, index, quadCount * OCTANT_COUNT);
+		}
+
+		return result;
+	}
 
-		return didSwap;
+	@Override
+	public void loadState(int[] stateData) {
+		clear();
+
+		if (stateData != null) {
+			final int size = stateData[STATE_INT_SIZE];
+			final int quadCount = size / quadStrideInts;
+			final int flags = stateData[STATE_FLAGS];
+
+			grow(size);
+			ensureSortCapacity(quadCount);
+
+			if (unsortedData.length < size) {
+				unsortedData = new int[Mth.smallestEncompassingPowerOfTwo(size)];
+			}
+
+			currentOctant = stateData[STATE_OCTANT];
+			octantMask = flags & (FLAG_AXIS_ALIGNED - 1);
+			isAxisAligned = (flags & FLAG_AXIS_ALIGNED) != 0;
+			minX = Float.intBitsToFloat(stateData[STATE_BOUNDS]);
+			minY = Float.intBitsToFloat(stateData[STATE_BOUNDS + 1]);
+			minZ = Float.intBitsToFloat(stateData[STATE_BOUNDS + 2]);
+			maxX = Float.intBitsToFloat(stateData[STATE_BOUNDS + 3]);
+			maxY = Float.intBitsToFloat(stateData[STATE_BOUNDS + 4]);
+			maxZ = Float.intBitsToFloat(stateData[STATE_BOUNDS + 5]);
+
+			int index = STATE_HEADER_INTS;
+			System.arraycopy(stateData, index, unsortedData, 0, size);
+			index += size;
+			System.arraycopy(stateData, index, sortOrder, 0, quadCount);
+			index += quadCount;
+
+			if (isAxisAligned) {
+				System.arraycopy(stateData, index, octantOrders, 0, quadCount * OCTANT_COUNT);
+			}
+
+			integerSize = size;
+			hasUnsortedData = true;
+			applyOrder(sortOrder, quadCount);
+		}
 	}
 
 	private interface QuadDistanceFunc {
@@ -87,44 +413,40 @@ public class SortingVertexCollector extends SimpleVertexCollector {
 	private final Swapper swapper = new Swapper() {
 		@Override
 		public void swap(int a, int b) {
-			didSwap = true;
 			final float distSwap = perQuadDistance[a];
 			perQuadDistance[a] = perQuadDistance[b];
 			perQuadDistance[b] = distSwap;
 
-			final int aIndex = a * quadStrideInts;
-			final int bIndex = b * quadStrideInts;
-
-			System.arraycopy(vertexData, aIndex, swapData, 0, quadStrideInts);
-			System.arraycopy(vertexData, bIndex, swapData, quadStrideInts, quadStrideInts);
-			System.arraycopy(swapData, 0, vertexData, bIndex, quadStrideInts);
-			System.arraycopy(swapData, quadStrideInts, vertexData, aIndex, quadStrideInts);
+			final int orderSwap = sortOrder[a];
+			sortOrder[a] = sortOrder[b];
+			sortOrder[b] = orderSwap;
 		}
 	};
 
 	private float getDistanceSq(float x, float y, float z, int quadIndex) {
-		final int integerStride = quadStrideInts / 4;
+		final int[] data = unsortedData;
+		final int integerStride = vertexStrideInts;
 
 		// unpack vertex coordinates
 		int i = quadIndex * quadStrideInts;
-		final float x0 = Float.intBitsToFloat(vertexData[i]);
-		final float y0 = Float.intBitsToFloat(vertexData[i + 1]);
-		final float z0 = Float.intBitsToFloat(vertexData[i + 2]);
+		final float x0 = Float.intBitsToFloat(data[i]);
+		final float y0 = Float.intBitsToFloat(data[i + 1]);
+		final float z0 = Float.intBitsToFloat(data[i + 2]);
 
 		i += integerStride;
-		final float x1 = Float.intBitsToFloat(vertexData[i]);
-		final float y1 = Float.intBitsToFloat(vertexData[i + 1]);
-		final float z1 = Float.intBitsToFloat(vertexData[i + 2]);
+		final float x1 = Float.intBitsToFloat(data[i]);
+		final float y1 = Float.intBitsToFloat(data[i + 1]);
+		final float z1 = Float.intBitsToFloat(data[i + 2]);
 
 		i += integerStride;
-		final float x2 = Float.intBitsToFloat(vertexData[i]);
-		final float y2 = Float.intBitsToFloat(vertexData[i + 1]);
-		final float z2 = Float.intBitsToFloat(vertexData[i + 2]);
+		final float x2 = Float.intBitsToFloat(data[i]);
+		final float y2 = Float.intBitsToFloat(data[i + 1]);
+		final float z2 = Float.intBitsToFloat(data[i + 2]);
 
 		i += integerStride;
-		final float x3 = Float.intBitsToFloat(vertexData[i]);
-		final float y3 = Float.intBitsToFloat(vertexData[i + 1]);
-		final float z3 = Float.intBitsToFloat(vertexData[i + 2]);
+		final float x3 = Float.intBitsToFloat(data[i]);
+		final float y3 = Float.intBitsToFloat(data[i + 1]);
+		final float z3 = Float.intBitsToFloat(data[i + 2]);
 
 		// compute average distance by component
 		final float dx = (x0 + x1 + x2 + x3) * 0.25f - x;
@@ -136,33 +458,42 @@ public class SortingVertexCollector extends SimpleVertexCollector {
 
 	private static final float POS_CONVERSION = 1f / 0xFFFF;
 
+	private float terrainX(int[] data, int vertexIndex) {
+		return isCompactTerrain ? CompactTerrainVertex.x(data, vertexIndex) : (data[vertexIndex + 2] & 0xFF) + (data[vertexIndex] >>> 16) * POS_CONVERSION;
+	}
+
+	private float terrainY(int[] data, int vertexIndex) {
+		return isCompactTerrain ? CompactTerrainVertex.y(data, vertexIndex) : ((data[vertexIndex + 2] >> 8) & 0xFF) + (data[vertexIndex + 1] & 0xFFFF) * POS_CONVERSION;
+	}
+
+	private float terrainZ(int[] data, int vertexIndex) {
+		return isCompactTerrain ? CompactTerrainVertex.z(data, vertexIndex) : ((data[vertexIndex + 2] >> 16) & 0xFF) + (data[vertexIndex + 1] >>> 16) * POS_CONVERSION;
+	}
+
 	private float getDistanceSqTerrain(float x, float y, float z, int quadIndex) {
-		final int integerStride = quadStrideInts / 4;
+		final int[] data = unsortedData;
+		final int integerStride = vertexStrideInts;
 
 		// unpack vertex coordinates
 		int i = quadIndex * quadStrideInts;
-		final int pos0 = vertexData[i + 2];
-		final float x0 = (pos0 & 0xFF) + (vertexData[i] >>> 16) * POS_CONVERSION;
-		final float y0 = ((pos0 >> 8) & 0xFF) + (vertexData[i + 1] & 0xFFFF) * POS_CONVERSION;
-		final float z0 = ((pos0 >> 16) & 0xFF) + (vertexData[i + 1] >>> 16) * POS_CONVERSION;
+		final float x0 = terrainX(data, i);
+		final float y0 = terrainY(data, i);
+		final float z0 = terrainZ(data, i);
 
 		i += integerStride;
-		final int pos1 = vertexData[i + 2];
-		final float x1 = (pos1 & 0xFF) + (vertexData[i] >>> 16) * POS_CONVERSION;
-		final float y1 = ((pos1 >> 8) & 0xFF) + (vertexData[i + 1] & 0xFFFF) * POS_CONVERSION;
-		final float z1 = ((pos1 >> 16) & 0xFF) + (vertexData[i + 1] >>> 16) * POS_CONVERSION;
+		final float x1 = terrainX(data, i);
+		final float y1 = terrainY(data, i);
+		final float z1 = terrainZ(data, i);
 
 		i += integerStride;
-		final int pos2 = vertexData[i + 2];
-		final float x2 = (pos2 & 0xFF) + (vertexData[i] >>> 16) * POS_CONVERSION;
-		final float y2 = ((pos2 >> 8) & 0xFF) + (vertexData[i + 1] & 0xFFFF) * POS_CONVERSION;
-		final float z2 = ((pos2 >> 16) & 0xFF) + (vertexData[i + 1] >>> 16) * POS_CONVERSION;
+		final float x2 = terrainX(data, i);
+		final float y2 = terrainY(data, i);
+		final float z2 = terrainZ(data, i);
 
 		i += integerStride;
-		final int pos3 = vertexData[i + 2];
-		final float x3 = (pos3 & 0xFF) + (vertexData[i] >>> 16) * POS_CONVERSION;
-		final float y3 = ((pos3 >> 8) & 0xFF) + (vertexData[i + 1] & 0xFFFF) * POS_CONVERSION;
-		final float z3 = ((pos3 >> 16) & 0xFF) + (vertexData[i + 1] >>> 16) * POS_CONVERSION;
+		final float x3 = terrainX(data, i);
+		final float y3 = terrainY(data, i);
+		final float z3 = terrainZ(data, i);
 
 		// compute average distance by component
 		final float dx = (x0 + x1 + x2 + x3) * 0.25f - x;
@@ -172,6 +503,33 @@ public class SortingVertexCollector extends SimpleVertexCollector {
 		return dx * dx + dy * dy + dz * dz;
 	}
 
+	/**
+	 * Computes a sphere enclosing every terrain vertex in this collector, relative to the
+	 * origin of the region that produced them. Used by the resort scheduler to estimate
+	 * how far the camera can move before quad order could change.
+	 */
+	public TranslucentSortBounds terrainSortBounds(RegionRenderSector sector, RegionPosition origin) {
+		assert isTerrain;
+
+		if (integerSize == 0) {
+			return TranslucentSortBounds.EMPTY;
+		}
+
+		captureUnsortedDataIfNeeded();
+
+		// vertex coordinates are relative to the padded sector origin
+		final float dx = (maxX - minX) * 0.5f;
+		final float dy = (maxY - minY) * 0.5f;
+		final float dz = (maxZ - minZ) * 0.5f;
+
+		return new TranslucentSortBounds(
+			minX + dx + sector.paddedBlockOriginX - origin.getX(),
+			minY + dy + sector.paddedBlockOriginY - origin.getY(),
+			minZ + dz + sector.paddedBlockOriginZ - origin.getZ(),
+			(float) Math.sqrt(dx * dx + dy * dy + dz * dz)
+		);
+	}
+
 	@Override
 	public boolean sorted() {
 		return true;
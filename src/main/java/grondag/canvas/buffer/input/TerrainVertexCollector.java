@@ -21,6 +21,7 @@
 package grondag.canvas.buffer.input;
 
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -32,59 +33,95 @@ import grondag.canvas.buffer.render.TransferBuffer;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
 
-public class TerrainVertexCollector extends BaseVertexCollector {
-	protected final DrawableVertexCollector[] collectors;
-
-	public TerrainVertexCollector(RenderState renderState, int[] target) {
+/**
+ * Collects terrain quads for all faces in a single array and records a bucket
+ * key for each quad. Quads are put in face order by a counting sort only when
+ * they leave the collector, so faces don't each need their own growable array.
+ *
+ * <p>Bucket order within each face is quads that cast shadows, then those that
+ * don't, which is the layout {@link FaceBucket} expects.
+ */
+public class TerrainVertexCollector extends ArrayVertexCollector {
+	private static final int KEY_COUNT = FaceUtil.FACE_INDEX_COUNT * 2;
+
+	protected final boolean trackShadow;
+	/** Bucket key of each quad in collection order: face index * 2, plus one for color-only quads. */
+	private byte[] quadKeys = new byte[256];
+	private final int[] keyQuadCounts = new int[KEY_COUNT];
+	private final int[] keyQuadStarts = new int[KEY_COUNT];
+	private final int[] keyNextQuad = new int[KEY_COUNT];
+
+	/**
+	 * @param trackShadow when true, quads that don't cast shadows are kept after the others in each face
+	 */
+	public TerrainVertexCollector(RenderState renderState, int[] target, boolean trackShadow) {
 		super(renderState, target);
+		this.trackShadow = trackShadow;
+	}
 
-		collectors = new DrawableVertexCollector[FaceUtil.FACE_INDEX_COUNT];
+	@Override
+	public void commit(int effectiveFaceIndex, boolean castShadow) {
+		final int quad = integerSize / quadStrideInts;
 
-		for (int i = 0; i < FaceUtil.FACE_INDEX_COUNT; ++i) {
-			collectors[i] = createCollector(renderState, target);
+		if (quad == quadKeys.length) {
+			quadKeys = Arrays.copyOf(quadKeys, quad * 2);
 		}
-	}
 
-	protected DrawableVertexCollector createCollector(RenderState renderState, int[] target) {
-		return new SimpleVertexCollector(renderState, target);
+		quadKeys[quad] = (byte) ((effectiveFaceIndex << 1) | (trackShadow && !castShadow ? 1 : 0));
+		super.commit(quadStrideInts);
 	}
 
 	@Override
-	public void commit(int effectiveFaceIndex, boolean castShadow) {
-		collectors[effectiveFaceIndex].commit(castShadow);
-		integerSize += quadStrideInts;
+	public void commit(int size) {
+		throw new UnsupportedOperationException("Commit on terrain collector must provide faceIndex and castShadow");
 	}
 
 	@Override
-	public final void clear() {
-		integerSize = 0;
+	public void commit(boolean castShadow) {
+		throw new UnsupportedOperationException("Commit on terrain collector must provide faceIndex and castShadow");
+	}
 
-		for (int i = 0; i < FaceUtil.FACE_INDEX_COUNT; ++i) {
-			collectors[i].clear();
+	/** Counts quads per bucket and their start position in bucket order. */
+	private void countBuckets() {
+		final int[] counts = keyQuadCounts;
+		Arrays.fill(counts, 0);
+
+		final byte[] keys = quadKeys;
+		final int quadCount = quadCount();
+
+		for (int q = 0; q < quadCount; ++q) {
+			++counts[keys[q]];
+		}
+
+		int start = 0;
+
+		for (int k = 0; k < KEY_COUNT; ++k) {
+			keyQuadStarts[k] = start;
+			start += counts[k];
 		}
 	}
 
 	@Override
 	public FaceBucket[] faceBuckets() {
+		countBuckets();
+
 		final FaceBucket[] result = new FaceBucket[FaceUtil.FACE_INDEX_COUNT];
-		int index = 0;
+		final int quadVertexCount = quadStrideInts / vertexStrideInts;
 
 		for (int i = 0; i < FaceUtil.FACE_INDEX_COUNT; ++i) {
-			result[i] = collectors[i].faceBucket(index);
-			index += collectors[i].vertexCount();
+			final int key = i << 1;
+			final int index = keyQuadStarts[key] * quadVertexCount;
+			final int shadowVertexCount = keyQuadCounts[key] * quadVertexCount;
+			final int vertexCount = shadowVertexCount + keyQuadCounts[key + 1] * quadVertexCount;
+			result[i] = new FaceBucket(index, vertexCount, index, shadowVertexCount);
 		}
 
 		return result;
 	}
 
 	@Override
-	public void commit(int size) {
-		throw new UnsupportedOperationException("Commit on compound collector must provide faceIndex and castShadow");
-	}
-
-	@Override
-	public void commit(boolean castShadow) {
-		throw new UnsupportedOperationException("Commit on compound collector must provide faceIndex and castShadow");
+	public FaceBucket faceBucket(int index) {
+		throw new UnsupportedOperationException("Terrain vertex collector does not support faceBucket");
 	}
 
 	@Override
@@ -92,45 +129,46 @@ public class TerrainVertexCollector extends BaseVertexCollector {
 		throw new UnsupportedOperationException("Terrain buffering should always use transfer buffers.");
 	}
 
+	/** Scatters quads straight into face order in the target, coalescing runs of the same bucket. */
 	@Override
 	public void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex) {
-		for (int i = 0; i < FaceUtil.FACE_INDEX_COUNT; ++i) {
-			final var c = collectors[i];
-
-			if (!c.isEmpty()) {
-				collectors[i].toBuffer(targetBuffer, bufferTargetIndex);
-				bufferTargetIndex += collectors[i].integerSize();
+		countBuckets();
+
+		final int stride = quadStrideInts;
+		final int quadCount = quadCount();
+		final int[] data = vertexData;
+		final int[] next = keyNextQuad;
+		System.arraycopy(keyQuadStarts, 0, next, 0, KEY_COUNT);
+		final byte[] keys = quadKeys;
+		int q = 0;
+
+		while (q < quadCount) {
+			final int key = keys[q];
+			int end = q + 1;
+
+			while (end < quadCount && keys[end] == key) {
+				++end;
 			}
-		}
-	}
 
-	@Override
-	public void sortIfNeeded() {
-		// NOOP
-	}
-
-	@Override
-	public boolean sorted() {
-		return false;
+			final int runQuads = end - q;
+			targetBuffer.put(data, q * stride, bufferTargetIndex + next[key] * stride, runQuads * stride);
+			next[key] += runQuads;
+			q = end;
+		}
 	}
 
 	@Override
 	public boolean sortTerrainQuads(Vec3 sortPos, RegionRenderSector sector) {
-		throw new UnsupportedOperationException("Compound vertex collector does not support sortTerrainQuads.");
+		throw new UnsupportedOperationException("Terrain vertex collector does not support sortTerrainQuads.");
 	}
 
 	@Override
 	public @Nullable int[] saveState(@Nullable int[] translucentState) {
-		throw new UnsupportedOperationException("Compound vertex collector does not support saveState.");
+		throw new UnsupportedOperationException("Terrain vertex collector does not support saveState.");
 	}
 
 	@Override
 	public void loadState(int[] state) {
-		throw new UnsupportedOperationException("Compound vertex collector does not support loadState");
-	}
-
-	@Override
-	public FaceBucket faceBucket(int index) {
-		throw new UnsupportedOperationException("Compound vertex collector does not support faceBucket");
+		throw new UnsupportedOperationException("Terrain vertex collector does not support loadState");
 	}
 }
@@ -0,0 +1,172 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.buffer.input;
+
+import java.nio.IntBuffer;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import net.minecraft.world.phys.Vec3;
+
+import grondag.canvas.buffer.render.TransferBuffer;
+import grondag.canvas.buffer.render.TransferBufferChain;
+import grondag.canvas.buffer.render.TransferBuffers;
+import grondag.canvas.material.state.RenderState;
+import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
+
+/**
+ * Writes committed quads directly into transfer buffers instead of a heap array.
+ * The first segment is sized from the previous build of this collector and more
+ * segments are chained as needed, so nothing is copied or regrown before upload.
+ *
+ * <p>Segments are handed off by {@link #takeTransferBuffer()}. Segments still held
+ * when the collector is cleared are released on the render thread.
+ */
+public class TransferVertexCollector extends BaseVertexCollector {
+	private static final int MIN_SEGMENT_QUADS = 64;
+
+	private TransferBufferChain chain = new TransferBufferChain();
+	private TransferBuffer segment = null;
+	private int segmentInts = 0;
+	private int segmentCapacityInts = 0;
+	private int estimateBytes = 0;
+
+	public TransferVertexCollector(RenderState renderState, int[] target) {
+		super(renderState, target);
+	}
+
+	@Override
+	public void commit(int size) {
+		assert size == quadStrideInts;
+
+		if (segmentInts + size > segmentCapacityInts) {
+			nextSegment();
+		}
+
+		segment.put(target, 0, segmentInts, size);
+		segmentInts += size;
+		integerSize += size;
+	}
+
+	private void nextSegment() {
+		closeSegment();
+
+		final int quadBytes = quadStrideInts * 4;
+		// first segment uses the prior build as an estimate, then each new segment doubles the total
+		final int wantedBytes = integerSize == 0 ? estimateBytes : integerSize * 4;
+		final int quads = Math.max(MIN_SEGMENT_QUADS, (wantedBytes + quadBytes - 1) / quadBytes);
+		segment = TransferBuffers.claim(quads * quadBytes);
+		segmentCapacityInts = quads * quadStrideInts;
+		segmentInts = 0;
+	}
+
+	private void closeSegment() {
+		if (segment != null) {
+			chain.append(segment, segmentInts * 4);
+			segment = null;
+			segmentInts = 0;
+			segmentCapacityInts = 0;
+		}
+	}
+
+	@Override
+	public @Nullable TransferBuffer takeTransferBuffer() {
+		if (integerSize == 0) {
+			return null;
+		}
+
+		closeSegment();
+		final TransferBuffer result = chain;
+		assert result.sizeBytes() == integerSize * 4 : "Transfer buffer already taken";
+		chain = new TransferBufferChain();
+		return result;
+	}
+
+	@Override
+	public void clear() {
+		if (integerSize != 0) {
+			estimateBytes = integerSize * 4;
+		}
+
+		closeSegment();
+
+		if (chain.segmentCount() != 0) {
+			final TransferBufferChain abandoned = chain;
+			chain = new TransferBufferChain();
+
+			if (RenderSystem.isOnRenderThread()) {
+				abandoned.release();
+			} else {
+				RenderSystem.recordRenderCall(abandoned::release);
+			}
+		}
+
+		integerSize = 0;
+	}
+
+	@Override
+	public void toBuffer(IntBuffer intBuffer) {
+		throw new UnsupportedOperationException("TransferVertexCollector does not support toBuffer - use takeTransferBuffer.");
+	}
+
+	@Override
+	public void toBuffer(TransferBuffer targetBuffer, int bufferTargetIndex) {
+		throw new UnsupportedOperationException("TransferVertexCollector does not support toBuffer - use takeTransferBuffer.");
+	}
+
+	@Override
+	public void sortIfNeeded() {
+		// NOOP
+	}
+
+	@Override
+	public boolean sorted() {
+		return false;
+	}
+
+	@Override
+	public boolean sortTerrainQuads(Vec3 sortPos, RegionRenderSector sector) {
+		throw new UnsupportedOperationException("TransferVertexCollector does not support sortTerrainQuads.");
+	}
+
+	@Override
+	public @Nullable int[] saveState(@Nullable int[] translucentState) {
+		throw new UnsupportedOperationException("TransferVertexCollector does not support saveState.");
+	}
+
+	@Override
+	public void loadState(int[] state) {
+		throw new UnsupportedOperationException("TransferVertexCollector does not support loadState");
+	}
+
+	@Override
+	public FaceBucket[] faceBuckets() {
+		return null;
+	}
+
+	@Override
+	public FaceBucket faceBucket(int index) {
+		final int vertexCount = vertexCount();
+		return new FaceBucket(index, vertexCount, index, vertexCount);
+	}
+}
@@ -56,11 +56,14 @@ public class VertexCollectorList {
 	/** If true, will segregate quads by shadow casting ability. */
 	private final int[] target;
 	protected final boolean isTerrain;
+	/** If true, unsorted terrain quads are written straight to transfer buffers. */
+	private final boolean directBuffers;
 
 	public VertexCollectorList(boolean trackFaces, boolean isTerrain) {
 		this.trackFaces = trackFaces;
 		this.isTerrain = isTerrain;
-		target = new int[isTerrain ? TerrainEncoder.TERRAIN_MATERIAL.quadStrideInts : CanvasVertexFormats.STANDARD_MATERIAL_FORMAT.quadStrideInts];
+		directBuffers = isTerrain && Configurator.directTerrainBuffers;
+		target = new int[isTerrain ? TerrainEncoder.terrainFormat().quadStrideInts : CanvasVertexFormats.STANDARD_MATERIAL_FORMAT.quadStrideInts];
 	}
 
 	/**
@@ -99,12 +102,21 @@ public class VertexCollectorList {
 
 	/**
 	 * Clears all storage arrays.
+	 *
+	 * <p>Terrain lists are cleared once per region build, so their arrays go back to the
+	 * thread's pool to be shared across materials. Immediate lists are cleared every
+	 * frame and keep their arrays.
 	 */
 	public void clear() {
 		final int limit = active.size();
 
 		for (int i = 0; i < limit; i++) {
-			active.get(i).clear();
+			final DrawableVertexCollector collector = active.get(i);
+			collector.clear();
+
+			if (isTerrain) {
+				collector.releaseStorage();
+			}
 		}
 	}
 
@@ -129,13 +141,13 @@ public class VertexCollectorList {
 		if (result == null) {
 			if (materialState.sorted()) {
 				result = new SortingVertexCollector(materialState.renderState(), isTerrain, target);
-			} else if (Pipeline.shadowsEnabled()) {
-				result = trackFaces
-						? new TerrainShadowVertexCollector(materialState.renderState(), target)
-						: new ShadowVertexCollector(materialState.renderState(), target);
+			} else if (trackFaces) {
+				result = directBuffers
+						? new DirectTerrainVertexCollector(materialState.renderState(), target, Pipeline.shadowsEnabled())
+						: new TerrainVertexCollector(materialState.renderState(), target, Pipeline.shadowsEnabled());
 			} else {
-				result = trackFaces
-						? new TerrainVertexCollector(materialState.renderState(), target)
+				result = Pipeline.shadowsEnabled()
+						? new ShadowVertexCollector(materialState.renderState(), target)
 						: new SimpleVertexCollector(materialState.renderState(), target);
 			}
 
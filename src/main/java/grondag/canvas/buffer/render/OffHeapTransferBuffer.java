@@ -21,6 +21,7 @@
 package grondag.canvas.buffer.render;
 
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -36,6 +37,8 @@ class OffHeapTransferBuffer implements TransferBuffer, AllocatableBuffer {
 	final BinIndex bin;
 	final int capacityBytes;
 	DirectBufferReference data;
+	/** Cached view - collectors may put one quad at a time. */
+	private final IntBuffer intData;
 	volatile int claimedBytes;
 	private final BufferTrace trace = BufferTrace.create();
 
@@ -43,6 +46,7 @@ class OffHeapTransferBuffer implements TransferBuffer, AllocatableBuffer {
 		this.bin = bin;
 		capacityBytes = bin.capacityBytes();
 		data = DirectBufferAllocator.claim(capacityBytes);
+		intData = data.buffer().asIntBuffer();
 	}
 
 	@Override
@@ -58,8 +62,8 @@ class OffHeapTransferBuffer implements TransferBuffer, AllocatableBuffer {
 	@Override
 	public void put(int[] source, int sourceStartInts, int targetStartInts, int lengthInts) {
 		assert claimedBytes > 0 : "Buffer accessed while unclaimed";
-		assert sourceStartInts + lengthInts <= claimedBytes * 4;
-		data.buffer().asIntBuffer().put(targetStartInts, source, sourceStartInts, lengthInts);
+		assert targetStartInts + lengthInts <= claimedBytes / 4;
+		intData.put(targetStartInts, source, sourceStartInts, lengthInts);
 	}
 
 	@Override
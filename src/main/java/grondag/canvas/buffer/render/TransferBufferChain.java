@@ -0,0 +1,140 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.buffer.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Presents a sequence of partially-filled transfer buffers as one contiguous buffer.
+ * Lets collectors write vertex data straight into transfer buffers and grow by
+ * claiming more segments instead of copying into a larger array.
+ *
+ * <p>Owns its segments once appended and releases all of them on release.
+ */
+public class TransferBufferChain implements TransferBuffer {
+	private final ObjectArrayList<TransferBuffer> segments = new ObjectArrayList<>();
+	private final IntArrayList segmentBytes = new IntArrayList();
+	private int sizeBytes = 0;
+
+	/**
+	 * Takes ownership of the buffer and appends the first {@code usedBytes} of it.
+	 * Segments of another chain are moved into this one.
+	 */
+	public void append(TransferBuffer buffer, int usedBytes) {
+		if (buffer instanceof TransferBufferChain chain) {
+			assert usedBytes == chain.sizeBytes;
+			segments.addAll(chain.segments);
+			segmentBytes.addAll(chain.segmentBytes);
+			sizeBytes += chain.sizeBytes;
+			chain.segments.clear();
+			chain.segmentBytes.clear();
+			chain.sizeBytes = 0;
+		} else {
+			assert usedBytes > 0 && usedBytes <= buffer.sizeBytes();
+			segments.add(buffer);
+			segmentBytes.add(usedBytes);
+			sizeBytes += usedBytes;
+		}
+	}
+
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	@Override
+	public int sizeBytes() {
+		return sizeBytes;
+	}
+
+	@Override
+	public void put(int[] source, int sourceStartInts, int targetStartInts, int lengthInts) {
+		final int limit = segments.size();
+		int segmentStartInts = 0;
+
+		for (int i = 0; i < limit && lengthInts > 0; ++i) {
+			final int segmentInts = segmentBytes.getInt(i) / 4;
+			final int segmentEndInts = segmentStartInts + segmentInts;
+
+			if (targetStartInts < segmentEndInts) {
+				final int len = Math.min(lengthInts, segmentEndInts - targetStartInts);
+				segments.get(i).put(source, sourceStartInts, targetStartInts - segmentStartInts, len);
+				sourceStartInts += len;
+				targetStartInts += len;
+				lengthInts -= len;
+			}
+
+			segmentStartInts = segmentEndInts;
+		}
+
+		assert lengthInts == 0 : "Put past end of transfer buffer chain";
+	}
+
+	@Override
+	public void transferToBoundBuffer(int target, int targetStartBytes, int sourceStartBytes, int lengthBytes) {
+		assert sourceStartBytes + lengthBytes <= sizeBytes;
+
+		final int limit = segments.size();
+		int segmentStartBytes = 0;
+
+		for (int i = 0; i < limit && lengthBytes > 0; ++i) {
+			final int segmentEndBytes = segmentStartBytes + segmentBytes.getInt(i);
+
+			if (sourceStartBytes < segmentEndBytes) {
+				final int len = Math.min(lengthBytes, segmentEndBytes - sourceStartBytes);
+				segments.get(i).transferToBoundBuffer(target, targetStartBytes, sourceStartBytes - segmentStartBytes, len);
+				sourceStartBytes += len;
+				targetStartBytes += len;
+				lengthBytes -= len;
+			}
+
+			segmentStartBytes = segmentEndBytes;
+		}
+	}
+
+	@Override
+	public ShortBuffer shortBuffer() {
+		throw new UnsupportedOperationException("Transfer buffer chain is not contiguous");
+	}
+
+	@Override
+	public ByteBuffer byteBuffer() {
+		throw new UnsupportedOperationException("Transfer buffer chain is not contiguous");
+	}
+
+	@Override
+	public @Nullable TransferBuffer release() {
+		final int limit = segments.size();
+
+		for (int i = 0; i < limit; ++i) {
+			segments.get(i).release();
+		}
+
+		segments.clear();
+		segmentBytes.clear();
+		sizeBytes = 0;
+		return null;
+	}
+}
@@ -23,10 +23,14 @@ package grondag.canvas.buffer.util;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.BufferUtils;
@@ -37,12 +41,25 @@ import com.mojang.blaze3d.systems.RenderSystem;
 import grondag.canvas.CanvasMod;
 import grondag.canvas.config.Configurator;
 
+/**
+ * Claims native buffers from power-of-two size classes. Released buffers are kept
+ * for reuse, first in a small per-thread cache and then in a shared pool, so
+ * frequently claimed sizes don't go back to the native allocator.
+ *
+ * <p>Caches of threads that have ended are freed, and shared buffers that
+ * stay idle for a full trim interval are freed, so the pools shrink again
+ * after a burst of claims.
+ *
+ * <p>Leak detection with phantom references is only done when
+ * native memory debugging is enabled. Otherwise a reference that is
+ * never released loses its memory until the game exits.
+ */
 public class DirectBufferAllocator {
 	public static class DirectBufferReference {
 		private ByteBuffer buffer;
-		private final Runnable dealloc;
+		private final Deallocator dealloc;
 
-		private DirectBufferReference(ByteBuffer buffer, Runnable dealloc) {
+		private DirectBufferReference(ByteBuffer buffer, Deallocator dealloc) {
 			this.buffer = buffer;
 			this.dealloc = dealloc;
 		}
@@ -60,70 +77,251 @@ public class DirectBufferAllocator {
 	}
 
 	private static class Deallocator implements Runnable {
+		/** Whole pooled buffer, which may be larger than the claim. */
 		private ByteBuffer buffer;
-		private final Consumer<ByteBuffer> dealloc;
+		private final int claimedBytes;
 
-		Deallocator (ByteBuffer buffer, Consumer<ByteBuffer> dealloc) {
+		Deallocator (ByteBuffer buffer, int claimedBytes) {
 			this.buffer = buffer;
-			this.dealloc = dealloc;
+			this.claimedBytes = claimedBytes;
 		}
 
 		@Override
-		public void run() {
-			synchronized (buffer) {
-				if (buffer != null) {
-					openBytes.addAndGet(-buffer.capacity());
-					//openCount.decrementAndGet();
-					dealloc.accept(buffer);
-					buffer = null;
-				}
+		public synchronized void run() {
+			if (buffer != null) {
+				openBytes.addAndGet(-claimedBytes);
+				//openCount.decrementAndGet();
+				recycle(buffer);
+				buffer = null;
 			}
 		}
 
-		public void releaseIfLeaked() {
+		public synchronized void releaseIfLeaked() {
 			if (buffer != null) {
-				CanvasMod.LOG.warn("Memory leak detected. This should not normally occur. Bytes recovered: " + buffer.capacity());
+				CanvasMod.LOG.warn("Memory leak detected. This should not normally occur. Bytes recovered: " + claimedBytes);
 				run();
 			}
 		}
 	}
 
+	private static final int MIN_CLASS_SHIFT = 12;
+	private static final int MAX_CLASS_SHIFT = 24;
+	private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+	/** Only classes below this are cached per thread, so threads can't hold on to much memory. */
+	private static final int LOCAL_CLASS_LIMIT = 7;
+	private static final int MAX_LOCAL_PER_CLASS = 2;
+	/** Buffers released when the shared pool holds this much are freed instead. */
+	private static final int MAX_SHARED_IDLE_BYTES = 0x4000000;
+	private static final long IDLE_TRIM_INTERVAL_MILLISECONDS = 10000;
+
+	private static class LocalCache {
+		/** Weak so the cache doesn't keep a finished thread reachable. */
+		private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+		@SuppressWarnings("unchecked")
+		private final ArrayDeque<ByteBuffer>[] classes = new ArrayDeque[LOCAL_CLASS_LIMIT];
+
+		private LocalCache() {
+			for (int i = 0; i < LOCAL_CLASS_LIMIT; ++i) {
+				classes[i] = new ArrayDeque<>(MAX_LOCAL_PER_CLASS);
+			}
+		}
+
+		private boolean isOwnerAlive() {
+			final Thread thread = owner.get();
+			return thread != null && thread.isAlive();
+		}
+
+		/** Only safe once the owning thread has ended, which also makes its changes visible. */
+		private void drain() {
+			for (final ArrayDeque<ByteBuffer> deque : classes) {
+				ByteBuffer buffer;
+
+				while ((buffer = deque.poll()) != null) {
+					idleBytes.addAndGet(-buffer.capacity());
+					free(buffer);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static final ConcurrentLinkedQueue<ByteBuffer>[] SHARED = new ConcurrentLinkedQueue[CLASS_COUNT];
+	private static final ConcurrentLinkedQueue<LocalCache> LOCAL_CACHES = new ConcurrentLinkedQueue<>();
+	private static final ThreadLocal<LocalCache> LOCAL = ThreadLocal.withInitial(() -> {
+		final LocalCache result = new LocalCache();
+		LOCAL_CACHES.add(result);
+		return result;
+	});
+
+	static {
+		for (int i = 0; i < CLASS_COUNT; ++i) {
+			SHARED[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
 	//private static final AtomicReference<LinkedTransferQueue<BufferReferenceHolder>> REFERENCES = new AtomicReference<>(new LinkedTransferQueue<>());
 	//private static LinkedTransferQueue<BufferReferenceHolder> idleList = new LinkedTransferQueue<>();
 	private static final ReferenceQueue<DirectBufferReference> REFERENCES = new ReferenceQueue<>();
 	private static final ConcurrentHashMap<PhantomReference<DirectBufferReference>, Deallocator> MAP = new ConcurrentHashMap<>();
 
 	private static long nextCleanupTimeMilliseconds;
+	private static long nextIdleTrimTimeMilliseconds;
 	//private static int lastCount;
 	private static int lastBytes;
+	private static long lastClaimCount;
+	private static long lastPoolHitCount;
+	private static long lastNativeBytes;
 	//private static int sampleCount;
 	private static int sampleBytes;
+	private static long sampleClaimCount;
+	private static long samplePoolHitCount;
+	private static long sampleNativeBytes;
 	//private static final AtomicInteger openCount = new AtomicInteger();
 	private static final AtomicInteger openBytes = new AtomicInteger();
+	private static final AtomicInteger idleBytes = new AtomicInteger();
+	private static final AtomicInteger sharedIdleBytes = new AtomicInteger();
+	/** Least shared idle bytes since the last trim. That much was never needed and can be freed. */
+	private static final AtomicInteger sharedIdleLowWater = new AtomicInteger();
 	//private static final AtomicInteger totalCount = new AtomicInteger();
 	private static final AtomicInteger totalBytes = new AtomicInteger();
+	private static final AtomicLong claimCount = new AtomicLong();
+	private static final AtomicLong poolHitCount = new AtomicLong();
+	private static final AtomicLong nativeBytes = new AtomicLong();
 
-	public static DirectBufferReference claim(int bytes) {
-		final boolean safe = Configurator.safeNativeMemoryAllocation.get();
-		final ByteBuffer buffer = safe ? BufferUtils.createByteBuffer(bytes) : MemoryUtil.memAlloc(bytes);
+	private static int sizeClass(int bytes) {
+		return Math.max(0, 32 - Integer.numberOfLeadingZeros(bytes - 1) - MIN_CLASS_SHIFT);
+	}
 
+	public static DirectBufferReference claim(int bytes) {
+		assert bytes > 0;
 		//openCount.incrementAndGet();
 		openBytes.addAndGet(bytes);
 		//totalCount.incrementAndGet();
 		totalBytes.addAndGet(bytes);
+		claimCount.incrementAndGet();
+
+		final int sizeClass = sizeClass(bytes);
+		ByteBuffer pooled = sizeClass < CLASS_COUNT ? takeIdle(sizeClass) : null;
 
-		final Consumer<ByteBuffer> free = safe ? b -> { } : MemoryUtil::memFree;
-		final var dealloc = new Deallocator(buffer, free);
+		if (pooled == null) {
+			pooled = allocate(sizeClass < CLASS_COUNT ? 1 << (sizeClass + MIN_CLASS_SHIFT) : bytes);
+		} else {
+			poolHitCount.incrementAndGet();
+		}
+
+		final ByteBuffer buffer = pooled.capacity() == bytes ? pooled : MemoryUtil.memSlice(pooled, 0, bytes);
+		final var dealloc = new Deallocator(pooled, bytes);
 		final var result = new DirectBufferReference(buffer, dealloc);
-		MAP.put(new PhantomReference<>(result, REFERENCES), dealloc);
+
+		if (Configurator.debugNativeMemoryAllocation.get()) {
+			MAP.put(new PhantomReference<>(result, REFERENCES), dealloc);
+		}
+
 		return result;
 	}
 
+	private static @Nullable ByteBuffer takeIdle(int sizeClass) {
+		ByteBuffer result = sizeClass < LOCAL_CLASS_LIMIT ? LOCAL.get().classes[sizeClass].poll() : null;
+
+		if (result == null) {
+			result = SHARED[sizeClass].poll();
+
+			if (result != null) {
+				final int shared = sharedIdleBytes.addAndGet(-result.capacity());
+				sharedIdleLowWater.accumulateAndGet(shared, Math::min);
+			}
+		}
+
+		if (result != null) {
+			idleBytes.addAndGet(-result.capacity());
+		}
+
+		return result;
+	}
+
+	private static ByteBuffer allocate(int bytes) {
+		nativeBytes.addAndGet(bytes);
+		return Configurator.safeNativeMemoryAllocation.get() ? BufferUtils.createByteBuffer(bytes) : MemoryUtil.memAlloc(bytes);
+	}
+
+	private static void recycle(ByteBuffer buffer) {
+		final int capacity = buffer.capacity();
+		final int sizeClass = sizeClass(capacity);
+
+		if (sizeClass < CLASS_COUNT && capacity == 1 << (sizeClass + MIN_CLASS_SHIFT)) {
+			buffer.clear();
+
+			if (sizeClass < LOCAL_CLASS_LIMIT) {
+				final ArrayDeque<ByteBuffer> local = LOCAL.get().classes[sizeClass];
+
+				if (local.size() < MAX_LOCAL_PER_CLASS) {
+					local.push(buffer);
+					idleBytes.addAndGet(capacity);
+					return;
+				}
+			}
+
+			if (idleBytes.get() + capacity <= MAX_SHARED_IDLE_BYTES) {
+				SHARED[sizeClass].offer(buffer);
+				idleBytes.addAndGet(capacity);
+				sharedIdleBytes.addAndGet(capacity);
+				return;
+			}
+		}
+
+		free(buffer);
+	}
+
+	private static void free(ByteBuffer buffer) {
+		if (!Configurator.safeNativeMemoryAllocation.get()) {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+
+	/** Frees caches of threads that have ended. Nothing else can return those buffers. */
+	private static void drainDeadThreadCaches() {
+		final Iterator<LocalCache> it = LOCAL_CACHES.iterator();
+
+		while (it.hasNext()) {
+			final LocalCache cache = it.next();
+
+			if (!cache.isOwnerAlive()) {
+				cache.drain();
+				it.remove();
+			}
+		}
+	}
+
+	/** Frees shared buffers that went unused for the whole interval, largest first. */
+	private static void trimIdle() {
+		int surplus = sharedIdleLowWater.getAndSet(sharedIdleBytes.get());
+
+		for (int sizeClass = CLASS_COUNT - 1; sizeClass >= 0 && surplus > 0; --sizeClass) {
+			ByteBuffer buffer;
+
+			while (surplus > 0 && (buffer = SHARED[sizeClass].poll()) != null) {
+				final int capacity = buffer.capacity();
+				sharedIdleBytes.addAndGet(-capacity);
+				idleBytes.addAndGet(-capacity);
+				surplus -= capacity;
+				free(buffer);
+			}
+		}
+
+		sharedIdleLowWater.accumulateAndGet(sharedIdleBytes.get(), Math::min);
+	}
+
 	public static void update() {
 		assert RenderSystem.isOnRenderThread();
 
 		final long time = System.currentTimeMillis();
 
+		if (time > nextIdleTrimTimeMilliseconds) {
+			nextIdleTrimTimeMilliseconds = time + IDLE_TRIM_INTERVAL_MILLISECONDS;
+			drainDeadThreadCaches();
+			trimIdle();
+		}
+
 		if (time > nextCleanupTimeMilliseconds) {
 			nextCleanupTimeMilliseconds = time + 1000;
 
@@ -141,24 +339,37 @@ public class DirectBufferAllocator {
 
 			//final int newCount = totalCount.get();
 			final int newBytes = totalBytes.get();
+			final long newClaimCount = claimCount.get();
+			final long newPoolHitCount = poolHitCount.get();
+			final long newNativeBytes = nativeBytes.get();
 
 			//sampleCount = newCount - lastCount;
 			sampleBytes = newBytes - lastBytes;
+			sampleClaimCount = newClaimCount - lastClaimCount;
+			samplePoolHitCount = newPoolHitCount - lastPoolHitCount;
+			sampleNativeBytes = newNativeBytes - lastNativeBytes;
 			//lastCount = newCount;
 			lastBytes = newBytes;
+			lastClaimCount = newClaimCount;
+			lastPoolHitCount = newPoolHitCount;
+			lastNativeBytes = newNativeBytes;
 		}
 	}
 
 	public static String debugString() {
 		final String type = Configurator.safeNativeMemoryAllocation.get() ? "Heap" : "Off-heap";
 
-		return String.format("%s buffers:%5.1fMb rate:%5.1fMb",
+		return String.format("%s buffers:%5.1fMb idle:%5.1fMb rate:%5.1fMb %d/s native:%5.1fMb hit:%3d%%",
 				type,
 				//return String.format("Off-heap buffers :%3d %5.1fMb  rate:%4d %5.1fMb",
 				//openCount.get(),
 				(double) openBytes.get() / 0x100000,
+				(double) idleBytes.get() / 0x100000,
 				//sampleCount,
-				(double) sampleBytes / 0x100000
+				(double) sampleBytes / 0x100000,
+				sampleClaimCount,
+				(double) sampleNativeBytes / 0x100000,
+				sampleClaimCount == 0 ? 100 : samplePoolHitCount * 100 / sampleClaimCount
 				);
 	}
 }
@@ -276,6 +276,51 @@ public class CanvasConfigScreen extends BaseScreen {
 				DEFAULTS.cullBackfacingTerrain,
 				"config.canvas.help.cull_backfacing_terrain").listItem());
 
+		list.addItem(optionSession.booleanOption("config.canvas.value.compact_terrain_vertices",
+				() -> editing.compactTerrainVertices,
+				b -> {
+					reload |= Configurator.compactTerrainVertices != b;
+					editing.compactTerrainVertices = b;
+				},
+				DEFAULTS.compactTerrainVertices,
+				"config.canvas.help.compact_terrain_vertices").listItem());
+
+		list.addItem(optionSession.booleanOption("config.canvas.value.direct_terrain_buffers",
+				() -> editing.directTerrainBuffers,
+				b -> {
+					reload |= Configurator.directTerrainBuffers != b;
+					editing.directTerrainBuffers = b;
+				},
+				DEFAULTS.directTerrainBuffers,
+				"config.canvas.help.direct_terrain_buffers").listItem());
+
+		list.addItem(optionSession.intOption("config.canvas.value.terrain_upload_mb_per_frame",
+				1,
+				64,
+				1,
+				() -> editing.terrainUploadMbPerFrame,
+				i -> editing.terrainUploadMbPerFrame = i,
+				DEFAULTS.terrainUploadMbPerFrame,
+				"config.canvas.help.terrain_upload_mb_per_frame").listItem());
+
+		list.addItem(optionSession.booleanOption("config.canvas.value.indirect_terrain_draw",
+				() -> editing.indirectTerrainDraw,
+				b -> {
+					reload |= Configurator.indirectTerrainDraw != b;
+					editing.indirectTerrainDraw = b;
+				},
+				DEFAULTS.indirectTerrainDraw,
+				"config.canvas.help.indirect_terrain_draw").listItem());
+
+		list.addItem(optionSession.booleanOption("config.canvas.value.front_to_back_terrain",
+				() -> editing.frontToBackTerrain,
+				b -> {
+					reload |= Configurator.frontToBackTerrain != b;
+					editing.frontToBackTerrain = b;
+				},
+				DEFAULTS.frontToBackTerrain,
+				"config.canvas.help.front_to_back_terrain").listItem());
+
 		// DEBUG
 		final int indexDebug = list.addCategory("config.canvas.category.debug");
 
@@ -338,6 +383,15 @@ public class CanvasConfigScreen extends BaseScreen {
 				DEFAULTS.preprocessShaderSource,
 				"config.canvas.help.preprocess_shader_source").listItem());
 
+		list.addItem(optionSession.booleanOption("config.canvas.value.program_binary_cache",
+				() -> editing.programBinaryCache,
+				b -> {
+					reload |= Configurator.programBinaryCache != b;
+					editing.programBinaryCache = b;
+				},
+				DEFAULTS.programBinaryCache,
+				"config.canvas.help.program_binary_cache").listItem());
+
 		list.addItem(optionSession.booleanOption("config.canvas.value.concise_errors",
 				() -> editing.conciseErrors,
 				b -> editing.conciseErrors = b,
@@ -356,6 +410,12 @@ public class CanvasConfigScreen extends BaseScreen {
 				DEFAULTS.logGlStateChanges,
 				"config.canvas.help.log_gl_state_changes").listItem());
 
+		list.addItem(optionSession.booleanOption("config.canvas.value.elide_redundant_gl_calls",
+				() -> editing.elideRedundantGlCalls,
+				b -> editing.elideRedundantGlCalls = b,
+				DEFAULTS.elideRedundantGlCalls,
+				"config.canvas.help.elide_redundant_gl_calls").listItem());
+
 		list.addItem(optionSession.booleanOption("config.canvas.value.debug_native_allocation",
 				() -> editing.debugNativeMemoryAllocation,
 				b -> {
@@ -99,6 +99,16 @@ class ConfigData {
 	boolean disableUnseenSpriteAnimation = true;
 	@Comment("When true, terrain facing away from the camera is not rendered.  Usually improves frame rate.")
 	boolean cullBackfacingTerrain = true;
+	@Comment("Stores terrain vertices in 16 bytes instead of 28. Saves GPU memory and bandwidth at the cost of precision: minor Z-fighting, coarser lighting and tint. Ignored by pipelines that enable PBR.")
+	boolean compactTerrainVertices = false;
+	@Comment("Writes solid terrain vertices straight into transfer buffers during chunk builds instead of heap arrays. Avoids one copy per region.")
+	boolean directTerrainBuffers = false;
+	@Comment("Maximum terrain data uploaded to the GPU each frame, in MB. Nearest regions are uploaded first. Values 1 to 64. Ignored when Flawless Frames is active.")
+	int terrainUploadMbPerFrame = 8;
+	@Comment("Draws solid terrain with one indirect multi-draw per slab for the whole view. Draw commands are built by a terrain worker and kept in one persistent buffer. Requires OpenGL 4.3 or ARB_multi_draw_indirect.")
+	boolean indirectTerrainDraw = false;
+	@Comment("Draws solid terrain approximately nearest first so early depth testing can skip hidden fragments. Adds draw calls only where enough quads are reordered to justify them. Camera view only.")
+	boolean frontToBackTerrain = true;
 	@Comment("Enabling may help performance by drawing fewer regions but some regions may flicker as you move around nearby blocks.")
 	boolean enableNearOccluders = false;
 	@Comment("Method used to transfer data to GPU. AUTO is recommended but performance can be specific to your system. Other options are DIRECT, HYBRID, and MAPPED")
@@ -111,6 +121,8 @@ class ConfigData {
 	boolean shaderDebug = false;
 	@Comment("Pre-process OpenGL source before compilation. Makes source more concise but possibly harder to read.")
 	boolean preprocessShaderSource = true;
+	@Comment("Saves linked shader programs in the canvas_program_cache folder and reuses them when shader source and graphics driver are unchanged. Makes startup and pipeline changes faster.")
+	boolean programBinaryCache = true;
 	//@Comment("Shows HD lightmap pixels for debug purposes. Also looks cool.")
 	//boolean lightmapDebug = false;
 	@Comment("Summarizes multiple errors and warnings to single-line entries in the log.")
@@ -119,6 +131,8 @@ class ConfigData {
 	boolean logMachineInfo = true;
 	@Comment("Writes OpenGL state changes to log.  *VERY SPAMMY - KILLS FRAME RATE*  Used only for debugging.")
 	boolean logGlStateChanges = false;
+	@Comment("Skips OpenGL state calls that would not change anything. Disable only to rule it out when debugging.")
+	boolean elideRedundantGlCalls = true;
 	@Comment("Enables LWJGL memory allocation tracking.  Will harm performance. Use for debugging memory leaks. Requires restart.")
 	boolean debugNativeMemoryAllocation = false;
 	@Comment("Output performance trace data to log. Will have significant performance impact. Requires restart.")
@@ -56,6 +56,7 @@ public class Configurator {
 	public static StartupFinalBoolean useCombinedThreadPool = new StartupFinalBoolean(DEFAULTS.useCombinedThreadPool);
 	public static boolean shaderDebug = DEFAULTS.shaderDebug;
 	public static boolean preprocessShaderSource = DEFAULTS.preprocessShaderSource;
+	public static boolean programBinaryCache = DEFAULTS.programBinaryCache;
 	// public static boolean lightmapDebug = DEFAULTS.lightmapDebug;
 	public static TerrainIterator.ShadowPriming shadowPrimingStrategy = DEFAULTS.shadowPrimingStrategy;
 	// TODO: TEMPORARY, make into pipeline configuration -> this could be the 0th cascade distance
@@ -71,6 +72,7 @@ public class Configurator {
 	public static boolean conciseErrors = DEFAULTS.conciseErrors;
 	public static boolean logMachineInfo = DEFAULTS.logMachineInfo;
 	public static boolean logGlStateChanges = DEFAULTS.logGlStateChanges;
+	public static boolean elideRedundantGlCalls = DEFAULTS.elideRedundantGlCalls;
 	public static StartupFinalBoolean debugNativeMemoryAllocation = new StartupFinalBoolean(DEFAULTS.debugNativeMemoryAllocation);
 	public static StartupFinalBoolean safeNativeMemoryAllocation = new StartupFinalBoolean(DEFAULTS.safeNativeMemoryAllocation);
 	public static boolean enablePerformanceTrace = DEFAULTS.enablePerformanceTrace;
@@ -93,6 +95,11 @@ public class Configurator {
 	public static boolean steadyDebugScreen = DEFAULTS.steadyDebugScreen;
 	public static boolean disableUnseenSpriteAnimation = DEFAULTS.disableUnseenSpriteAnimation;
 	public static boolean cullBackfacingTerrain = DEFAULTS.cullBackfacingTerrain;
+	public static boolean compactTerrainVertices = DEFAULTS.compactTerrainVertices;
+	public static boolean directTerrainBuffers = DEFAULTS.directTerrainBuffers;
+	public static int terrainUploadMbPerFrame = DEFAULTS.terrainUploadMbPerFrame;
+	public static boolean indirectTerrainDraw = DEFAULTS.indirectTerrainDraw;
+	public static boolean frontToBackTerrain = DEFAULTS.frontToBackTerrain;
 	public static boolean debugSpriteAtlas = DEFAULTS.debugSpriteAtlas;
 	public static boolean traceTextureLoad = DEFAULTS.traceTextureLoad;
 
@@ -129,6 +136,7 @@ public class Configurator {
 
 		shaderDebug = config.shaderDebug;
 		preprocessShaderSource = config.preprocessShaderSource;
+		programBinaryCache = config.programBinaryCache;
 		//maxLightmapDelayFrames = config.maxLightmapDelayFrames;
 		//moreLightmap = config.moreLightmap;
 
@@ -164,6 +172,7 @@ public class Configurator {
 		conciseErrors = config.conciseErrors;
 		logMachineInfo = config.logMachineInfo;
 		logGlStateChanges = config.logGlStateChanges;
+		elideRedundantGlCalls = config.elideRedundantGlCalls;
 		debugNativeMemoryAllocation.set(config.debugNativeMemoryAllocation, isStartup);
 		enablePerformanceTrace = config.enablePerformanceTrace;
 		debugOcclusionBoxes = config.debugOcclusionBoxes;
@@ -183,6 +192,11 @@ public class Configurator {
 		enableNearOccluders = config.enableNearOccluders;
 		disableUnseenSpriteAnimation = config.disableUnseenSpriteAnimation;
 		cullBackfacingTerrain = config.cullBackfacingTerrain;
+		compactTerrainVertices = config.compactTerrainVertices;
+		directTerrainBuffers = config.directTerrainBuffers;
+		terrainUploadMbPerFrame = Mth.clamp(config.terrainUploadMbPerFrame, 1, 64);
+		indirectTerrainDraw = config.indirectTerrainDraw;
+		frontToBackTerrain = config.frontToBackTerrain;
 		debugSpriteAtlas = config.debugSpriteAtlas;
 		traceTextureLoad = config.traceTextureLoad;
 	}
@@ -195,6 +209,7 @@ public class Configurator {
 
 		config.shaderDebug = shaderDebug;
 		config.preprocessShaderSource = preprocessShaderSource;
+		config.programBinaryCache = programBinaryCache;
 		//config.maxLightmapDelayFrames = maxLightmapDelayFrames;
 
 		// config.hdLightmaps = hdLightmaps;
@@ -229,6 +244,7 @@ public class Configurator {
 		config.conciseErrors = conciseErrors;
 		config.logMachineInfo = logMachineInfo;
 		config.logGlStateChanges = logGlStateChanges;
+		config.elideRedundantGlCalls = elideRedundantGlCalls;
 		config.debugNativeMemoryAllocation = debugNativeMemoryAllocation.current;
 		config.enablePerformanceTrace = enablePerformanceTrace;
 		config.debugOcclusionBoxes = debugOcclusionBoxes;
@@ -248,6 +264,11 @@ public class Configurator {
 		config.enableNearOccluders = enableNearOccluders;
 		config.disableUnseenSpriteAnimation = disableUnseenSpriteAnimation;
 		config.cullBackfacingTerrain = cullBackfacingTerrain;
+		config.compactTerrainVertices = compactTerrainVertices;
+		config.directTerrainBuffers = directTerrainBuffers;
+		config.terrainUploadMbPerFrame = terrainUploadMbPerFrame;
+		config.indirectTerrainDraw = indirectTerrainDraw;
+		config.frontToBackTerrain = frontToBackTerrain;
 		config.debugSpriteAtlas = debugSpriteAtlas;
 		config.traceTextureLoad = traceTextureLoad;
 	}
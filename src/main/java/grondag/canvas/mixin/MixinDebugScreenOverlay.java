@@ -53,8 +53,10 @@ import grondag.canvas.buffer.util.DirectBufferAllocator;
 import grondag.canvas.buffer.util.GlBufferAllocator;
 import grondag.canvas.render.terrain.cluster.SlabAllocator;
 import grondag.canvas.render.world.CanvasWorldRenderer;
+import grondag.canvas.render.world.RenderThreadScheduler;
 import grondag.canvas.terrain.util.TerrainExecutor;
 import grondag.canvas.varia.CanvasGlHelper;
+import grondag.canvas.varia.GFX;
 //import grondag.canvas.config.Configurator;
 //import grondag.canvas.mixinterface.BufferBuilderExt;
 //import grondag.canvas.varia.AutoImmediate;
@@ -218,6 +220,8 @@ public class MixinDebugScreenOverlay extends GuiComponent {
 		result.add("Translucent " + worldRenderState.translucentClusterRealm.debugSummary());
 		result.add(worldRenderState.drawlistDebugSummary());
 		result.add(SlabAllocator.debugSummary());
+		result.add(RenderThreadScheduler.debugString());
+		result.add(GFX.STATE.debugString());
 
 		return result;
 	}
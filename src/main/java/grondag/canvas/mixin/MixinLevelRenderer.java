@@ -46,7 +46,6 @@ import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.PostChain;
 import net.minecraft.client.renderer.RenderBuffers;
-import net.minecraft.client.renderer.RunningTrimmedMean;
 import net.minecraft.client.renderer.ViewArea;
 import net.minecraft.client.renderer.chunk.ChunkRenderDispatcher.RenderChunk;
 import net.minecraft.client.renderer.culling.Frustum;
@@ -74,7 +73,6 @@ public class MixinLevelRenderer implements LevelRendererExt {
 	@Shadow private RenderBuffers renderBuffers;
 	@Shadow private int renderedEntities;
 	@Shadow private int culledEntities;
-	@Shadow private RunningTrimmedMean frameTimes;
 	@Shadow private RenderTarget entityTarget;
 	@Shadow private PostChain entityEffect;
 	@Shadow private Set<BlockEntity> globalBlockEntities;
@@ -239,11 +237,6 @@ public class MixinLevelRenderer implements LevelRendererExt {
 		return renderBuffers;
 	}
 
-	@Override
-	public RunningTrimmedMean canvas_chunkUpdateSmoother() {
-		return frameTimes;
-	}
-
 	@Override
 	public boolean canvas_canDrawEntityOutlines() {
 		return shouldShowEntityOutlines();
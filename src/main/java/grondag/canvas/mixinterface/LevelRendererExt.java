@@ -35,7 +35,6 @@ import net.minecraft.client.renderer.LightTexture;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.PostChain;
 import net.minecraft.client.renderer.RenderBuffers;
-import net.minecraft.client.renderer.RunningTrimmedMean;
 import net.minecraft.client.renderer.entity.EntityRenderDispatcher;
 import net.minecraft.core.BlockPos;
 import net.minecraft.server.level.BlockDestructionProgress;
@@ -52,8 +51,6 @@ public interface LevelRendererExt {
 
 	RenderBuffers canvas_bufferBuilders();
 
-	RunningTrimmedMean canvas_chunkUpdateSmoother();
-
 	boolean canvas_canDrawEntityOutlines();
 
 	RenderTarget canvas_entityOutlinesFramebuffer();
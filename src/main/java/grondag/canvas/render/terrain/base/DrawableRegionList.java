@@ -60,10 +60,15 @@ public interface DrawableRegionList {
 		}
 	};
 
+	/**
+	 * @param previous list being replaced. Parts of it that are unchanged may be reused,
+	 * so close it only after this returns.
+	 */
 	static DrawableRegionList build(
 			final VisibleRegionList visibleRegions,
 			boolean isTranslucent,
-			boolean isShadowMap
+			boolean isShadowMap,
+			DrawableRegionList previous
 	) {
 		final ObjectArrayList<DrawableRegion> drawables = new ObjectArrayList<>();
 
@@ -83,7 +88,7 @@ public interface DrawableRegionList {
 		}
 
 		final var renderState = isTranslucent ? TerrainRenderStates.TRANSLUCENT : TerrainRenderStates.SOLID;
-		return drawables.isEmpty() ? DrawableRegionList.EMPTY : RealmDrawList.build(drawables, renderState, isShadowMap);
+		return drawables.isEmpty() ? DrawableRegionList.EMPTY : RealmDrawList.build(drawables, renderState, isShadowMap, previous);
 	}
 
 	@FunctionalInterface
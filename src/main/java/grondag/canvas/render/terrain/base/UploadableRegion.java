@@ -27,5 +27,10 @@ public interface UploadableRegion {
 	 */
 	DrawableRegion produceDrawable();
 
+	/** Bytes that will be sent to the GPU by {@link #produceDrawable()}. */
+	default int byteCount() {
+		return 0;
+	}
+
 	UploadableRegion EMPTY_UPLOADABLE = () -> DrawableRegion.EMPTY_DRAWABLE;
 }
@@ -53,6 +53,10 @@ public class ClusterTaskManager {
 		} while (System.nanoTime() < deadlineNanos);
 	}
 
+	public static int taskCount() {
+		return TASKS.size();
+	}
+
 	static void schedule(ClusterTask task) {
 		TASKS.offer(task);
 	}
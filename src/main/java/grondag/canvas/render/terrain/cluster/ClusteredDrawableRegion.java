@@ -55,9 +55,15 @@ public class ClusteredDrawableRegion extends AbstractDrawableRegion<ClusteredDra
 		assert drawList.size() == 1;
 		assert collector.sorted() == translucent;
 
-		final TransferBuffer transferBuffer = TransferBuffers.claim(byteCount);
 		final FaceBucket[] buckets = translucent ? null : collector.faceBuckets();
-		collector.toBuffer(transferBuffer, 0);
+		TransferBuffer transferBuffer = collector.takeTransferBuffer();
+
+		if (transferBuffer == null) {
+			transferBuffer = TransferBuffers.claim(byteCount);
+			collector.toBuffer(transferBuffer, 0);
+		}
+
+		assert transferBuffer.sizeBytes() == byteCount;
 		final ClusteredDrawableStorage storage = new ClusteredDrawableStorage(
 				realm,
 				transferBuffer, byteCount, origin, collector.quadCount() * 4,
@@ -72,6 +78,11 @@ public class ClusteredDrawableRegion extends AbstractDrawableRegion<ClusteredDra
 		return this;
 	}
 
+	@Override
+	public int byteCount() {
+		return storage().byteCount;
+	}
+
 	@Override
 	protected void closeInner() {
 		// NOOP
@@ -20,8 +20,6 @@
 
 package grondag.canvas.render.terrain.cluster;
 
-import static grondag.canvas.render.terrain.cluster.SlabAllocator.BYTES_PER_SLAB_VERTEX;
-
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 
@@ -29,36 +27,80 @@ import org.jetbrains.annotations.Nullable;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 
+import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.buffer.render.AbstractGlBuffer;
 import grondag.canvas.buffer.render.TransferBuffer;
 import grondag.canvas.buffer.util.BufferSynchronizer;
 import grondag.canvas.buffer.util.BufferSynchronizer.SynchronizedBuffer;
 import grondag.canvas.render.terrain.cluster.VertexCluster.RegionAllocation.SlabAllocation;
 import grondag.canvas.render.terrain.cluster.VertexCluster.SlabAllocationFactory;
+import grondag.canvas.render.terrain.drawlist.SlabIndex;
+import grondag.canvas.render.terrain.drawlist.TerrainVAO;
 import grondag.canvas.varia.GFX;
 
 public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
+	private static int nextId = 0;
+
+	/** Unique to each slab. Lets draw lists group by slab without an identity map. */
+	public final int id;
 	private final TransferSlab transferSlab = new TransferSlab();
-	private int headVertexIndex = 0;
+	private final SlabFreeList freeList;
 	private int usedVertexCount;
 	private final int maxVertexCount;
-
-	Slab(int capacityBytes) {
+	/** Last values reported to {@link SlabAllocator} for fragmentation stats. */
+	private int reportedRangeCount;
+	private int reportedStrandedVertexCount;
+	private final CanvasVertexFormat vertexFormat;
+	private final int bytesPerVertex;
+	private TerrainVAO vao;
+
+	Slab(CanvasVertexFormat vertexFormat, int capacityBytes) {
 		// NB: STATIC makes a huge positive difference on AMD at least
 		super(capacityBytes, GFX.GL_ARRAY_BUFFER, GFX.GL_STATIC_DRAW);
 		assert RenderSystem.isOnRenderThread();
-		maxVertexCount = (capacityBytes / BYTES_PER_SLAB_VERTEX) & ~3;
+		id = nextId++;
+		this.vertexFormat = vertexFormat;
+		bytesPerVertex = vertexFormat.vertexStrideBytes;
+		maxVertexCount = (capacityBytes / bytesPerVertex) & ~3;
+		freeList = new SlabFreeList(maxVertexCount);
+	}
+
+	/** Terrain format in effect when this slab was claimed. All allocations share it. */
+	public CanvasVertexFormat vertexFormat() {
+		return vertexFormat;
+	}
+
+	/**
+	 * VAO for draws that address this slab with base vertex offsets.
+	 * Created on first use and shut down with the slab, so draw lists can share it.
+	 */
+	public TerrainVAO vao() {
+		assert RenderSystem.isOnRenderThread();
+		assert !isClosed;
+		TerrainVAO result = vao;
+
+		if (result == null) {
+			result = new TerrainVAO(vertexFormat, this::glBufferId, () -> SlabIndex.get().glBufferId(), 0);
+			vao = result;
+		}
+
+		return result;
 	}
 
 	TransferBuffer asTransferBuffer() {
 		return transferSlab;
 	}
 
-	/** How much vertex capacity is remaining. */
+	/** Largest single allocation the slab can currently accept. */
 	int availableVertexCount() {
 		assert RenderSystem.isOnRenderThread();
-		assert headVertexIndex <= maxVertexCount;
-		return maxVertexCount - headVertexIndex;
+		return freeList.largestFreeVertexCount();
+	}
+
+	/** Fraction of free space outside the largest free range. Zero when free space is contiguous. */
+	float fragmentation() {
+		final int free = freeList.freeVertexCount();
+		return free == 0 ? 0 : (float) freeList.strandedVertexCount() / free;
 	}
 
 	int usedVertexCount() {
@@ -67,14 +109,15 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 
 	/**
 	 * Excludes bytes no longer used by their allocation.
-	 * Thus, may not match {@link #capacityBytes()} - {@link #availableBytes()}.
+	 * Thus, may not match {@link #capacityBytes()} - {@link #availableBytes()}
+	 * when free space is split into more than one range.
 	 */
 	int usedBytes() {
-		return usedVertexCount * BYTES_PER_SLAB_VERTEX;
+		return usedVertexCount * bytesPerVertex;
 	}
 
 	int availableBytes() {
-		return availableVertexCount() * BYTES_PER_SLAB_VERTEX;
+		return availableVertexCount() * bytesPerVertex;
 	}
 
 	public boolean isFull() {
@@ -89,14 +132,24 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 	void release() {
 		assert RenderSystem.isOnRenderThread();
 		assert usedVertexCount == 0;
-		headVertexIndex = 0;
+		freeList.clear();
+		updateFragmentationStats();
 		BufferSynchronizer.accept(this);
 	}
 
 	private void addToVertexCounts(int vertexCount) {
 		usedVertexCount += vertexCount;
 		assert usedVertexCount >= 0;
-		SlabAllocator.addToVertexCount(vertexCount);
+		SlabAllocator.addToUsedBytes(vertexCount * bytesPerVertex);
+	}
+
+	private void updateFragmentationStats() {
+		// the single range of an empty or append-only slab isn't a hole
+		final int rangeCount = Math.max(0, freeList.rangeCount() - 1);
+		final int strandedVertexCount = freeList.strandedVertexCount();
+		SlabAllocator.addToFragmentation(rangeCount - reportedRangeCount, (strandedVertexCount - reportedStrandedVertexCount) * bytesPerVertex);
+		reportedRangeCount = rangeCount;
+		reportedStrandedVertexCount = strandedVertexCount;
 	}
 
 	@Override
@@ -106,8 +159,8 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 
 	/** Returns the number of vertices allocated. */
 	SlabAllocation allocateAndLoad(SlabAllocationFactory factory, TransferBuffer buffer) {
-		final int quadVertexCount = buffer.sizeBytes() / BYTES_PER_SLAB_VERTEX;
-		assert quadVertexCount * BYTES_PER_SLAB_VERTEX == buffer.sizeBytes();
+		final int quadVertexCount = buffer.sizeBytes() / bytesPerVertex;
+		assert quadVertexCount * bytesPerVertex == buffer.sizeBytes();
 		return allocateInner(factory, buffer, 0, quadVertexCount);
 	}
 
@@ -121,17 +174,18 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 			return null;
 		}
 
-		final int newHeadVertexIndex = headVertexIndex + allocatedVertexCount;
-		final var allocation = factory.create(this, headVertexIndex, allocatedVertexCount);
+		final int baseVertexIndex = freeList.allocate(allocatedVertexCount);
+		assert baseVertexIndex >= 0 : "Slab allocation without room";
+		final var allocation = factory.create(this, baseVertexIndex, allocatedVertexCount);
 		addToVertexCounts(allocatedVertexCount);
+		updateFragmentationStats();
 
 		GFX.bindBuffer(bindTarget, glBufferId());
 		buffer.transferToBoundBuffer(bindTarget,
-				headVertexIndex * BYTES_PER_SLAB_VERTEX,
-				sourceStartVertexIndex * BYTES_PER_SLAB_VERTEX,
-				allocatedVertexCount * BYTES_PER_SLAB_VERTEX);
+				baseVertexIndex * bytesPerVertex,
+				sourceStartVertexIndex * bytesPerVertex,
+				allocatedVertexCount * bytesPerVertex);
 
-		headVertexIndex = newHeadVertexIndex;
 		return allocation;
 	}
 
@@ -139,12 +193,20 @@ public class Slab extends AbstractGlBuffer implements SynchronizedBuffer {
 		assert RenderSystem.isOnRenderThread();
 		assert !isClosed;
 		addToVertexCounts(-allocation.quadVertexCount);
+		freeList.free(allocation.baseQuadVertexIndex, allocation.quadVertexCount);
+		updateFragmentationStats();
 	}
 
 	@Override
 	protected void onShutdown() {
 		assert RenderSystem.isOnRenderThread();
 		assert usedVertexCount == 0;
+
+		if (vao != null) {
+			vao.shutdown();
+			vao = null;
+		}
+
 		SlabAllocator.notifyShutdown(this);
 	}
 
@@ -22,15 +22,29 @@ package grondag.canvas.render.terrain.cluster;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 
+import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.buffer.format.TerrainEncoder;
 
 public class SlabAllocator {
 	private static int slabCount = 0;
 	private static long usedBytes = 0;
 	private static long capacityBytes = 0;
+	private static int holeCount = 0;
+	private static long strandedBytes = 0;
+	private static int compactionCount = 0;
 
-	static void addToVertexCount(int vertexCount) {
-		usedBytes += vertexCount * BYTES_PER_SLAB_VERTEX;
+	static void addToUsedBytes(int bytes) {
+		usedBytes += bytes;
+	}
+
+	/** Slabs report changes in free ranges other than their largest. */
+	static void addToFragmentation(int holes, int bytes) {
+		holeCount += holes;
+		strandedBytes += bytes;
+	}
+
+	static void notifyCompaction() {
+		++compactionCount;
 	}
 
 	static void notifyShutdown(Slab slab) {
@@ -40,26 +54,27 @@ public class SlabAllocator {
 	}
 
 	public static final int SLAB_QUAD_VERTEX_COUNT_INCREMENT = 0x1000;
-	public static final int BYTES_PER_SLAB_VERTEX = 28;
-	static final int SLAB_BYTES_INCREMENT = SLAB_QUAD_VERTEX_COUNT_INCREMENT * BYTES_PER_SLAB_VERTEX;
-
-	static {
-		// Want IDE to show actual numbers above, so check here at run time that nothing changed and got missed.
-		assert BYTES_PER_SLAB_VERTEX == TerrainEncoder.TERRAIN_MATERIAL.vertexStrideBytes : "Slab vertex size doesn't match vertex format";
-	}
 
+	/** Slabs take the terrain format in effect when claimed so the byte increment follows the format. */
 	static Slab claim(int minCapacityBytes) {
 		assert RenderSystem.isOnRenderThread();
 		++slabCount;
-		final var result = new Slab((minCapacityBytes + SLAB_BYTES_INCREMENT - 1) / SLAB_BYTES_INCREMENT * SLAB_BYTES_INCREMENT);
+		final CanvasVertexFormat format = TerrainEncoder.terrainFormat();
+		final int bytesIncrement = SLAB_QUAD_VERTEX_COUNT_INCREMENT * format.vertexStrideBytes;
+		final var result = new Slab(format, (minCapacityBytes + bytesIncrement - 1) / bytesIncrement * bytesIncrement);
 		capacityBytes += result.capacityBytes();
 		return result;
 	}
 
 	public static String debugSummary() {
-		return String.format("%d slabs %dMb occ:%d",
+		final long freeBytes = capacityBytes - usedBytes;
+
+		return String.format("%d slabs %dMb occ:%d holes:%d frag:%d cmp:%d",
 				slabCount,
 				capacityBytes / 0x100000L,
-				capacityBytes > 0 ? usedBytes * 100L / capacityBytes : 0);
+				capacityBytes > 0 ? usedBytes * 100L / capacityBytes : 0,
+				holeCount,
+				freeBytes > 0 ? strandedBytes * 100L / freeBytes : 0,
+				compactionCount);
 	}
 }
@@ -0,0 +1,188 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.render.terrain.cluster;
+
+import java.util.Arrays;
+
+/**
+ * Free-list of vertex ranges within a slab. Ranges are kept sorted by start
+ * and adjacent free ranges are coalesced, so space freed by closed regions
+ * can be reused by new ones without compacting the whole cluster.
+ *
+ * <p>Pure bookkeeping - no GL calls - so it can be tested on its own.
+ */
+final class SlabFreeList {
+	private int[] starts = new int[8];
+	private int[] lengths = new int[8];
+	private int rangeCount;
+	private int freeVertexCount;
+	private final int capacityVertexCount;
+
+	SlabFreeList(int capacityVertexCount) {
+		this.capacityVertexCount = capacityVertexCount;
+		clear();
+	}
+
+	/** Marks the whole slab free. */
+	void clear() {
+		rangeCount = 0;
+		freeVertexCount = 0;
+
+		if (capacityVertexCount > 0) {
+			starts[0] = 0;
+			lengths[0] = capacityVertexCount;
+			rangeCount = 1;
+			freeVertexCount = capacityVertexCount;
+		}
+	}
+
+	/**
+	 * Claims the smallest free range that fits, from its start.
+	 * Returns the first vertex index or -1 if no single range is large enough.
+	 */
+	int allocate(int vertexCount) {
+		assert vertexCount > 0;
+		int best = -1;
+		int bestLength = Integer.MAX_VALUE;
+
+		for (int i = 0; i < rangeCount; ++i) {
+			final int len = lengths[i];
+
+			if (len >= vertexCount && len < bestLength) {
+				best = i;
+				bestLength = len;
+
+				if (len == vertexCount) {
+					break;
+				}
+			}
+		}
+
+		if (best == -1) {
+			return -1;
+		}
+
+		final int result = starts[best];
+
+		if (bestLength == vertexCount) {
+			removeRange(best);
+		} else {
+			starts[best] += vertexCount;
+			lengths[best] -= vertexCount;
+		}
+
+		freeVertexCount -= vertexCount;
+		return result;
+	}
+
+	/** Returns a range obtained from {@link #allocate(int)}. */
+	void free(int start, int vertexCount) {
+		assert vertexCount > 0;
+		assert start >= 0 && start + vertexCount <= capacityVertexCount;
+
+		// index of first range that starts after the freed range
+		int index = Arrays.binarySearch(starts, 0, rangeCount, start);
+		assert index < 0 : "Range freed twice";
+		index = -index - 1;
+
+		assert index == 0 || starts[index - 1] + lengths[index - 1] <= start : "Freed range overlaps free space";
+		assert index == rangeCount || start + vertexCount <= starts[index] : "Freed range overlaps free space";
+
+		final boolean joinsPrior = index > 0 && starts[index - 1] + lengths[index - 1] == start;
+		final boolean joinsNext = index < rangeCount && start + vertexCount == starts[index];
+
+		if (joinsPrior && joinsNext) {
+			lengths[index - 1] += vertexCount + lengths[index];
+			removeRange(index);
+		} else if (joinsPrior) {
+			lengths[index - 1] += vertexCount;
+		} else if (joinsNext) {
+			starts[index] = start;
+			lengths[index] += vertexCount;
+		} else {
+			insertRange(index, start, vertexCount);
+		}
+
+		freeVertexCount += vertexCount;
+	}
+
+	private void removeRange(int index) {
+		final int tail = rangeCount - index - 1;
+
+		if (tail > 0) {
+			System.arraycopy(starts, index + 1, starts, index, tail);
+			System.arraycopy(lengths, index + 1, lengths, index, tail);
+		}
+
+		--rangeCount;
+	}
+
+	private void insertRange(int index, int start, int length) {
+		if (rangeCount == starts.length) {
+			starts = Arrays.copyOf(starts, rangeCount * 2);
+			lengths = Arrays.copyOf(lengths, rangeCount * 2);
+		}
+
+		final int tail = rangeCount - index;
+
+		if (tail > 0) {
+			System.arraycopy(starts, index, starts, index + 1, tail);
+			System.arraycopy(lengths, index, lengths, index + 1, tail);
+		}
+
+		starts[index] = start;
+		lengths[index] = length;
+		++rangeCount;
+	}
+
+	int capacityVertexCount() {
+		return capacityVertexCount;
+	}
+
+	int freeVertexCount() {
+		return freeVertexCount;
+	}
+
+	int usedVertexCount() {
+		return capacityVertexCount - freeVertexCount;
+	}
+
+	/** Number of separate free ranges. */
+	int rangeCount() {
+		return rangeCount;
+	}
+
+	/** Largest allocation that can currently succeed. */
+	int largestFreeVertexCount() {
+		int result = 0;
+
+		for (int i = 0; i < rangeCount; ++i) {
+			result = Math.max(result, lengths[i]);
+		}
+
+		return result;
+	}
+
+	/** Free vertices outside the largest free range - space that small allocations must fill. */
+	int strandedVertexCount() {
+		return freeVertexCount - largestFreeVertexCount();
+	}
+}
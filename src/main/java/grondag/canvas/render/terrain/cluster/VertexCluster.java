@@ -35,6 +35,11 @@ import grondag.canvas.render.terrain.drawlist.SlabIndex;
 import grondag.canvas.render.terrain.drawlist.TerrainVAO;
 
 public class VertexCluster implements ClusterTask {
+	/** Compact when more than this share of slab capacity is unusable for new regions. */
+	private static final float COMPACTION_FRAGMENTATION = 0.5f;
+	/** Compact regardless of fragmentation past this many slabs to bound draw calls. */
+	private static final int MAX_SLABS_BEFORE_COMPACTION = 4;
+
 	private final ReferenceOpenHashSet<ClusterDrawList> holdingLists = new ReferenceOpenHashSet<>();
 	public final VertexClusterRealm realm;
 	private final IdentityHashMap<ClusteredDrawableStorage, RegionAllocation> allocatedRegions = new IdentityHashMap<>();
@@ -48,6 +53,14 @@ public class VertexCluster implements ClusterTask {
 	private boolean isScheduled = false;
 	private boolean itMe = false;
 
+	// Compaction in progress - moves regions to the target slab over one or more frames
+	private @Nullable Slab compactionTarget = null;
+	private final ReferenceOpenHashSet<Slab> compactionSources = new ReferenceOpenHashSet<>();
+	private final ObjectArrayList<RegionAllocation> pendingMoves = new ObjectArrayList<>();
+	private final ReferenceOpenHashSet<ClusteredDrawableStorage> movedRegions = new ReferenceOpenHashSet<>();
+	private int nextMoveIndex = 0;
+	private int pendingMoveBytes = 0;
+
 	public VertexCluster(VertexClusterRealm owner, long clusterPos) {
 		realm = owner;
 		this.clusterPos = clusterPos;
@@ -57,14 +70,48 @@ public class VertexCluster implements ClusterTask {
 		return activeBytes;
 	}
 
-	private Slab getHungrySlab(int slabBytes) {
-		if (hungrySlab == null || hungrySlab.availableBytes() < slabBytes) {
+	/**
+	 * Finds the slab with the tightest free range that fits, so holes left by closed
+	 * regions are filled before a new slab is claimed.
+	 */
+	private Slab slabFor(int slabBytes) {
+		Slab result = null;
+		int resultBytes = Integer.MAX_VALUE;
+
+		for (final var slab : slabs) {
+			if (compactionSources.contains(slab)) {
+				continue;
+			}
+
+			// leave room for regions still waiting to move into the compaction target
+			final int available = slab == compactionTarget ? slab.availableBytes() - pendingMoveBytes : slab.availableBytes();
+
+			if (available >= slabBytes && available < resultBytes) {
+				result = slab;
+				resultBytes = available;
+			}
+		}
+
+		if (result == null) {
 			// We want to use the new slab for compaction so request one big enough to hold everything we have
 			hungrySlab = SlabAllocator.claim(activeBytes + slabBytes);
 			slabs.add(hungrySlab);
+			result = hungrySlab;
 		}
 
-		return hungrySlab;
+		return result;
+	}
+
+	/** Share of slab capacity that holds neither live data nor room at the hungry slab. */
+	private float fragmentation() {
+		long capacity = 0;
+
+		for (final var slab : slabs) {
+			capacity += slab.capacityBytes();
+		}
+
+		final long unusable = capacity - activeBytes - (hungrySlab == null ? 0 : hungrySlab.availableBytes());
+		return capacity == 0 ? 0 : (float) unusable / capacity;
 	}
 
 	void close() {
@@ -74,6 +121,7 @@ public class VertexCluster implements ClusterTask {
 			isClosed = true;
 
 			activeBytes = 0;
+			endCompaction();
 
 			if (!allocatedRegions.isEmpty()) {
 				itMe = true;
@@ -119,7 +167,8 @@ public class VertexCluster implements ClusterTask {
 	}
 
 	private void scheduleIfNeeded() {
-		if (!isClosed && slabs.size() > 1 && !isScheduled) {
+		if (!isClosed && slabs.size() > 1 && !isScheduled
+				&& (slabs.size() > MAX_SLABS_BEFORE_COMPACTION || fragmentation() > COMPACTION_FRAGMENTATION)) {
 			isScheduled = true;
 			ClusterTaskManager.schedule(this);
 		}
@@ -131,18 +180,30 @@ public class VertexCluster implements ClusterTask {
 
 	@Override
 	public boolean run(long deadlineNanos) {
-		if (isScheduled) {
+		if (!isScheduled) {
+			return true;
+		}
+
+		if (compactionTarget == null && !beginCompaction()) {
 			isScheduled = false;
-			compact();
+			return true;
 		}
 
+		if (!continueCompaction(deadlineNanos)) {
+			// resume next frame
+			return false;
+		}
+
+		finishCompaction();
+		isScheduled = false;
+		scheduleIfNeeded();
 		return true;
 	}
 
-	private void compact() {
-		if (slabs.size() < 2) {
-			// nothing to do
-			return;
+	/** Chooses the target slab and captures the regions that must move. False if nothing to do. */
+	private boolean beginCompaction() {
+		if (isClosed || slabs.size() < 2) {
+			return false;
 		}
 
 		// NB: hungry slab can't be null here because we have at least two slabs. But
@@ -155,43 +216,104 @@ public class VertexCluster implements ClusterTask {
 			slabs.add(hungrySlab);
 		}
 
-		final Slab hungrySlab = this.hungrySlab;
+		final Slab target = hungrySlab;
+		compactionTarget = target;
+
+		for (final var slab : slabs) {
+			if (slab != target) {
+				compactionSources.add(slab);
+			}
+		}
 
 		for (final var region : allocatedRegions.values()) {
-			final var oldAllocation = region.getAllocation();
+			if (region.getAllocation().slab != target) {
+				pendingMoves.add(region);
+				pendingMoveBytes += region.region.byteCount;
+			}
+		}
 
-			if (oldAllocation.slab != hungrySlab) {
-				final var newAllocation = hungrySlab.transferFromSlabAllocation(region.factory, oldAllocation);
-				region.setAllocation(newAllocation);
-				oldAllocation.release();
+		nextMoveIndex = 0;
+		SlabAllocator.notifyCompaction();
+		return true;
+	}
+
+	/**
+	 * Moves regions into the target slab until done or past the deadline.
+	 * Moved regions keep their old allocation so existing draw lists stay valid.
+	 * Returns true when all regions have moved.
+	 */
+	private boolean continueCompaction(long deadlineNanos) {
+		final Slab target = compactionTarget;
+		final int limit = pendingMoves.size();
+
+		while (nextMoveIndex < limit) {
+			final var region = pendingMoves.get(nextMoveIndex++);
+			pendingMoveBytes -= region.region.byteCount;
+
+			if (region.moveTo(target)) {
+				movedRegions.add(region.region);
+			}
+
+			if (System.nanoTime() >= deadlineNanos) {
+				break;
 			}
 		}
 
-		assert slabs.size() == 1;
-		assert slabs.get(0) == hungrySlab;
+		return nextMoveIndex == limit;
+	}
 
-		if (!holdingLists.isEmpty()) {
+	/** Invalidates draw lists that used moved regions and only then frees the old allocations. */
+	private void finishCompaction() {
+		if (!movedRegions.isEmpty()) {
 			for (final var list : holdingLists) {
-				list.invalidate();
+				if (list.containsAny(movedRegions)) {
+					list.invalidate();
+				}
 			}
 		}
+
+		endCompaction();
+	}
+
+	private void endCompaction() {
+		final Slab target = compactionTarget;
+		final int limit = pendingMoves.size();
+
+		for (int i = 0; i < limit; ++i) {
+			pendingMoves.get(i).releaseRetired();
+		}
+
+		pendingMoves.clear();
+		movedRegions.clear();
+		compactionSources.clear();
+		compactionTarget = null;
+		nextMoveIndex = 0;
+		pendingMoveBytes = 0;
+
+		// an empty target is kept while compaction may still copy into it
+		if (target != null && target.isEmpty() && target != hungrySlab && slabs.remove(target)) {
+			target.release();
+		}
 	}
 
-	void addListListener(ClusterDrawList listener) {
+	/** Lists are notified when compaction moves one of their regions. */
+	public void addListListener(ClusterDrawList listener) {
 		assert !holdingLists.contains(listener);
 		assert !isClosed;
 		holdingLists.add(listener);
 	}
 
-	void removeListListener(ClusterDrawList listener) {
-		assert holdingLists.contains(listener);
-		assert !isClosed;
+	public void removeListListener(ClusterDrawList listener) {
+		// cluster may have closed since the list was built
+		assert isClosed || holdingLists.contains(listener);
 		holdingLists.remove(listener);
 	}
 
 	public class RegionAllocation {
 		public final ClusteredDrawableStorage region;
 		private SlabAllocation slabAllocation;
+		/** Prior allocation kept drawable while compaction is in progress. */
+		private @Nullable SlabAllocation retiredAllocation;
 
 		private final SlabAllocationFactory factory = (s, b, q) -> {
 			return new SlabAllocation(s, b, q);
@@ -200,7 +322,7 @@ public class VertexCluster implements ClusterTask {
 		private RegionAllocation(ClusteredDrawableStorage region) {
 			this.region = region;
 			final var transferBuffer = region.getAndClearTransferBuffer();
-			slabAllocation = getHungrySlab(region.byteCount).allocateAndLoad(factory, transferBuffer);
+			slabAllocation = slabFor(region.byteCount).allocateAndLoad(factory, transferBuffer);
 			assert slabAllocation.quadVertexCount == region.quadVertexCount;
 			transferBuffer.release();
 			allocatedRegions.put(region, this);
@@ -212,12 +334,35 @@ public class VertexCluster implements ClusterTask {
 			assert slabAllocation == null : "Region close did not release slab allocations";
 		}
 
+		/** Copies data to the target slab. Returns false if the region closed or is already there. */
+		private boolean moveTo(Slab target) {
+			final var oldAllocation = slabAllocation;
+
+			if (oldAllocation == null || oldAllocation.slab == target) {
+				return false;
+			}
+
+			assert retiredAllocation == null;
+			slabAllocation = target.transferFromSlabAllocation(factory, oldAllocation);
+			retiredAllocation = oldAllocation;
+			return true;
+		}
+
+		private void releaseRetired() {
+			if (retiredAllocation != null) {
+				retiredAllocation.release();
+				retiredAllocation = null;
+			}
+		}
+
 		public void onRegionClosed() {
 			if (slabAllocation != null) {
 				slabAllocation.release();
 				slabAllocation = null;
 			}
 
+			releaseRetired();
+
 			// Don't remove from map when closing - avoids CME
 			if (!itMe && allocatedRegions.remove(region) == null) {
 				assert false : "Closure notification from region not in cluster.";
@@ -258,7 +403,7 @@ public class VertexCluster implements ClusterTask {
 				this.baseQuadVertexIndex = baseQuadVertexIndex;
 				this.quadVertexCount = quadVertexCount;
 
-				vao = new TerrainVAO(() -> slab.glBufferId(), () -> SlabIndex.get().glBufferId(), baseQuadVertexIndex);
+				vao = new TerrainVAO(slab.vertexFormat(), () -> slab.glBufferId(), () -> SlabIndex.get().glBufferId(), baseQuadVertexIndex);
 			}
 
 			public ClusteredDrawableStorage region() {
@@ -278,7 +423,7 @@ public class VertexCluster implements ClusterTask {
 					slab.removeAllocation(this);
 					scheduleIfNeeded();
 
-					if (slab.isEmpty() && slab != hungrySlab) {
+					if (slab.isEmpty() && slab != hungrySlab && slab != compactionTarget) {
 						if (slabs.remove(slab)) {
 							slab.release();
 						} else {
@@ -20,7 +20,8 @@
 
 package grondag.canvas.render.terrain.drawlist;
 
-import java.util.IdentityHashMap;
+import java.util.Arrays;
+import java.util.Set;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
@@ -29,85 +30,239 @@ import grondag.canvas.render.terrain.cluster.ClusteredDrawableStorage;
 import grondag.canvas.render.terrain.cluster.Slab;
 import grondag.canvas.render.terrain.cluster.VertexCluster;
 import grondag.canvas.render.terrain.cluster.VertexCluster.RegionAllocation.SlabAllocation;
-import grondag.canvas.render.world.SkyShadowRenderer;
 import grondag.canvas.varia.GFX;
 
 public class ClusterDrawList {
+	// scratch structures, render thread only
+	private static final ObjectArrayList<SlabAllocation> ORDERED_ALLOCATIONS = new ObjectArrayList<>();
+	private static final DrawListGrouper<SlabAllocation> SLAB_GROUPS = new DrawListGrouper<>();
+
+	/**
+	 * Drawing solid regions in distance order needs a new spec, and thus a bind and draw call,
+	 * each time the slab changes. Ordering is used only when the cluster has at least this
+	 * many quads for each spec added, so the extra calls are small next to the fill they can save.
+	 */
+	private static final int MIN_QUADS_PER_EXTRA_SPEC = 4096;
+
+	/** Refilled in place when a new realm list rebuilds this list for changed regions. */
 	final ObjectArrayList<ClusteredDrawableStorage> regions = new ObjectArrayList<>();
 	final VertexCluster cluster;
-	final RealmDrawList owner;
+	/** Changes when a new realm list takes over this list because its regions haven't changed. */
+	private RealmDrawList owner;
 	private final ObjectArrayList<DrawSpec> drawSpecs = new ObjectArrayList<>();
+	/** Region snapshot for realm-wide indirect draws. Kept across rebuilds so its storage is reused. */
+	private IndirectRealmDraw.ClusterRecords<Slab> indirectRecords;
+	private boolean isIndirect;
 	private int quadCount;
+	/** Allocation of each region when specs were built, to detect when they can be reused. Grows but never shrinks. */
+	private SlabAllocation[] builtAllocations = new SlabAllocation[16];
+	/** Visible faces of each region when specs were built. Only checked when specs depend on them. */
+	private int[] builtFaceFlags = new int[16];
+	private boolean usesFaceFlags;
+	private boolean isInvalid = false;
 
 	ClusterDrawList(VertexCluster cluster, RealmDrawList owner) {
 		this.cluster = cluster;
 		this.owner = owner;
+		cluster.addListListener(this);
 	}
 
 	public int quadCount() {
 		return quadCount;
 	}
 
-	void build() {
+	/** Replaces the regions of this list and builds specs for them, reusing the storage of the last build. */
+	void rebuild(ObjectArrayList<ClusteredDrawableStorage> newRegions) {
+		assert newRegions.stream().allMatch(r -> r.allocation().cluster() == cluster);
+		isInvalid = false;
+		releaseSpecs();
+		regions.clear();
+		regions.addElements(0, newRegions.elements(), 0, newRegions.size());
+		build();
+	}
+
+	private void build() {
 		assert drawSpecs.isEmpty();
+		isIndirect = false;
 
 		if (cluster.realm.isTranslucent) {
+			usesFaceFlags = false;
 			buildTranslucent();
 		} else {
 			buildSolid();
 		}
+
+		final int limit = regions.size();
+
+		if (builtAllocations.length < limit) {
+			builtAllocations = new SlabAllocation[limit];
+			builtFaceFlags = new int[limit];
+		} else {
+			// don't keep released allocations reachable
+			Arrays.fill(builtAllocations, limit, builtAllocations.length, null);
+		}
+
+		for (int i = 0; i < limit; ++i) {
+			final var region = regions.get(i);
+			builtAllocations[i] = region.allocation().getAllocation();
+			builtFaceFlags[i] = faceFlags(region);
+		}
+	}
+
+	private int faceFlags(ClusteredDrawableStorage region) {
+		return owner.isShadowMap ? region.shadowVisibleFaceFlags() : region.visibleFaceFlags();
+	}
+
+	/** True if specs built for the given regions would be the same as the ones we have. */
+	boolean canReuseFor(ObjectArrayList<ClusteredDrawableStorage> newRegions, boolean isIndirect) {
+		final int limit = newRegions.size();
+
+		if (isInvalid || isIndirect != this.isIndirect || limit != regions.size()) {
+			return false;
+		}
+
+		for (int i = 0; i < limit; ++i) {
+			final var region = newRegions.get(i);
+
+			if (region != regions.get(i) || region.allocation().getAllocation() != builtAllocations[i]) {
+				return false;
+			}
+
+			if (usesFaceFlags && faceFlags(region) != builtFaceFlags[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	void moveTo(RealmDrawList newOwner) {
+		assert newOwner.isShadowMap == owner.isShadowMap;
+		owner = newOwner;
+	}
+
+	boolean isOwnedBy(RealmDrawList list) {
+		return owner == list;
+	}
+
+	/** Rebuilds specs if regions in this cluster were moved since they were built. */
+	void rebuildIfInvalid() {
+		if (isInvalid) {
+			isInvalid = false;
+			releaseSpecs();
+			build();
+		}
 	}
 
-	/** Maintains region sort order at the cost of extra binds/calls if needed. */
 	private void buildTranslucent() {
+		quadCount = buildInRegionOrder(false, false);
+	}
+
+	/** Maintains region sort order at the cost of extra binds/calls if needed. */
+	private int buildInRegionOrder(boolean isShadowMap, boolean cullBackFace) {
 		Slab lastSlab = null;
-		final ObjectArrayList<SlabAllocation> specAllocations = new ObjectArrayList<>();
+		final ObjectArrayList<SlabAllocation> specAllocations = ORDERED_ALLOCATIONS;
+		assert specAllocations.isEmpty();
+		final int limit = regions.size();
 		int quadCount = 0;
 
-		for (final var region : regions) {
-			final var alloc = region.allocation().getAllocation();
+		for (int i = 0; i < limit; ++i) {
+			final var alloc = regions.get(i).allocation().getAllocation();
 
 			if (alloc.slab != lastSlab) {
 				// NB: builder checks for empty region list (will be true for first region)
 				// and also clears the list when done.
-				quadCount += DrawSpecBuilder.build(specAllocations, drawSpecs, false, false);
+				quadCount += DrawSpecBuilder.build(specAllocations, drawSpecs, isShadowMap, cullBackFace);
 				lastSlab = alloc.slab;
 			}
 
 			specAllocations.add(alloc);
 		}
 
-		quadCount += DrawSpecBuilder.build(specAllocations, drawSpecs, false, false);
-
-		this.quadCount = quadCount;
+		quadCount += DrawSpecBuilder.build(specAllocations, drawSpecs, isShadowMap, cullBackFace);
+		return quadCount;
 	}
 
-	/** Minimizes binds/calls. */
+	/**
+	 * Minimizes binds/calls, unless front-to-back ordering is enabled and worth the extra calls.
+	 * Regions arrive in camera visibility order, which is roughly nearest first, and grouping
+	 * keeps that order within each slab.
+	 */
 	private void buildSolid() {
-		final IdentityHashMap<Slab, ObjectArrayList<SlabAllocation>> map = new IdentityHashMap<>();
+		final boolean cullBackFace = owner.cullBackFace();
+		usesFaceFlags = cullBackFace;
 
-		// first group regions by slab
-		for (final var region : regions) {
-			final var alloc = region.allocation().getAllocation();
-			var list = map.get(alloc.slab);
+		if (owner.isIndirect) {
+			buildIndirectRecords(cullBackFace);
+			return;
+		}
+
+		final DrawListGrouper<SlabAllocation> slabGroups = SLAB_GROUPS;
+		final int limit = regions.size();
+		Slab lastSlab = null;
+		int runCount = 0;
+		int totalQuadCount = 0;
+
+		// first group regions by slab, counting the specs that distance order would need
+		for (int i = 0; i < limit; ++i) {
+			final var alloc = regions.get(i).allocation().getAllocation();
+			slabGroups.add(alloc.slab.id, alloc);
+			totalQuadCount += alloc.quadVertexCount >> 2;
 
-			if (list == null) {
-				list = new ObjectArrayList<>();
-				map.put(alloc.slab, list);
+			if (alloc.slab != lastSlab) {
+				++runCount;
+				lastSlab = alloc.slab;
 			}
+		}
 
-			list.add(alloc);
+		final int groupCount = slabGroups.groupCount();
+
+		// shadow passes don't follow camera distance so gain nothing from this order
+		if (Configurator.frontToBackTerrain && !owner.isShadowMap && runCount > groupCount
+				&& totalQuadCount >= (runCount - groupCount) * MIN_QUADS_PER_EXTRA_SPEC) {
+			slabGroups.clear();
+			quadCount = buildInRegionOrder(false, cullBackFace);
+			return;
 		}
 
 		int quadCount = 0;
 
-		for (final var list: map.values()) {
-			quadCount += DrawSpecBuilder.build(list, drawSpecs, owner.isShadowMap, Configurator.cullBackfacingTerrain && (!owner.isShadowMap || Configurator.shadowFaceCulling != SkyShadowRenderer.Culling.NONE));
+		for (int i = 0; i < groupCount; ++i) {
+			quadCount += DrawSpecBuilder.build(slabGroups.group(i), drawSpecs, owner.isShadowMap, cullBackFace);
 		}
 
+		slabGroups.clear();
 		this.quadCount = quadCount;
 	}
 
+	/** Snapshots regions for the realm list, which draws all clusters together. */
+	private void buildIndirectRecords(boolean cullBackFace) {
+		if (indirectRecords == null) {
+			indirectRecords = new IndirectRealmDraw.ClusterRecords<>();
+		} else {
+			indirectRecords.clear();
+		}
+
+		isIndirect = true;
+		final boolean isShadowMap = owner.isShadowMap;
+		final int limit = regions.size();
+		int quadCount = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			final var region = regions.get(i);
+			final var alloc = region.allocation().getAllocation();
+			quadCount += indirectRecords.add(alloc.slab, alloc.baseQuadVertexIndex, alloc.quadVertexCount, faceFlags(region), region.faceBuckets, isShadowMap, cullBackFace);
+		}
+
+		this.quadCount = quadCount;
+	}
+
+	IndirectRealmDraw.ClusterRecords<Slab> indirectRecords() {
+		assert isIndirect;
+		return indirectRecords;
+	}
+
+	/** Draws specs. Indirect lists have none because the realm list draws them. */
 	public void draw() {
 		final int limit = drawSpecs.size();
 
@@ -118,16 +273,31 @@ public class ClusterDrawList {
 		}
 	}
 
-	public void add(ClusteredDrawableStorage region) {
-		assert region.allocation().cluster() == cluster;
-		regions.add(region);
+	public boolean containsAny(Set<ClusteredDrawableStorage> storage) {
+		final int limit = regions.size();
+
+		for (int i = 0; i < limit; ++i) {
+			if (storage.contains(regions.get(i))) {
+				return true;
+			}
+		}
+
+		return false;
 	}
 
 	public void invalidate() {
+		isInvalid = true;
 		owner.invalidate();
 	}
 
-	public void release() {
+	private void releaseSpecs() {
 		drawSpecs.forEach(DrawSpec::release);
+		drawSpecs.clear();
+	}
+
+	public void release() {
+		releaseSpecs();
+		indirectRecords = null;
+		cluster.removeListListener(this);
 	}
 }
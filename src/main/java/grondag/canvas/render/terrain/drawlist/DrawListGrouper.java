@@ -0,0 +1,82 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.render.terrain.drawlist;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Groups values by a long key in first-seen order. Meant to be kept and
+ * reused: group lists and the key index are cleared but not released, so once
+ * they have grown to fit, grouping doesn't allocate.
+ *
+ * <p>NOT THREAD-SAFE.
+ */
+final class DrawListGrouper<V> {
+	private final Long2IntOpenHashMap groupIndex = new Long2IntOpenHashMap();
+	private final LongArrayList keys = new LongArrayList();
+	private final ObjectArrayList<ObjectArrayList<V>> groups = new ObjectArrayList<>();
+	private int groupCount;
+
+	DrawListGrouper() {
+		groupIndex.defaultReturnValue(-1);
+	}
+
+	void clear() {
+		for (int i = 0; i < groupCount; ++i) {
+			groups.get(i).clear();
+		}
+
+		groupIndex.clear();
+		keys.clear();
+		groupCount = 0;
+	}
+
+	void add(long key, V value) {
+		int index = groupIndex.get(key);
+
+		if (index == -1) {
+			index = groupCount++;
+			groupIndex.put(key, index);
+			keys.add(key);
+
+			if (index == groups.size()) {
+				groups.add(new ObjectArrayList<>());
+			}
+		}
+
+		groups.get(index).add(value);
+	}
+
+	int groupCount() {
+		return groupCount;
+	}
+
+	long key(int groupIndex) {
+		return keys.getLong(groupIndex);
+	}
+
+	/** Cleared by the next {@link #clear()}. Copy if it needs to be kept. */
+	ObjectArrayList<V> group(int groupIndex) {
+		assert groupIndex < groupCount;
+		return groups.get(groupIndex);
+	}
+}
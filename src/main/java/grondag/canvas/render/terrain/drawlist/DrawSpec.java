@@ -22,36 +22,66 @@ package grondag.canvas.render.terrain.drawlist;
 
 import java.nio.IntBuffer;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryUtil;
 
+import com.mojang.blaze3d.systems.RenderSystem;
+
 import grondag.canvas.render.terrain.cluster.Slab;
 
+/**
+ * Arguments for one multi-draw call. Released specs are pooled with their
+ * native argument buffers, so draw lists rebuilt every few frames don't
+ * allocate new ones. Specs hold no GL objects. They bind the VAO of their
+ * slab, which shuts it down with the slab. Render thread only.
+ */
 class DrawSpec {
+	private static final ObjectArrayList<DrawSpec> POOL = new ObjectArrayList<>();
+	private static final int MAX_POOL_SIZE = 1024;
+
 	private IntBuffer triVertexCount;
 	private IntBuffer baseQuadVertexOffset;
 	private PointerBuffer triIndexOffset;
-	private final int size;
-	private final TerrainVAO vao;
+	private int capacity;
+	private int size;
+	private Slab slab;
 	private boolean isClosed = false;
 
-	DrawSpec (Slab slab, int size, int[] triVertexCount, int[] baseQuadVertexOffset) {
-		this.size = size;
-		this.triVertexCount = MemoryUtil.memAllocInt(size);
-		this.triVertexCount.put(0, triVertexCount, 0, size);
+	private DrawSpec() { }
 
-		this.baseQuadVertexOffset = MemoryUtil.memAllocInt(size);
-		this.baseQuadVertexOffset.put(0, baseQuadVertexOffset, 0, size);
+	static DrawSpec claim(Slab slab, int size, int[] triVertexCount, int[] baseQuadVertexOffset) {
+		assert RenderSystem.isOnRenderThread();
+		final DrawSpec result = POOL.isEmpty() ? new DrawSpec() : POOL.pop();
+		result.prepare(slab, size, triVertexCount, baseQuadVertexOffset);
+		return result;
+	}
+
+	private void prepare(Slab slab, int size, int[] triVertexCount, int[] baseQuadVertexOffset) {
+		isClosed = false;
+		this.slab = slab;
+		this.size = size;
 
-		triIndexOffset = MemoryUtil.memAllocPointer(size);
+		if (size > capacity) {
+			freeBuffers();
+			capacity = Math.max(size, 16);
+			this.triVertexCount = MemoryUtil.memAllocInt(capacity);
+			this.baseQuadVertexOffset = MemoryUtil.memAllocInt(capacity);
+			triIndexOffset = MemoryUtil.memAllocPointer(capacity);
 
-		for (int i = 0; i < size; ++i) {
-			triIndexOffset.put(i, 0L);
+			for (int i = 0; i < capacity; ++i) {
+				triIndexOffset.put(i, 0L);
+			}
 		}
 
-		triIndexOffset.position(0);
+		this.triVertexCount.clear().limit(size);
+		this.triVertexCount.put(0, triVertexCount, 0, size);
+
+		this.baseQuadVertexOffset.clear().limit(size);
+		this.baseQuadVertexOffset.put(0, baseQuadVertexOffset, 0, size);
 
-		vao = new TerrainVAO(() -> slab.glBufferId(), () -> SlabIndex.get().glBufferId(), 0);
+		triIndexOffset.position(0);
+		triIndexOffset.limit(size);
 	}
 
 	IntBuffer baseQuadVertexOffset() {
@@ -77,9 +107,19 @@ class DrawSpec {
 
 		if (!isClosed) {
 			isClosed = true;
+			slab = null;
 
-			vao.shutdown();
+			if (POOL.size() >= MAX_POOL_SIZE) {
+				freeBuffers();
+			} else {
+				POOL.push(this);
+			}
+		}
+	}
 
+	private void freeBuffers() {
+		if (triVertexCount != null) {
+			capacity = 0;
 			MemoryUtil.memFree(triVertexCount);
 			triVertexCount = null;
 
@@ -92,6 +132,6 @@ class DrawSpec {
 	}
 
 	public void bind() {
-		vao.bind();
+		slab.vao().bind();
 	}
 }
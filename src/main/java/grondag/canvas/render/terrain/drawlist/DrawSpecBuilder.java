@@ -61,7 +61,7 @@ abstract class DrawSpecBuilder {
 			}
 		}
 
-		output.add(new DrawSpec(slab, triVertexCount.size(), triVertexCount.elements(), baseQuadVertexOffset.elements()));
+		output.add(DrawSpec.claim(slab, triVertexCount.size(), triVertexCount.elements(), baseQuadVertexOffset.elements()));
 		inputs.clear();
 		return quadCount;
 	}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.render.terrain.drawlist;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import grondag.canvas.buffer.render.AbstractGlBuffer;
+import grondag.canvas.buffer.render.TransferBuffer;
+import grondag.canvas.buffer.render.TransferBuffers;
+import grondag.canvas.render.terrain.cluster.Slab;
+import grondag.canvas.varia.GFX;
+
+/**
+ * Draws terrain slabs from a command buffer that lives as long as the target.
+ * The buffer is replaced only when commands outgrow it.
+ */
+class GlIndirectDrawTarget implements IndirectDrawTarget<Slab> {
+	private CommandBuffer commandBuffer;
+
+	@Override
+	public void upload(int[] commands, int byteCount) {
+		assert RenderSystem.isOnRenderThread();
+
+		if (commandBuffer == null || commandBuffer.capacityBytes() < byteCount) {
+			if (commandBuffer != null) {
+				commandBuffer.shutdown();
+			}
+
+			// headroom so lists that grow a little don't replace the buffer each time
+			commandBuffer = new CommandBuffer(byteCount + (byteCount >> 1));
+		}
+
+		final TransferBuffer transferBuffer = TransferBuffers.claim(byteCount);
+		transferBuffer.put(commands, 0, 0, byteCount / 4);
+		GFX.bindBuffer(GFX.GL_DRAW_INDIRECT_BUFFER, commandBuffer.glBufferId());
+		transferBuffer.transferToBoundBuffer(GFX.GL_DRAW_INDIRECT_BUFFER, 0, 0, byteCount);
+		GFX.bindBuffer(GFX.GL_DRAW_INDIRECT_BUFFER, 0);
+		transferBuffer.release();
+	}
+
+	@Override
+	public void bindCommands() {
+		// not part of VAO state, so slab VAO binds don't disturb it
+		GFX.bindBuffer(GFX.GL_DRAW_INDIRECT_BUFFER, commandBuffer.glBufferId());
+	}
+
+	@Override
+	public void drawSlab(Slab slab, long commandOffsetBytes, int commandCount) {
+		slab.vao().bind();
+		GFX.multiDrawElementsIndirect(GFX.GL_TRIANGLES, GFX.GL_UNSIGNED_SHORT, commandOffsetBytes, commandCount, 0);
+	}
+
+	@Override
+	public void unbindCommands() {
+		GFX.bindBuffer(GFX.GL_DRAW_INDIRECT_BUFFER, 0);
+	}
+
+	@Override
+	public void release() {
+		assert RenderSystem.isOnRenderThread();
+
+		if (commandBuffer != null) {
+			commandBuffer.shutdown();
+			commandBuffer = null;
+		}
+	}
+
+	private static class CommandBuffer extends AbstractGlBuffer {
+		CommandBuffer(int capacityBytes) {
+			super(capacityBytes, GFX.GL_DRAW_INDIRECT_BUFFER, GFX.GL_STATIC_DRAW);
+		}
+
+		@Override
+		protected void onShutdown() {
+			// NOOP
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.render.terrain.drawlist;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import grondag.canvas.buffer.input.FaceBucket;
+
+/**
+ * Converts region snapshots into {@code DrawElementsIndirectCommand} records
+ * grouped by slab so each slab can be drawn with one indirect multi-draw.
+ * Makes no GL calls. Storage is kept between builds.
+ *
+ * <p>Regions are added as snapshots with {@link #appendRegion}.
+ * Each is {@link #RECORD_INTS} ints.
+ */
+final class IndirectCommandBuilder {
+	/** Count, instance count, first index, base vertex, base instance. */
+	static final int COMMAND_INTS = 5;
+	static final int COMMAND_BYTES = COMMAND_INTS * 4;
+
+	static final int RECORD_SLAB = 0;
+	static final int RECORD_BASE_VERTEX = 1;
+	static final int RECORD_VERTEX_COUNT = 2;
+	static final int RECORD_FACE_FLAGS = 3;
+	/** Vertex index and count of each face bucket, relative to the region base vertex. */
+	static final int RECORD_BUCKETS = 4;
+	static final int BUCKET_COUNT = 7;
+	static final int RECORD_INTS = RECORD_BUCKETS + BUCKET_COUNT * 2;
+
+	/** Short element indexing can't reach past this many vertices in one draw. */
+	static final int MAX_DRAW_VERTEX_COUNT = 65536;
+
+	private int[] slabStarts = new int[4];
+	private int[] slabCounts = new int[4];
+	/** Next command index of each slab while commands are written. */
+	private int[] slabNext = new int[4];
+	private int[] commands = new int[COMMAND_INTS * 64];
+	private int commandCount;
+
+	/**
+	 * Adds a region snapshot to the records.
+	 * Returns the number of quads that will be drawn.
+	 */
+	static int appendRegion(IntArrayList records, int slabIndex, int baseVertex, int vertexCount, int faceFlags, FaceBucket[] buckets, boolean isShadowMap) {
+		records.add(slabIndex);
+		records.add(baseVertex);
+		records.add(vertexCount);
+		records.add(faceFlags);
+		int visibleVertexCount = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			if (buckets == null) {
+				records.add(0);
+				records.add(0);
+			} else {
+				final var bucket = buckets[i];
+				final int bucketVertexCount = isShadowMap ? bucket.shadowVertexCount() : bucket.colorVertexCount();
+				records.add(isShadowMap ? bucket.shadowVertexIndex() : bucket.colorVertexIndex());
+				records.add(bucketVertexCount);
+
+				if ((faceFlags & (1 << i)) != 0) {
+					visibleVertexCount += bucketVertexCount;
+				}
+			}
+		}
+
+		return visibleVertexCount >> 2;
+	}
+
+	/**
+	 * @param cullBackFace when true, only face buckets in the region face flags are drawn,
+	 * otherwise each region is drawn whole
+	 */
+	void build(int[] records, int recordCount, int slabCount, boolean cullBackFace) {
+		if (slabStarts.length < slabCount) {
+			slabStarts = new int[slabCount];
+			slabCounts = new int[slabCount];
+			slabNext = new int[slabCount];
+		} else {
+			Arrays.fill(slabCounts, 0, slabCount, 0);
+		}
+
+		// count first so commands can be written grouped by slab
+		for (int r = 0; r < recordCount; ++r) {
+			slabCounts[records[r * RECORD_INTS + RECORD_SLAB]] += regionCommandCount(records, r * RECORD_INTS, cullBackFace);
+		}
+
+		int start = 0;
+
+		for (int s = 0; s < slabCount; ++s) {
+			slabStarts[s] = start;
+			start += slabCounts[s];
+		}
+
+		commandCount = start;
+
+		if (commands.length < start * COMMAND_INTS) {
+			commands = new int[start * COMMAND_INTS];
+		}
+
+		final int[] next = slabNext;
+		System.arraycopy(slabStarts, 0, next, 0, slabCount);
+
+		for (int r = 0; r < recordCount; ++r) {
+			final int base = r * RECORD_INTS;
+			final int slab = records[base + RECORD_SLAB];
+			final int baseVertex = records[base + RECORD_BASE_VERTEX];
+
+			if (cullBackFace) {
+				final int flags = records[base + RECORD_FACE_FLAGS];
+
+				for (int i = 0; i < BUCKET_COUNT; ++i) {
+					if ((flags & (1 << i)) != 0) {
+						final int bucket = base + RECORD_BUCKETS + i * 2;
+						next[slab] = writeCommands(next[slab], baseVertex + records[bucket], records[bucket + 1]);
+					}
+				}
+			} else {
+				next[slab] = writeCommands(next[slab], baseVertex, records[base + RECORD_VERTEX_COUNT]);
+			}
+		}
+	}
+
+	private static int regionCommandCount(int[] records, int base, boolean cullBackFace) {
+		if (!cullBackFace) {
+			return drawCount(records[base + RECORD_VERTEX_COUNT]);
+		}
+
+		final int flags = records[base + RECORD_FACE_FLAGS];
+		int result = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			if ((flags & (1 << i)) != 0) {
+				result += drawCount(records[base + RECORD_BUCKETS + i * 2 + 1]);
+			}
+		}
+
+		return result;
+	}
+
+	private static int drawCount(int vertexCount) {
+		return (vertexCount + MAX_DRAW_VERTEX_COUNT - 1) / MAX_DRAW_VERTEX_COUNT;
+	}
+
+	/** Writes one command per slice of at most {@link #MAX_DRAW_VERTEX_COUNT} vertices and returns the next command index. */
+	private int writeCommands(int commandIndex, int firstVertex, int vertexCount) {
+		final int[] commands = this.commands;
+
+		while (vertexCount > 0) {
+			final int sliceVertexCount = Math.min(vertexCount, MAX_DRAW_VERTEX_COUNT);
+			final int i = commandIndex++ * COMMAND_INTS;
+			commands[i] = sliceVertexCount / 4 * 6;
+			commands[i + 1] = 1;
+			commands[i + 2] = 0;
+			commands[i + 3] = firstVertex;
+			commands[i + 4] = 0;
+			firstVertex += sliceVertexCount;
+			vertexCount -= sliceVertexCount;
+		}
+
+		return commandIndex;
+	}
+
+	int[] commands() {
+		return commands;
+	}
+
+	int commandCount() {
+		return commandCount;
+	}
+
+	int slabCommandStart(int slabIndex) {
+		return slabStarts[slabIndex];
+	}
+
+	int slabCommandCount(int slabIndex) {
+		return slabCounts[slabIndex];
+	}
+}
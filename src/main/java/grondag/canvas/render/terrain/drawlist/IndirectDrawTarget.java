@@ -18,17 +18,24 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package grondag.canvas.buffer.input;
+package grondag.canvas.render.terrain.drawlist;
 
-import grondag.canvas.material.state.RenderState;
+/**
+ * GL side of indirect terrain draws. Kept apart from command building so
+ * the whole command path can run in tests against a recording stub.
+ *
+ * @param <S> slab type, identifies the vertex buffer commands draw from
+ */
+interface IndirectDrawTarget<S> {
+	/** Copies commands to the start of the command buffer, replacing the buffer first if it is too small. */
+	void upload(int[] commands, int byteCount);
+
+	/** Binds the command buffer for the slab draws that follow. */
+	void bindCommands();
+
+	void drawSlab(S slab, long commandOffsetBytes, int commandCount);
 
-public class TerrainShadowVertexCollector extends TerrainVertexCollector {
-	public TerrainShadowVertexCollector(RenderState renderState, int[] target) {
-		super(renderState, target);
-	}
+	void unbindCommands();
 
-	@Override
-	protected DrawableVertexCollector createCollector(RenderState renderState, int[] target) {
-		return new ShadowVertexCollector(renderState, target);
-	}
+	void release();
 }
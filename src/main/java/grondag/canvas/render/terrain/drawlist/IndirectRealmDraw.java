@@ -0,0 +1,241 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.render.terrain.drawlist;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.apiimpl.rendercontext.CanvasTerrainRenderContext;
+import grondag.canvas.buffer.input.FaceBucket;
+import grondag.canvas.terrain.util.TerrainExecutorTask;
+
+/**
+ * Draws the solid regions of a whole realm list with one indirect multi-draw per slab.
+ *
+ * <p>Cluster lists snapshot their regions into {@link ClusterRecords} on the render thread.
+ * A terrain worker then builds commands for all clusters, grouped by slab. If the worker
+ * hasn't started by the time the list is drawn, the render thread builds them itself.
+ * A realm list hands this object to the list that replaces it, so command storage and
+ * the command buffer last for the life of the view that uses them.
+ *
+ * @param <S> slab type, identifies the vertex buffer commands draw from
+ */
+class IndirectRealmDraw<S> implements TerrainExecutorTask {
+	private static final int PENDING = 0;
+	private static final int RUNNING = 1;
+	private static final int DONE = 2;
+
+	private final AtomicInteger state = new AtomicInteger(DONE);
+	private final IndirectDrawTarget<S> target;
+	private final ObjectArrayList<ClusterRecords<S>> clusters = new ObjectArrayList<>();
+	private boolean cullBackFace;
+
+	// written by the build, read by draw once it is done
+	private final ObjectArrayList<S> slabs = new ObjectArrayList<>();
+	private final Reference2IntOpenHashMap<S> slabIndexes = new Reference2IntOpenHashMap<>();
+	private final IntArrayList records = new IntArrayList();
+	/** Realm slab index of each cluster slab, for the cluster being copied. */
+	private int[] slabMap = new int[16];
+	private final IndirectCommandBuilder builder = new IndirectCommandBuilder();
+	private boolean isUploaded = true;
+
+	IndirectRealmDraw(IndirectDrawTarget<S> target) {
+		this.target = target;
+		slabIndexes.defaultReturnValue(-1);
+	}
+
+	/** Starts a new set of clusters. Any build still pending is cancelled first. */
+	void begin(boolean cullBackFace) {
+		cancel();
+		clusters.clear();
+		this.cullBackFace = cullBackFace;
+	}
+
+	/** Cluster records must not change until the build is done or cancelled. */
+	void add(ClusterRecords<S> cluster) {
+		assert state.get() == DONE;
+		clusters.add(cluster);
+	}
+
+	/** Marks the clusters added since {@link #begin} ready to build, on a worker or at the next draw. */
+	void end() {
+		isUploaded = false;
+		state.set(PENDING);
+	}
+
+	@Override
+	public void run(CanvasTerrainRenderContext context) {
+		tryBuild();
+	}
+
+	@Override
+	public int priority() {
+		return -1;
+	}
+
+	private void tryBuild() {
+		if (state.compareAndSet(PENDING, RUNNING)) {
+			try {
+				build();
+			} catch (final Exception e) {
+				CanvasMod.LOG.error("Unexpected error building terrain draw commands", e);
+			} finally {
+				state.set(DONE);
+			}
+		}
+	}
+
+	/** Combines the records of all clusters with realm-wide slab indexes and builds commands from them. */
+	private void build() {
+		slabs.clear();
+		slabIndexes.clear();
+		records.clear();
+		final int clusterCount = clusters.size();
+		int recordCount = 0;
+
+		for (int i = 0; i < clusterCount; ++i) {
+			final ClusterRecords<S> cluster = clusters.get(i);
+			final int clusterSlabCount = cluster.slabs.size();
+
+			if (slabMap.length < clusterSlabCount) {
+				slabMap = new int[clusterSlabCount];
+			}
+
+			for (int j = 0; j < clusterSlabCount; ++j) {
+				final S slab = cluster.slabs.get(j);
+				int slabIndex = slabIndexes.getInt(slab);
+
+				if (slabIndex == -1) {
+					slabIndex = slabs.size();
+					slabs.add(slab);
+					slabIndexes.put(slab, slabIndex);
+				}
+
+				slabMap[j] = slabIndex;
+			}
+
+			final int start = records.size();
+			records.addElements(start, cluster.records.elements(), 0, cluster.regionCount * IndirectCommandBuilder.RECORD_INTS);
+			final int[] elements = records.elements();
+
+			for (int r = 0; r < cluster.regionCount; ++r) {
+				final int slabField = start + r * IndirectCommandBuilder.RECORD_INTS + IndirectCommandBuilder.RECORD_SLAB;
+				elements[slabField] = slabMap[elements[slabField]];
+			}
+
+			recordCount += cluster.regionCount;
+		}
+
+		builder.build(records.elements(), recordCount, slabs.size(), cullBackFace);
+	}
+
+	/** Stops a build that hasn't started and waits for one that has. */
+	void cancel() {
+		state.compareAndSet(PENDING, DONE);
+
+		while (state.get() != DONE) {
+			Thread.onSpinWait();
+		}
+	}
+
+	/** Builds commands if no worker has, uploads them once per build, then draws one indirect multi-draw per slab. */
+	void draw() {
+		if (!isUploaded) {
+			tryBuild();
+
+			while (state.get() != DONE) {
+				Thread.onSpinWait();
+			}
+
+			isUploaded = true;
+
+			if (builder.commandCount() != 0) {
+				target.upload(builder.commands(), builder.commandCount() * IndirectCommandBuilder.COMMAND_BYTES);
+			}
+		}
+
+		if (builder.commandCount() == 0) {
+			return;
+		}
+
+		final int slabCount = slabs.size();
+		target.bindCommands();
+
+		for (int i = 0; i < slabCount; ++i) {
+			final int slabCommandCount = builder.slabCommandCount(i);
+
+			if (slabCommandCount != 0) {
+				target.drawSlab(slabs.get(i), (long) builder.slabCommandStart(i) * IndirectCommandBuilder.COMMAND_BYTES, slabCommandCount);
+			}
+		}
+
+		target.unbindCommands();
+	}
+
+	void release() {
+		cancel();
+		clusters.clear();
+		slabs.clear();
+		slabIndexes.clear();
+		target.release();
+	}
+
+	/**
+	 * Snapshot of the solid regions of one cluster, kept by its cluster list and
+	 * refilled in place when the list is rebuilt.
+	 */
+	static class ClusterRecords<S> {
+		private final ObjectArrayList<S> slabs = new ObjectArrayList<>();
+		private final Reference2IntOpenHashMap<S> slabIndexes = new Reference2IntOpenHashMap<>();
+		private final IntArrayList records = new IntArrayList();
+		private int regionCount;
+
+		ClusterRecords() {
+			slabIndexes.defaultReturnValue(-1);
+		}
+
+		void clear() {
+			slabs.clear();
+			slabIndexes.clear();
+			records.clear();
+			regionCount = 0;
+		}
+
+		/** Adds a region snapshot. Returns the number of quads that will be drawn. */
+		int add(S slab, int baseVertex, int vertexCount, int faceFlags, FaceBucket[] buckets, boolean isShadowMap, boolean cullBackFace) {
+			int slabIndex = slabIndexes.getInt(slab);
+
+			if (slabIndex == -1) {
+				slabIndex = slabs.size();
+				slabs.add(slab);
+				slabIndexes.put(slab, slabIndex);
+			}
+
+			++regionCount;
+			final int visibleQuadCount = IndirectCommandBuilder.appendRegion(records, slabIndex, baseVertex, vertexCount, faceFlags, buckets, isShadowMap);
+			return cullBackFace ? visibleQuadCount : vertexCount >> 2;
+		}
+	}
+}
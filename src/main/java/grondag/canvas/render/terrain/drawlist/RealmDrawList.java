@@ -22,27 +22,43 @@ package grondag.canvas.render.terrain.drawlist;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import org.jetbrains.annotations.Nullable;
 
+import grondag.canvas.config.Configurator;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.render.terrain.base.AbstractDrawableRegionList;
 import grondag.canvas.render.terrain.base.DrawableRegion;
 import grondag.canvas.render.terrain.base.DrawableRegionList;
 import grondag.canvas.render.terrain.cluster.ClusteredDrawableRegion;
 import grondag.canvas.render.terrain.cluster.ClusteredDrawableStorage;
+import grondag.canvas.render.terrain.cluster.Slab;
+import grondag.canvas.render.terrain.cluster.VertexCluster;
+import grondag.canvas.render.world.SkyShadowRenderer;
 import grondag.canvas.render.world.WorldRenderState;
+import grondag.canvas.terrain.util.TerrainExecutor;
+import grondag.canvas.varia.CanvasGlHelper;
 import grondag.canvas.varia.GFX;
 
 public class RealmDrawList extends AbstractDrawableRegionList {
+	/** Scratch structure, render thread only. */
+	private static final DrawListGrouper<ClusteredDrawableStorage> CLUSTER_GROUPS = new DrawListGrouper<>();
+
 	final ObjectArrayList<ClusterDrawList> clusterLists = new ObjectArrayList<>();
+	private final Long2ObjectOpenHashMap<ClusterDrawList> clusterListMap = new Long2ObjectOpenHashMap<>();
 	final boolean isShadowMap;
+	/** When true, cluster lists only snapshot their regions and this list draws them all with indirect draws. */
+	final boolean isIndirect;
+	/** Taken over from the previous list, so its storage and command buffer persist. */
+	private IndirectRealmDraw<Slab> indirectDraw;
 	private int quadCount;
 
 	boolean isInvalid = false;
 
-	private RealmDrawList(final ObjectArrayList<DrawableRegion> regions, RenderState renderState, boolean isShadowMap) {
+	private RealmDrawList(final ObjectArrayList<DrawableRegion> regions, RenderState renderState, boolean isShadowMap, boolean isIndirect, @Nullable RealmDrawList previous) {
 		super(regions, renderState);
 		this.isShadowMap = isShadowMap;
-		build();
+		this.isIndirect = isIndirect;
+		build(previous);
 	}
 
 	@Override
@@ -50,30 +66,106 @@ public class RealmDrawList extends AbstractDrawableRegionList {
 		return quadCount;
 	}
 
-	private void build() {
-		final Long2ObjectOpenHashMap<ClusterDrawList> map = new Long2ObjectOpenHashMap<>();
+	/**
+	 * Groups regions by cluster, in the order each cluster is first seen. For camera
+	 * lists that means clusters are drawn roughly nearest first.
+	 * Cluster lists from the previous list are kept
+	 * when their regions and allocations haven't changed, so only clusters
+	 * that changed build new specs. Those rebuild the previous list in place
+	 * when there is one, so steady-state rebuilds reuse its storage.
+	 */
+	private void build(@Nullable RealmDrawList previous) {
+		if (previous != null && previous.indirectDraw != null) {
+			// cancels any pending build, which reads the cluster lists we may take over
+			previous.indirectDraw.cancel();
+
+			if (isIndirect) {
+				indirectDraw = previous.indirectDraw;
+				previous.indirectDraw = null;
+			}
+		}
+
+		final DrawListGrouper<ClusteredDrawableStorage> clusterGroups = CLUSTER_GROUPS;
 		final int limit = regions.size();
 
 		for (int regionIndex = 0; regionIndex < limit; ++regionIndex) {
 			final ClusteredDrawableStorage storage = ((ClusteredDrawableRegion) regions.get(regionIndex)).storage();
+			clusterGroups.add(storage.clusterPos, storage);
+		}
+
+		quadCount = 0;
+		final int clusterCount = clusterGroups.groupCount();
+		clusterLists.ensureCapacity(clusterCount);
+
+		for (int i = 0; i < clusterCount; ++i) {
+			final long clusterPos = clusterGroups.key(i);
+			final var clusterRegions = clusterGroups.group(i);
+			ClusterDrawList clusterList = previous == null ? null : previous.clusterListMap.get(clusterPos);
+
+			if (clusterList != null && clusterList.canReuseFor(clusterRegions, isIndirect)) {
+				clusterList.moveTo(this);
+			} else {
+				final VertexCluster cluster = clusterRegions.get(0).allocation().cluster();
+
+				if (clusterList != null && clusterList.cluster == cluster) {
+					// regions changed but the cluster didn't, so rebuild in place and keep its storage
+					clusterList.moveTo(this);
+				} else {
+					clusterList = new ClusterDrawList(cluster, this);
+				}
+
+				clusterList.rebuild(clusterRegions);
+			}
+
+			clusterLists.add(clusterList);
+			clusterListMap.put(clusterPos, clusterList);
+			quadCount += clusterList.quadCount();
+		}
 
-			ClusterDrawList clusterList = map.get(storage.clusterPos);
+		clusterGroups.clear();
 
-			if (clusterList == null) {
-				clusterList = new ClusterDrawList(storage.allocation().cluster(), this);
-				clusterLists.add(clusterList);
-				map.put(storage.clusterPos, clusterList);
+		if (previous != null) {
+			// previous list must not release the lists we took over when it closes
+			final var previousLists = previous.clusterLists;
+			final int previousCount = previousLists.size();
+			int keptCount = 0;
+
+			for (int i = 0; i < previousCount; ++i) {
+				final var clusterList = previousLists.get(i);
+
+				if (clusterList.isOwnedBy(previous)) {
+					previousLists.set(keptCount++, clusterList);
+				}
 			}
 
-			clusterList.add(storage);
+			previousLists.size(keptCount);
+			previous.clusterListMap.clear();
 		}
 
-		quadCount = 0;
+		if (isIndirect) {
+			if (indirectDraw == null) {
+				indirectDraw = new IndirectRealmDraw<>(new GlIndirectDrawTarget());
+			}
+
+			prepareIndirectDraw();
+			TerrainExecutor.INSTANCE.execute(indirectDraw);
+		}
+	}
+
+	/** Hands the cluster snapshots to the indirect draw. Commands are built on a worker or at the next draw. */
+	private void prepareIndirectDraw() {
+		indirectDraw.begin(cullBackFace());
+		final int limit = clusterLists.size();
 
-		clusterLists.forEach(cl -> {
-			cl.build();
-			quadCount += cl.quadCount();
-		});
+		for (int i = 0; i < limit; ++i) {
+			indirectDraw.add(clusterLists.get(i).indirectRecords());
+		}
+
+		indirectDraw.end();
+	}
+
+	boolean cullBackFace() {
+		return Configurator.cullBackfacingTerrain && (!isShadowMap || Configurator.shadowFaceCulling != SkyShadowRenderer.Culling.NONE);
 	}
 
 	private void rebuildIfInvalid() {
@@ -82,13 +174,40 @@ public class RealmDrawList extends AbstractDrawableRegionList {
 			// in response to player movement, which will naturally force
 			// a new draw list to be created.
 			isInvalid = false;
-			closeInner();
-			build();
+			quadCount = 0;
+			final int limit = clusterLists.size();
+
+			if (isIndirect) {
+				// cluster records can't change while a build reads them
+				indirectDraw.cancel();
+			}
+
+			for (int i = 0; i < limit; ++i) {
+				final var clusterList = clusterLists.get(i);
+				clusterList.rebuildIfInvalid();
+				quadCount += clusterList.quadCount();
+			}
+
+			if (isIndirect) {
+				// draw follows right away, so commands are built there instead of on a worker
+				prepareIndirectDraw();
+			}
 		}
 	}
 
-	public static DrawableRegionList build(final ObjectArrayList<DrawableRegion> regions, RenderState renderState, boolean isShadowMap) {
-		return regions.isEmpty() ? DrawableRegionList.EMPTY : new RealmDrawList(regions, renderState, isShadowMap);
+	/**
+	 * @param previous list being replaced, if any. Its unchanged cluster lists are taken over
+	 * and it must be closed after this call.
+	 */
+	public static DrawableRegionList build(final ObjectArrayList<DrawableRegion> regions, RenderState renderState, boolean isShadowMap, @Nullable DrawableRegionList previous) {
+		if (regions.isEmpty()) {
+			return DrawableRegionList.EMPTY;
+		}
+
+		final RealmDrawList reusable = previous instanceof RealmDrawList list && !list.isClosed() && list.isShadowMap == isShadowMap && list.renderState == renderState ? list : null;
+		final boolean isTranslucent = ((ClusteredDrawableRegion) regions.get(0)).storage().realm.isTranslucent;
+		final boolean isIndirect = !isTranslucent && Configurator.indirectTerrainDraw && CanvasGlHelper.supportsMultiDrawIndirect();
+		return new RealmDrawList(regions, renderState, isShadowMap, isIndirect, reusable);
 	}
 
 	@Override
@@ -96,11 +215,16 @@ public class RealmDrawList extends AbstractDrawableRegionList {
 		rebuildIfInvalid();
 		final var sectorManager = worldRenderState.sectorManager;
 		renderState.enable(sectorManager.originBlockX(), 0, sectorManager.originBlockZ());
-		final int limit = clusterLists.size();
 		GFX.bindVertexArray(0);
 
-		for (int i = 0; i < limit; ++i) {
-			clusterLists.get(i).draw();
+		if (isIndirect) {
+			indirectDraw.draw();
+		} else {
+			final int limit = clusterLists.size();
+
+			for (int i = 0; i < limit; ++i) {
+				clusterLists.get(i).draw();
+			}
 		}
 
 		GFX.bindVertexArray(0);
@@ -110,8 +234,15 @@ public class RealmDrawList extends AbstractDrawableRegionList {
 
 	@Override
 	protected void closeInner() {
+		if (indirectDraw != null) {
+			// stops any build before the cluster records it reads are released
+			indirectDraw.release();
+			indirectDraw = null;
+		}
+
 		clusterLists.forEach(ClusterDrawList::release);
 		clusterLists.clear();
+		clusterListMap.clear();
 	}
 
 	void invalidate() {
@@ -23,18 +23,20 @@ package grondag.canvas.render.terrain.drawlist;
 import java.util.function.IntSupplier;
 
 import grondag.canvas.buffer.format.BufferVAO;
-import grondag.canvas.buffer.format.TerrainEncoder;
+import grondag.canvas.buffer.format.CanvasVertexFormat;
 
 public class TerrainVAO extends BufferVAO {
 	public final int baseQuadVertexIndex;
+	private final int vertexStrideBytes;
 
-	public TerrainVAO(IntSupplier arrayIdSupplier, IntSupplier elementIdSupplier, int baseQuadVertexIndex) {
-		super(TerrainEncoder.TERRAIN_MATERIAL, arrayIdSupplier, elementIdSupplier);
+	public TerrainVAO(CanvasVertexFormat format, IntSupplier arrayIdSupplier, IntSupplier elementIdSupplier, int baseQuadVertexIndex) {
+		super(format, arrayIdSupplier, elementIdSupplier);
 		this.baseQuadVertexIndex = baseQuadVertexIndex;
+		vertexStrideBytes = format.vertexStrideBytes;
 	}
 
 	@Override
 	public void bind() {
-		super.bind(baseQuadVertexIndex * TerrainEncoder.TERRAIN_MATERIAL.vertexStrideBytes);
+		super.bind(baseQuadVertexIndex * vertexStrideBytes);
 	}
 }
@@ -41,7 +41,6 @@ import com.mojang.blaze3d.vertex.VertexConsumer;
 import com.mojang.blaze3d.vertex.VertexMultiConsumer;
 import com.mojang.math.Matrix4f;
 
-import net.minecraft.Util;
 import net.minecraft.client.Camera;
 import net.minecraft.client.CloudStatus;
 import net.minecraft.client.Minecraft;
@@ -108,9 +107,10 @@ import grondag.canvas.perf.Timekeeper.ProfilerGroup;
 import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.pipeline.PipelineManager;
 import grondag.canvas.render.frustum.RegionCullingFrustum;
-import grondag.canvas.render.terrain.cluster.ClusterTaskManager;
+import grondag.canvas.render.world.RenderThreadScheduler.Category;
 import grondag.canvas.shader.GlProgram;
 import grondag.canvas.shader.GlProgramManager;
+import grondag.canvas.shader.data.FrameUniformBlock;
 import grondag.canvas.shader.data.IntData;
 import grondag.canvas.shader.data.MatrixData;
 import grondag.canvas.shader.data.MatrixState;
@@ -199,7 +199,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		final Minecraft mc = Minecraft.getInstance();
 		final RegionRebuildManager regionRebuildManager = worldRenderState.regionRebuildManager;
 
-		regionStorage.closeRegionsOnRenderThread();
+		RenderThreadScheduler.runHousekeeping(Category.REGION_CLOSE, regionStorage::closeRegionsOnRenderThread);
 
 		mc.getProfiler().push("camera");
 
@@ -255,6 +255,8 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		for (int i = 0; i < BaseConditionManager.CONDITION_FLAG_ARRAY_LENGTH; ++i) {
 			IntData.INT_DATA.put(IntData.CONDITION_DATA_START + i, conditionFlags[i]);
 		}
+
+		FrameUniformBlock.markDirty();
 	}
 
 	private boolean shouldCullChunks(BlockPos pos) {
@@ -340,30 +342,7 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		FrustumSetupListener.invoke(eventContext);
 
 		WorldRenderDraws.profileSwap(profiler, ProfilerGroup.StartWorld, "updatechunks");
-		final int maxFps = mc.options.framerateLimit().get();
-		long maxFpsLimit;
-
-		// Hardcoded MC max framerate
-		if (maxFps == 260) {
-			maxFpsLimit = 0L;
-		} else {
-			maxFpsLimit = 1000000000 / maxFps;
-		}
-
-		final long nowTime = Util.getNanos();
-		final long usedTime = nowTime - frameStartNanos;
-
-		// No idea what the 3/2 is for - looks like a hack
-		final long updateBudget = wr.canvas_chunkUpdateSmoother().registerValueAndGetMean(usedTime) * 3L / 2L;
-		final long clampedBudget = Mth.clamp(updateBudget, maxFpsLimit, 33333333L);
-
-		worldRenderState.regionBuilder().upload();
-		worldRenderState.regionRebuildManager.processScheduledRegions(frameStartNanos + clampedBudget);
-
-		// WIP: need a way to set the deadline appropriately based on steady frame rate and time already elapsed.
-		// Method must ensure we don't have starvation - task queue can't grow indefinitely.
-		ClusterTaskManager.run(System.nanoTime() + 2000000);
-		worldRenderState.rebuidDrawListsIfNeeded();
+		RenderThreadScheduler.runDeferred(worldRenderState);
 
 		// Note these don't have an effect when canvas pipeline is active - lighting happens in the shader
 		// but they are left intact to handle any fix-function renders we don't catch
@@ -840,9 +819,14 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		final Minecraft mc = Minecraft.getInstance();
 		final boolean wasFabulous = Pipeline.isFabulous();
 
-		BufferSynchronizer.checkPoint();
-		DirectBufferAllocator.update();
-		TransferBuffers.update();
+		RenderThreadScheduler.beginFrame(frameStartNanos);
+		GFX.STATE.setElisionEnabled(Configurator.elideRedundantGlCalls);
+		GFX.STATE.nextFrame();
+		RenderThreadScheduler.runHousekeeping(Category.BUFFER_SYNC, BufferSynchronizer::checkPoint);
+		RenderThreadScheduler.runHousekeeping(Category.BUFFER_RECLAIM, () -> {
+			DirectBufferAllocator.update();
+			TransferBuffers.update();
+		});
 		CanvasState.recompileIfNeeded(false);
 		FlawlessFramesController.handleToggle();
 
@@ -881,11 +865,12 @@ public class CanvasWorldRenderer extends LevelRenderer {
 		MatrixState.set(MatrixState.SCREEN);
 		ScreenRenderState.setRenderingHand(true);
 		BufferSynchronizer.checkPoint();
+		RenderThreadScheduler.endFrame();
 	}
 
 	@Override
 	public void allChanged() {
-		CanvasState.recompileIfNeeded(true);
+		CanvasState.recompileIfNeeded(true, true);
 		createImmediates();
 
 		// cause injections to fire but disable all other vanilla logic
@@ -0,0 +1,220 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.render.world;
+
+import net.minecraft.client.Minecraft;
+import net.minecraft.util.Mth;
+
+import io.vram.frex.api.config.FlawlessFrames;
+
+import grondag.canvas.render.terrain.cluster.ClusterTaskManager;
+
+/**
+ * Single place for deferrable render-thread work so categories share one
+ * per-frame budget instead of each picking its own deadline.
+ *
+ * <p>Budget is the slack between the frame time target (frame limit or vsync)
+ * and the predicted time from frame start to the end of world rendering. With no target, a
+ * fixed share of the predicted frame time is used instead.
+ *
+ * <p>Deferrable categories run in priority order and are skipped when the remaining
+ * budget won't cover their estimated cost for one item. A category skipped for
+ * {@link #STARVATION_FRAMES} frames in a row runs anyway with at least
+ * {@link #STARVATION_SLICE_NANOS} so its backlog can't grow without limit.
+ *
+ * <p>Housekeeping categories always run where they are needed in the frame and
+ * are only timed, so their cost shows up next to the deferred work.
+ */
+public final class RenderThreadScheduler {
+	public enum Category {
+		// deferred, in priority order
+		REGION_UPLOAD("upload", true),
+		/** Not skippable because important rebuilds from player edits are dispatched here. */
+		REGION_REBUILD("rebuild", false),
+		CLUSTER_TASKS("cluster", true),
+		// housekeeping
+		DRAW_LISTS("lists", false),
+		REGION_CLOSE("close", false),
+		BUFFER_SYNC("sync", false),
+		BUFFER_RECLAIM("reclaim", false);
+
+		private final String label;
+		private final boolean skippable;
+
+		Category(String label, boolean skippable) {
+			this.label = label;
+			this.skippable = skippable;
+		}
+	}
+
+	private static final Category[] CATEGORIES = Category.values();
+	private static final int DEFERRED_COUNT = Category.CLUSTER_TASKS.ordinal() + 1;
+	private static final long MIN_BUDGET_NANOS = 1000000L;
+	private static final long MAX_BUDGET_NANOS = 33333333L;
+	/** Share of predicted frame time given to deferred work when frame rate is uncapped, as a right shift. */
+	private static final int UNCAPPED_BUDGET_SHIFT = 2;
+	private static final int STARVATION_FRAMES = 4;
+	private static final long STARVATION_SLICE_NANOS = 1000000L;
+	/** Weight of new samples in moving averages, as a right shift. */
+	private static final int AVERAGE_SHIFT = 3;
+
+	/** Moving average of nanos per item for deferred categories, or per run for housekeeping. */
+	private static final long[] costEstimate = new long[CATEGORIES.length];
+	private static final long[] lastNanos = new long[CATEGORIES.length];
+	private static final int[] backlog = new int[CATEGORIES.length];
+	private static final int[] skippedFrames = new int[CATEGORIES.length];
+
+	private static long frameStartNanos;
+	/** Moving average of world render time, excluding deferred work. */
+	private static long predictedRenderNanos;
+	private static long budgetNanos;
+	private static long deferredNanos;
+
+	private RenderThreadScheduler() { }
+
+	static void beginFrame(long frameStartNanos) {
+		RenderThreadScheduler.frameStartNanos = frameStartNanos;
+		deferredNanos = 0;
+	}
+
+	static void endFrame() {
+		final long renderNanos = Math.max(0, System.nanoTime() - frameStartNanos - deferredNanos);
+		predictedRenderNanos = average(predictedRenderNanos, renderNanos);
+	}
+
+	static void runHousekeeping(Category category, Runnable task) {
+		assert !category.skippable && category.ordinal() >= DEFERRED_COUNT;
+		final long start = System.nanoTime();
+		task.run();
+		final long elapsed = System.nanoTime() - start;
+		lastNanos[category.ordinal()] = elapsed;
+		costEstimate[category.ordinal()] = average(costEstimate[category.ordinal()], elapsed);
+	}
+
+	/** Runs deferred categories within this frame's budget, then rebuilds draw lists if needed. */
+	static void runDeferred(WorldRenderState worldRenderState) {
+		final boolean flawless = FlawlessFrames.isActive();
+		final long start = System.nanoTime();
+		budgetNanos = flawless ? Long.MAX_VALUE : computeBudget();
+
+		for (int i = 0; i < DEFERRED_COUNT; ++i) {
+			final Category category = CATEGORIES[i];
+			final int before = backlog(category, worldRenderState);
+			backlog[i] = before;
+			lastNanos[i] = 0;
+
+			if (before == 0) {
+				skippedFrames[i] = 0;
+				continue;
+			}
+
+			final long now = System.nanoTime();
+			long slice = flawless ? Long.MAX_VALUE - now : budgetNanos - (now - start);
+
+			if (skippedFrames[i] >= STARVATION_FRAMES) {
+				slice = Math.max(slice, STARVATION_SLICE_NANOS);
+			} else if (category.skippable && slice < costEstimate[i]) {
+				++skippedFrames[i];
+				continue;
+			}
+
+			run(category, worldRenderState, now + Math.max(0, slice));
+
+			final long elapsed = System.nanoTime() - now;
+			final int after = backlog(category, worldRenderState);
+			lastNanos[i] = elapsed;
+			backlog[i] = after;
+			skippedFrames[i] = 0;
+
+			// A resumable task that spans frames finishes nothing until its last slice.
+			// Charging a whole slice to one item would make the category look too costly to run.
+			if (before > after) {
+				costEstimate[i] = average(costEstimate[i], elapsed / (before - after));
+			}
+		}
+
+		deferredNanos += System.nanoTime() - start;
+
+		runHousekeeping(Category.DRAW_LISTS, worldRenderState::rebuidDrawListsIfNeeded);
+	}
+
+	private static long computeBudget() {
+		final Minecraft mc = Minecraft.getInstance();
+		final int maxFps = mc.options.framerateLimit().get();
+		// Hardcoded MC max framerate
+		long targetNanos = maxFps == 260 ? 0L : 1000000000L / maxFps;
+
+		if (mc.options.enableVsync().get()) {
+			final int refreshRate = mc.getWindow().getRefreshRate();
+
+			if (refreshRate > 0) {
+				targetNanos = Math.max(targetNanos, 1000000000L / refreshRate);
+			}
+		}
+
+		final long budget = targetNanos == 0 ? predictedRenderNanos >> UNCAPPED_BUDGET_SHIFT : targetNanos - predictedRenderNanos;
+		return Mth.clamp(budget, MIN_BUDGET_NANOS, MAX_BUDGET_NANOS);
+	}
+
+	private static int backlog(Category category, WorldRenderState worldRenderState) {
+		return switch (category) {
+			case REGION_UPLOAD -> worldRenderState.regionBuilder().uploadBacklog();
+			case REGION_REBUILD -> worldRenderState.regionRebuildManager.scheduledRegionCount();
+			case CLUSTER_TASKS -> ClusterTaskManager.taskCount();
+			default -> 0;
+		};
+	}
+
+	private static void run(Category category, WorldRenderState worldRenderState, long deadlineNanos) {
+		switch (category) {
+			case REGION_UPLOAD -> worldRenderState.regionBuilder().upload(deadlineNanos);
+			case REGION_REBUILD -> worldRenderState.regionRebuildManager.processScheduledRegions(deadlineNanos);
+			case CLUSTER_TASKS -> ClusterTaskManager.run(deadlineNanos);
+			default -> throw new IllegalArgumentException("Not a deferred category: " + category);
+		}
+	}
+
+	private static long average(long average, long sample) {
+		return average + ((sample - average) >> AVERAGE_SHIFT);
+	}
+
+	public static String debugString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Deferred %4.1f/%4.1fms", deferredNanos / 1000000f, Math.min(budgetNanos, MAX_BUDGET_NANOS) / 1000000f));
+
+		for (int i = 0; i < CATEGORIES.length; ++i) {
+			sb.append(' ').append(CATEGORIES[i].label).append(':');
+
+			if (i < DEFERRED_COUNT) {
+				sb.append(backlog[i]);
+
+				if (skippedFrames[i] > 0) {
+					sb.append('!');
+				}
+
+				sb.append('@');
+			}
+
+			sb.append(String.format("%.1f", lastNanos[i] / 1000000f));
+		}
+
+		return sb.toString();
+	}
+}
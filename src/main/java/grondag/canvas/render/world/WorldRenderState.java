@@ -178,10 +178,13 @@ public class WorldRenderState {
 
 		areDrawListsValid = true;
 
-		solidDrawList.close();
-		solidDrawList = DrawableRegionList.build(cameraVisibleRegions, false, false);
-		translucentDrawList.close();
-		translucentDrawList = DrawableRegionList.build(cameraVisibleRegions, true, false);
+		// old lists are closed after the new ones are built so unchanged clusters can be reused
+		final DrawableRegionList oldSolidDrawList = solidDrawList;
+		solidDrawList = DrawableRegionList.build(cameraVisibleRegions, false, false, oldSolidDrawList);
+		oldSolidDrawList.close();
+		final DrawableRegionList oldTranslucentDrawList = translucentDrawList;
+		translucentDrawList = DrawableRegionList.build(cameraVisibleRegions, true, false, oldTranslucentDrawList);
+		oldTranslucentDrawList.close();
 
 		terrainAnimationBits.clear();
 		final int cameraLimit = cameraVisibleRegions.size();
@@ -195,8 +198,9 @@ public class WorldRenderState {
 
 			for (int i = 0; i < 4; ++i) {
 				final var shadowList = shadowVisibleRegions[i];
-				shadowDrawLists[i].close();
-				shadowDrawLists[i] = DrawableRegionList.build(shadowList, false, true);
+				final DrawableRegionList oldShadowDrawList = shadowDrawLists[i];
+				shadowDrawLists[i] = DrawableRegionList.build(shadowList, false, true, oldShadowDrawList);
+				oldShadowDrawList.close();
 				shadowQuadCount += shadowDrawLists[i].quadCount();
 
 				final int shadowLimit = shadowList.size();
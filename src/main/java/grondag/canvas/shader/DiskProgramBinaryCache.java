@@ -0,0 +1,252 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.shader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Program binary cache with one file per entry in a single directory.
+ *
+ * <p>The directory records the driver it was written for. Binaries from a different
+ * driver are useless, so they are all deleted when the driver changes. Total size
+ * is capped by removing the least recently used entries.
+ *
+ * <p>I/O failures are treated as misses and never thrown. NOT THREAD-SAFE.
+ */
+public class DiskProgramBinaryCache implements ProgramBinaryCache {
+	private static final int MAGIC = 0x43565042; // "CVPB"
+	private static final int FILE_VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final String DRIVER_FILE = "driver.txt";
+	private static final String EXTENSION = ".bin";
+
+	private final Path root;
+	private final long maxBytes;
+	/** Size in bytes of each entry file, by key. */
+	private final Object2LongOpenHashMap<String> index = new Object2LongOpenHashMap<>();
+	private long totalBytes;
+
+	/**
+	 * @param root directory for cache files, created if needed
+	 * @param driverId identifies the driver that produces and accepts the binaries
+	 * @param maxBytes entries are evicted to keep total file size under this
+	 */
+	public DiskProgramBinaryCache(Path root, String driverId, long maxBytes) {
+		this.root = root;
+		this.maxBytes = maxBytes;
+
+		try {
+			Files.createDirectories(root);
+			final Path driverFile = root.resolve(DRIVER_FILE);
+			final boolean isSameDriver = Files.exists(driverFile) && Files.readString(driverFile, StandardCharsets.UTF_8).equals(driverId);
+
+			if (!isSameDriver) {
+				clear();
+				Files.writeString(driverFile, driverId, StandardCharsets.UTF_8);
+			}
+
+			buildIndex();
+		} catch (final IOException e) {
+			index.clear();
+			totalBytes = 0;
+		}
+	}
+
+	private void buildIndex() throws IOException {
+		index.clear();
+		totalBytes = 0;
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + EXTENSION)) {
+			for (final Path file : files) {
+				final String name = file.getFileName().toString();
+				final long size = Files.size(file);
+				index.put(name.substring(0, name.length() - EXTENSION.length()), size);
+				totalBytes += size;
+			}
+		}
+	}
+
+	private Path file(String key) {
+		assert isValidKey(key) : "Cache key must be a hex string";
+		return root.resolve(key + EXTENSION);
+	}
+
+	@Override
+	public @Nullable Binary load(String key) {
+		if (!index.containsKey(key)) {
+			return null;
+		}
+
+		final Path file = file(key);
+		Binary result = null;
+
+		try (InputStream stream = Files.newInputStream(file); DataInputStream input = new DataInputStream(stream)) {
+			if (input.readInt() == MAGIC && input.readInt() == FILE_VERSION) {
+				final int format = input.readInt();
+				final int length = input.readInt();
+
+				if (length > 0 && length == index.getLong(key) - HEADER_BYTES) {
+					final byte[] data = new byte[length];
+					input.readFully(data);
+					result = new Binary(format, data);
+				}
+			}
+		} catch (final IOException e) {
+			result = null;
+		}
+
+		if (result == null) {
+			invalidate(key);
+		} else {
+			try {
+				// marks recent use for eviction
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (final IOException e) {
+				// only affects eviction order
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	public boolean store(String key, Binary binary) {
+		final Path file = file(key);
+		final Path temp = root.resolve(key + ".tmp");
+		final long size = HEADER_BYTES + binary.data().length;
+
+		try {
+			try (OutputStream stream = Files.newOutputStream(temp); DataOutputStream output = new DataOutputStream(stream)) {
+				output.writeInt(MAGIC);
+				output.writeInt(FILE_VERSION);
+				output.writeInt(binary.format());
+				output.writeInt(binary.data().length);
+				output.write(binary.data());
+			}
+
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		} catch (final IOException e) {
+			deleteQuietly(temp);
+			invalidate(key);
+			return false;
+		}
+
+		totalBytes += size - index.getLong(key);
+		index.put(key, size);
+		evict(key);
+		return true;
+	}
+
+	/** Removes least recently used entries, other than the one given, until under the size limit. */
+	private void evict(String keep) {
+		while (totalBytes > maxBytes && index.size() > 1) {
+			String oldestKey = null;
+			long oldestTime = Long.MAX_VALUE;
+
+			for (final String key : index.keySet()) {
+				if (!key.equals(keep)) {
+					final long time = lastModified(file(key));
+
+					if (time < oldestTime) {
+						oldestTime = time;
+						oldestKey = key;
+					}
+				}
+			}
+
+			invalidate(oldestKey);
+		}
+	}
+
+	private static long lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public void invalidate(String key) {
+		deleteQuietly(file(key));
+
+		if (index.containsKey(key)) {
+			totalBytes -= index.removeLong(key);
+		}
+	}
+
+	@Override
+	public void clear() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(root, "*" + EXTENSION)) {
+			for (final Path file : files) {
+				deleteQuietly(file);
+			}
+		} catch (final IOException e) {
+			// entries that remain are still checked when loaded
+		}
+
+		index.clear();
+		totalBytes = 0;
+	}
+
+	int entryCount() {
+		return index.size();
+	}
+
+	long totalBytes() {
+		return totalBytes;
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (final IOException e) {
+			// nothing else to do
+		}
+	}
+
+	private static boolean isValidKey(String key) {
+		if (key.isEmpty()) {
+			return false;
+		}
+
+		for (int i = 0; i < key.length(); ++i) {
+			if (Character.digit(key.charAt(i), 16) == -1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
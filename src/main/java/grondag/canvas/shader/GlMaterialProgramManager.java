@@ -21,8 +21,15 @@
 package grondag.canvas.shader;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+import net.minecraft.resources.ResourceLocation;
+
+import io.vram.frex.api.material.MaterialConstants;
 
 import grondag.canvas.CanvasMod;
+import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.buffer.format.TerrainEncoder;
 import grondag.canvas.config.Configurator;
@@ -37,6 +44,7 @@ public final class GlMaterialProgramManager {
 	public static final GlMaterialProgramManager INSTANCE = new GlMaterialProgramManager();
 
 	private boolean compileByTarget = false;
+	private CanvasVertexFormat terrainFormat = TerrainEncoder.terrainFormat();
 
 	private GlMaterialProgramManager() {
 		if (Configurator.enableLifeCycleDebug) {
@@ -61,7 +69,7 @@ public final class GlMaterialProgramManager {
 		if (result == null) {
 			final Shader vs = new GlMaterialShader(programType.vertexSource, GFX.GL_VERTEX_SHADER, programType, target);
 			final Shader fs = new GlMaterialShader(programType.fragmentSource, GFX.GL_FRAGMENT_SHADER, programType, target);
-			result = new GlMaterialProgram(vs, fs, programType.isTerrain ? TerrainEncoder.TERRAIN_MATERIAL : CanvasVertexFormats.STANDARD_MATERIAL_FORMAT, programType);
+			result = new GlMaterialProgram(vs, fs, programType.isTerrain ? TerrainEncoder.terrainFormat() : CanvasVertexFormats.STANDARD_MATERIAL_FORMAT, programType);
 			ShaderUniforms.MATERIAL_UNIFORM_SETUP.accept(result);
 
 			if (programType.isTerrain) {
@@ -74,10 +82,31 @@ public final class GlMaterialProgramManager {
 		return result;
 	}
 
-	public void reload() {
+	/** Creates the programs the active pipeline can use and adds their shaders. */
+	void collectShaders(Collection<Shader> shaders) {
+		final int targetCount = compileByTarget ? MaterialConstants.TARGET_COUNT : 1;
+
+		for (final ProgramType programType : ProgramType.values()) {
+			if (programType == ProgramType.PROCESS || (programType.isDepth && !Pipeline.shadowsEnabled())) {
+				continue;
+			}
+
+			for (int target = 0; target < targetCount; ++target) {
+				final GlMaterialProgram program = getOrCreateMaterialProgram(programType, target);
+				shaders.add(program.vertexShader());
+				shaders.add(program.fragmentShader());
+			}
+		}
+	}
+
+	/**
+	 * @param changedFiles shader files whose content changed. Programs built from
+	 * unchanged files and configuration are kept.
+	 */
+	public void reload(Set<ResourceLocation> changedFiles) {
 		for (final GlMaterialProgram prog : materialPrograms) {
 			if (prog != null) {
-				prog.forceReload();
+				prog.reloadIfChanged(changedFiles);
 			}
 		}
 
@@ -85,5 +114,11 @@ public final class GlMaterialProgramManager {
 			Arrays.fill(materialPrograms, null);
 			compileByTarget = Pipeline.config().materialProgram.compileByTarget;
 		}
+
+		// vertex attributes are bound at link time, so terrain programs must be recreated
+		if (TerrainEncoder.terrainFormat() != terrainFormat) {
+			Arrays.fill(materialPrograms, null);
+			terrainFormat = TerrainEncoder.terrainFormat();
+		}
 	}
 }
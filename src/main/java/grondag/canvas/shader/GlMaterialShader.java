@@ -20,9 +20,12 @@
 
 package grondag.canvas.shader;
 
+import java.util.Arrays;
+
 import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.Nullable;
 import org.lwjgl.opengl.GL21;
+import org.lwjgl.system.Platform;
 
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.resources.ResourceManager;
@@ -34,8 +37,10 @@ import grondag.canvas.material.property.TargetRenderState;
 import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.shader.data.ShaderStrings;
 
-// PERF: emit switch statements on non-Mac
 public class GlMaterialShader extends GlShader {
+	/** Mac drivers have a history of mishandling switch statements. */
+	private static final MaterialDispatch.Form DISPATCH_FORM = Platform.get() == Platform.MACOSX ? MaterialDispatch.Form.BRANCH_TREE : MaterialDispatch.Form.SWITCH;
+
 	/**
 	 * Target name if compiling separately, null otherwise.  Upper case.
 	 */
@@ -70,16 +75,28 @@ public class GlMaterialShader extends GlShader {
 	}
 
 	@Override
-	protected String getCombinedShaderSource() {
-		// Handle #define for compileByTarget pipeline configuration
-		// Must happen after super pre-process so that includes are expanded first
-		String result = super.getCombinedShaderSource();
+	protected void addDefines(ShaderSourceAssembler.DefineTable defines) {
+		super.addDefines(defines);
 
+		// Handle #define for compileByTarget pipeline configuration
 		if (target != null) {
-			result = StringUtils.replace(result, "#define MATERIAL_TARGET_UNKNOWN", "#define MATERIAL_TARGET_" + target);
+			defines.replace("#define MATERIAL_TARGET_UNKNOWN", "#define MATERIAL_TARGET_" + target);
 		}
+	}
 
-		return result;
+	@Override
+	protected String sourceSelection() {
+		final var config = Pipeline.config();
+		final boolean isShadow = programType.isDepth && config.skyShadow != null;
+		final ResourceLocation pipelineSource;
+
+		if (shaderType == GL21.GL_FRAGMENT_SHADER) {
+			pipelineSource = isShadow ? config.skyShadow.fragmentSource : config.materialProgram.fragmentSource;
+			return pipelineSource + Arrays.toString(MaterialShaderIndexer.fragmentIds(programType));
+		} else {
+			pipelineSource = isShadow ? config.skyShadow.vertexSource : config.materialProgram.vertexSource;
+			return pipelineSource + Arrays.toString(MaterialShaderIndexer.vertexIds(programType));
+		}
 	}
 
 	private String preprocessFragmentSource(ResourceManager resourceManager, String baseSource) {
@@ -104,47 +121,29 @@ public class GlMaterialShader extends GlShader {
 				starts = "\t// NOOP";
 			}
 		} else {
-			final StringBuilder startsBuilder = new StringBuilder();
+			final String[] calls = new String[limit];
 			final StringBuilder implBuilder = new StringBuilder();
 
-			startsBuilder.append("\tswitch (cv_programId) {\n");
-
 			for (int i = 0; i < limit; ++i) {
 				final int index = shaders[i];
-
-				startsBuilder.append("\tcase ");
-				startsBuilder.append(index);
-				startsBuilder.append(": ");
-
 				String src = loadMaterialFragmentShader(resourceManager, shaderManager.fragmentIdFromIndex(index));
 
 				// UGLY: some pre-release compat handling here - should eventually be removed
 				if (src.contains("frx_startFragment")) {
-					startsBuilder.append("frx_startFragment");
-					startsBuilder.append(index);
-					startsBuilder.append("(compatData); break;\n");
-
+					calls[i] = "frx_startFragment" + index + "(compatData);";
 					src = StringUtils.replace(src, "frx_startFragment", "frx_startFragment" + index);
 					implBuilder.append(src);
 					implBuilder.append("\n");
 				} else if (src.contains("frx_materialFragment")) {
-					startsBuilder.append("frx_materialFragment");
-					startsBuilder.append(index);
-					startsBuilder.append("(); break;\n");
-
+					calls[i] = "frx_materialFragment" + index + "();";
 					src = StringUtils.replace(src, "frx_materialFragment", "frx_materialFragment" + index);
 					implBuilder.append(src);
 					implBuilder.append("\n");
-				} else {
-					startsBuilder.append("break;\n");
 				}
 			}
 
-			startsBuilder.append("\tdefault: break;\n");
-			startsBuilder.append("\t}\n");
-
 			impl = implBuilder.toString();
-			starts = startsBuilder.toString();
+			starts = MaterialDispatch.generate(DISPATCH_FORM, shaders, calls);
 		}
 
 		final ResourceLocation sourceId = programType.isDepth && Pipeline.config().skyShadow != null
@@ -177,41 +176,27 @@ public class GlMaterialShader extends GlShader {
 
 			starts = impl.contains("frx_materialVertex") ? "\tfrx_materialVertex();" : "\t// NOOP";
 		} else {
-			final StringBuilder startsBuilder = new StringBuilder();
+			final String[] calls = new String[limit];
 			final StringBuilder implBuilder = new StringBuilder();
 
-			startsBuilder.append("\tswitch (cv_programId) {\n");
-
 			for (int i = 0; i < limit; ++i) {
 				final int index = shaders[i];
-
-				startsBuilder.append("\tcase ");
-				startsBuilder.append(index);
-				startsBuilder.append(": ");
-
 				String src = loadMaterialVertexShader(resourceManager, shaderManager.vertexIdFromIndex(index));
 
 				// prevent abandoned endVertex calls from conflicting
 				src = StringUtils.replace(src, "frx_endVertex", "frx_endVertex" + i + "_UNUSED");
 
 				if (src.contains("frx_materialVertex")) {
-					startsBuilder.append("frx_materialVertex");
-					startsBuilder.append(index);
-					startsBuilder.append("(); break;\n");
+					calls[i] = "frx_materialVertex" + index + "();";
 					src = StringUtils.replace(src, "frx_materialVertex", "frx_materialVertex" + index);
-				} else {
-					startsBuilder.append("break;\n");
 				}
 
 				implBuilder.append(src);
 				implBuilder.append("\n");
 			}
 
-			startsBuilder.append("\tdefault: break;\n");
-			startsBuilder.append("\t}\n");
-
 			impl = implBuilder.toString();
-			starts = startsBuilder.toString();
+			starts = MaterialDispatch.generate(DISPATCH_FORM, shaders, calls);
 		}
 
 		final ResourceLocation sourceId = programType.isDepth && Pipeline.config().skyShadow != null
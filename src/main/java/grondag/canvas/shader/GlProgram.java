@@ -22,6 +22,7 @@ package grondag.canvas.shader;
 
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
@@ -33,6 +34,7 @@ import com.mojang.math.Matrix3f;
 import com.mojang.math.Matrix4f;
 
 import net.minecraft.client.resources.language.I18n;
+import net.minecraft.resources.ResourceLocation;
 
 import io.vram.frex.api.math.FastMatrix4f;
 import io.vram.frex.api.math.FastMatrix3f;
@@ -40,7 +42,7 @@ import io.vram.frex.api.math.FastMatrix3f;
 import grondag.canvas.CanvasMod;
 import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.config.Configurator;
-import grondag.canvas.shader.data.ShaderUniforms;
+import grondag.canvas.shader.data.FrameUniformBlock;
 import grondag.canvas.shader.data.UniformRefreshFrequency;
 import grondag.canvas.varia.GFX;
 
@@ -73,7 +75,14 @@ public class GlProgram {
 		this.fragmentShader = fragmentShader;
 		this.programType = programType;
 		vertexFormat = format;
-		ShaderUniforms.COMMON_UNIFORM_SETUP.accept(this);
+	}
+
+	Shader vertexShader() {
+		return vertexShader;
+	}
+
+	Shader fragmentShader() {
+		return fragmentShader;
 	}
 
 	public static void deactivate() {
@@ -177,6 +186,8 @@ public class GlProgram {
 			return;
 		}
 
+		FrameUniformBlock.uploadIfDirty();
+
 		if (activeProgram != this) {
 			activeProgram = this;
 			activateInner();
@@ -273,6 +284,7 @@ public class GlProgram {
 		}
 
 		if (!isErrored) {
+			FrameUniformBlock.bindToProgram(progID);
 			findActiveUniforms();
 			final int limit = activeUniforms.size();
 
@@ -306,12 +318,23 @@ public class GlProgram {
 			return false;
 		}
 
+		// a cached binary skips compiling and linking entirely
+		final String binaryKey = ProgramBinaries.key(vertexShader, fragmentShader, vertexFormat);
+
+		if (binaryKey != null && ProgramBinaries.load(programID, binaryKey)) {
+			return true;
+		}
+
 		if (!vertexShader.attach(programID) || !fragmentShader.attach(programID)) {
 			return false;
 		}
 
 		vertexFormat.bindProgramAttributes(programID);
 
+		if (binaryKey != null) {
+			ProgramBinaries.prepareToStore(programID);
+		}
+
 		GFX.linkProgram(programID);
 
 		if (GFX.getProgramInfo(programID, GFX.GL_LINK_STATUS) == GFX.GL_FALSE) {
@@ -319,6 +342,10 @@ public class GlProgram {
 			return false;
 		}
 
+		if (binaryKey != null) {
+			ProgramBinaries.store(programID, binaryKey);
+		}
+
 		return true;
 	}
 
@@ -1131,4 +1158,23 @@ public class GlProgram {
 		vertexShader.forceReload();
 		needsLoad = true;
 	}
+
+	/**
+	 * Reloads only if the source of either shader changed.
+	 *
+	 * @param changedFiles shader files whose content changed
+	 * @return true if the program will be reloaded
+	 */
+	public boolean reloadIfChanged(Set<ResourceLocation> changedFiles) {
+		// check both so each shader drops stale source
+		final boolean vertexChanged = vertexShader.reloadIfChanged(changedFiles);
+		final boolean fragmentChanged = fragmentShader.reloadIfChanged(changedFiles);
+
+		if (vertexChanged || fragmentChanged) {
+			needsLoad = true;
+			return true;
+		}
+
+		return false;
+	}
 }
@@ -20,6 +20,10 @@
 
 package grondag.canvas.shader;
 
+import java.util.Set;
+
+import net.minecraft.resources.ResourceLocation;
+
 import io.vram.sc.unordered.SimpleUnorderedArrayList;
 
 import grondag.canvas.CanvasMod;
@@ -64,4 +68,19 @@ public class GlProgramManager {
 		programs.forEach(s -> s.forceReload());
 		programs.clear();
 	}
+
+	/**
+	 * Reloads programs with a shader built from a changed file or configuration.
+	 * Reloaded programs are added back when they load.
+	 */
+	public void reload(Set<ResourceLocation> changedFiles) {
+		// backwards because removal moves the last program into the removed slot
+		for (int i = programs.size() - 1; i >= 0; --i) {
+			final GlProgram program = programs.get(i);
+
+			if (program.reloadIfChanged(changedFiles)) {
+				programs.remove(program);
+			}
+		}
+	}
 }
@@ -23,24 +23,19 @@ package grondag.canvas.shader;
 import static org.lwjgl.system.MemoryStack.stackGet;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.util.HashSet;
-import java.util.NoSuchElementException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import com.google.common.io.CharStreams;
 import org.anarres.cpp.DefaultPreprocessorListener;
 import org.anarres.cpp.Preprocessor;
 import org.anarres.cpp.StringLexerSource;
 import org.anarres.cpp.Token;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.lwjgl.PointerBuffer;
@@ -55,18 +50,16 @@ import net.minecraft.client.resources.language.I18n;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.resources.ResourceManager;
 
-import io.vram.frex.api.config.ShaderConfig;
 import io.vram.frex.api.material.MaterialConstants;
 
 import grondag.canvas.CanvasMod;
+import grondag.canvas.buffer.format.TerrainEncoder;
 import grondag.canvas.config.Configurator;
 import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.varia.CanvasGlHelper;
 import grondag.canvas.varia.GFX;
 
 public class GlShader implements Shader {
-	static final Pattern PATTERN = Pattern.compile("^#include\\s+(\\\"*[\\w]+:[\\w/\\.]+)[ \\t]*.*", Pattern.MULTILINE);
-	private static final HashSet<String> INCLUDED = new HashSet<>();
 	private static boolean isErrorNoticeComplete = false;
 	private static boolean needsClearDebugOutputWarning = true;
 	private static boolean needsDebugOutputWarning = true;
@@ -74,6 +67,14 @@ public class GlShader implements Shader {
 	protected final int shaderType;
 	protected final ProgramType programType;
 	private String source = null;
+	/** Files read to build {@link #source}. */
+	private ObjectOpenHashSet<ResourceLocation> sourceFiles = null;
+	/** Configuration that affected {@link #source}. See {@link #sourceFingerprint(ShaderSourceAssembler.DefineTable)}. */
+	private String sourceFingerprint = null;
+	/** Parsed from {@link #source} when first needed. */
+	private UniformDeclarations uniformDeclarations = null;
+	/** Source being assembled off-thread. Taken on the render thread when the source is first needed. */
+	private CompletableFuture<ShaderSourceAssembler.Assembled> pendingSource = null;
 	private int glId = -1;
 	private boolean needsLoad = true;
 	private boolean isErrored = false;
@@ -236,129 +237,190 @@ public class GlShader implements Shader {
 		String result = source;
 
 		if (result == null) {
-			result = getCombinedShaderSource();
-
-			if (Pipeline.config().enablePBR) {
-				result = StringUtils.replace(result, "//#define PBR_ENABLED", "#define PBR_ENABLED");
+			final CompletableFuture<ShaderSourceAssembler.Assembled> pending = pendingSource;
+			pendingSource = null;
+			ShaderSourceAssembler.Assembled assembled = null;
+
+			if (pending != null) {
+				try {
+					assembled = pending.join();
+				} catch (final CompletionException e) {
+					CanvasMod.LOG.warn("Unable to assemble shader source " + shaderSourceId.toString() + " off-thread. Retrying on render thread.", e);
+				}
 			}
 
-			if (!CanvasGlHelper.supportsArbConservativeDepth()) {
-				result = StringUtils.replace(result, "#define _CV_ARB_CONSERVATIVE_DEPTH", "//#define _CV_ARB_CONSERVATIVE_DEPTH");
+			if (assembled == null) {
+				assembled = finishSource(combine());
 			}
 
-			if (!PreReleaseShaderCompat.needsFragmentShaderStubs()) {
-				result = StringUtils.replace(result, "#define _CV_FRAGMENT_COMPAT", "//#define _CV_FRAGMENT_COMPAT");
-			}
+			result = assembled.source();
+			source = result;
+			sourceFiles = assembled.files();
+			sourceFingerprint = assembled.fingerprint();
+		}
 
-			if (programType.isTerrain) {
-				result = StringUtils.replace(result, "#define _CV_VERTEX_DEFAULT", "#define _CV_VERTEX_TERRAIN");
-			}
+		return result;
+	}
 
-			if (programType.hasVertexProgramControl) {
-				result = StringUtils.replace(result, "#define PROGRAM_BY_UNIFORM", "//#define PROGRAM_BY_UNIFORM");
-			}
+	/**
+	 * Makes the given source, which should be the eventual result of {@link #finishSource(ShaderSourceAssembler.Combined)},
+	 * the one used when this shader next loads. Ignored if source is already available.
+	 */
+	void setPendingSource(CompletableFuture<ShaderSourceAssembler.Assembled> pending) {
+		if (source == null) {
+			pendingSource = pending;
+		}
+	}
 
-			if (shaderType == GL21.GL_FRAGMENT_SHADER) {
-				result = StringUtils.replace(result, "#define VERTEX_SHADER", "#define FRAGMENT_SHADER");
-			}
+	/** Combined source and the files read to build it. Safe to call off the render thread. */
+	ShaderSourceAssembler.Combined combine() {
+		return ShaderSourceAssembler.combine(this::getCombinedShaderSource);
+	}
 
-			if (!Configurator.wavyGrass) {
-				result = StringUtils.replace(result, "#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE");
-			}
+	/**
+	 * Applies defines and GLSL version to combined source. Call only after
+	 * combining, because combining can change flags the defines depend on.
+	 * Safe to call off the render thread.
+	 */
+	ShaderSourceAssembler.Assembled finishSource(ShaderSourceAssembler.Combined combined) {
+		final ShaderSourceAssembler.DefineTable defines = new ShaderSourceAssembler.DefineTable();
+		addDefines(defines);
+		final String fingerprint = sourceFingerprint(defines);
+		String result = defines.apply(combined.text());
+
+		// prepend GLSL version
+		result = "#version " + Pipeline.config().glslVersion + "\n\n" + result;
+
+		//if (Configurator.hdLightmaps()) {
+		//	result = StringUtils.replace(result, "#define VANILLA_LIGHTING", "//#define VANILLA_LIGHTING");
+		//
+		//	if (Configurator.lightmapNoise) {
+		//		result = StringUtils.replace(result, "//#define ENABLE_LIGHT_NOISE", "#define ENABLE_LIGHT_NOISE");
+		//	}
+		//}
+
+		if (Configurator.preprocessShaderSource) {
+			result = glslPreprocessSource(result);
+		}
 
-			if (programType.isDepth) {
-				result = StringUtils.replace(result, "//#define DEPTH_PASS", "#define DEPTH_PASS");
-			}
+		return new ShaderSourceAssembler.Assembled(result, combined.files(), fingerprint);
+	}
 
-			if (Pipeline.shadowsEnabled()) {
-				result = StringUtils.replace(result, "#define SHADOW_MAP_SIZE 1024", "#define SHADOW_MAP_SIZE " + Pipeline.skyShadowSize);
-			} else {
-				result = StringUtils.replace(result, "#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT");
-				result = StringUtils.replace(result, "#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
-			}
+	/** Everything other than file content that affects the final source. */
+	private String sourceFingerprint(ShaderSourceAssembler.DefineTable defines) {
+		return defines.toString() + Pipeline.config().glslVersion + "\n" + Configurator.preprocessShaderSource + "\n" + sourceSelection();
+	}
 
-			result = StringUtils.replace(result, "#define _CV_MAX_SHADER_COUNT 0", "#define _CV_MAX_SHADER_COUNT " + MaterialConstants.MAX_SHADERS);
+	/** Identifies any choice of source files not made by this shader's own includes. */
+	protected String sourceSelection() {
+		return "";
+	}
 
-			// prepend GLSL version
-			result = "#version " + Pipeline.config().glslVersion + "\n\n" + result;
+	/** Adds replacements for defines that depend on configuration or program type. */
+	protected void addDefines(ShaderSourceAssembler.DefineTable defines) {
+		if (Pipeline.config().enablePBR) {
+			defines.replace("//#define PBR_ENABLED", "#define PBR_ENABLED");
+		}
 
-			//if (Configurator.hdLightmaps()) {
-			//	result = StringUtils.replace(result, "#define VANILLA_LIGHTING", "//#define VANILLA_LIGHTING");
-			//
-			//	if (Configurator.lightmapNoise) {
-			//		result = StringUtils.replace(result, "//#define ENABLE_LIGHT_NOISE", "#define ENABLE_LIGHT_NOISE");
-			//	}
-			//}
+		if (!CanvasGlHelper.supportsArbConservativeDepth()) {
+			defines.replace("#define _CV_ARB_CONSERVATIVE_DEPTH", "//#define _CV_ARB_CONSERVATIVE_DEPTH");
+		}
 
-			if (Configurator.preprocessShaderSource) {
-				result = glslPreprocessSource(result);
-			}
+		if (!PreReleaseShaderCompat.needsFragmentShaderStubs()) {
+			defines.replace("#define _CV_FRAGMENT_COMPAT", "//#define _CV_FRAGMENT_COMPAT");
+		}
 
-			source = result;
+		if (programType.isTerrain) {
+			defines.replace("#define _CV_VERTEX_DEFAULT", TerrainEncoder.isCompact() ? "#define _CV_VERTEX_TERRAIN\n#define _CV_VERTEX_TERRAIN_COMPACT" : "#define _CV_VERTEX_TERRAIN");
 		}
 
-		return result;
+		if (programType.hasVertexProgramControl) {
+			defines.replace("#define PROGRAM_BY_UNIFORM", "//#define PROGRAM_BY_UNIFORM");
+		}
+
+		if (shaderType == GL21.GL_FRAGMENT_SHADER) {
+			defines.replace("#define VERTEX_SHADER", "#define FRAGMENT_SHADER");
+		}
+
+		if (!Configurator.wavyGrass) {
+			defines.replace("#define ANIMATED_FOLIAGE", "//#define ANIMATED_FOLIAGE");
+		}
+
+		if (programType.isDepth) {
+			defines.replace("//#define DEPTH_PASS", "#define DEPTH_PASS");
+		}
+
+		if (Pipeline.shadowsEnabled()) {
+			defines.replace("#define SHADOW_MAP_SIZE 1024", "#define SHADOW_MAP_SIZE " + Pipeline.skyShadowSize);
+		} else {
+			defines.replace("#define SHADOW_MAP_PRESENT", "//#define SHADOW_MAP_PRESENT");
+			defines.replace("#define SHADOW_MAP_SIZE 1024", "//#define SHADOW_MAP_SIZE 1024");
+		}
+
+		defines.replace("#define _CV_MAX_SHADER_COUNT 0", "#define _CV_MAX_SHADER_COUNT " + MaterialConstants.MAX_SHADERS);
 	}
 
+	/** Safe to call off the render thread. */
 	protected String getCombinedShaderSource() {
 		final ResourceManager resourceManager = Minecraft.getInstance().getResourceManager();
-		INCLUDED.clear();
 		String result = loadShaderSource(resourceManager, shaderSourceId);
 		result = preprocessSource(resourceManager, result);
-		return processSourceIncludes(resourceManager, result);
+		return ShaderSourceAssembler.expandIncludes(resourceManager, result);
 	}
 
 	protected String preprocessSource(ResourceManager resourceManager, String baseSource) {
 		return baseSource;
 	}
 
+	/** Cached until the next reload. */
 	protected static String loadShaderSource(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
-		String result;
+		return ShaderSourceAssembler.source(resourceManager, shaderSourceId);
+	}
 
-		try (InputStream inputStream = resourceManager.getResource(shaderSourceId).get().open()) {
-			try (Reader reader = new InputStreamReader(inputStream)) {
-				result = CharStreams.toString(reader);
-			}
-		} catch (final FileNotFoundException | NoSuchElementException e) {
-			result = Pipeline.config().configSource(shaderSourceId);
+	/**
+	 * Call after render / resource refresh to force shader reload.
+	 */
+	@Override
+	public final void forceReload() {
+		needsLoad = true;
+		source = null;
+		sourceFiles = null;
+		sourceFingerprint = null;
+		uniformDeclarations = null;
+		pendingSource = null;
+	}
 
-			if (result == null) {
-				result = ShaderConfig.getShaderConfigSupplier(shaderSourceId).get();
-			}
-		} catch (final IOException e) {
-			CanvasMod.LOG.warn("Unable to load shader resource " + shaderSourceId.toString() + " due to exception.", e);
-			return "";
+	@Override
+	public final boolean reloadIfChanged(Set<ResourceLocation> changedFiles) {
+		// debug output is cleared on every reload, so every shader must compile again to rewrite it
+		if (source == null || isErrored || Configurator.shaderDebug || dependsOnAny(changedFiles)) {
+			forceReload();
+			return true;
 		}
 
-		return result == null || result.isBlank() ? "" : PreReleaseShaderCompat.compatify(result, shaderSourceId);
-	}
+		final ShaderSourceAssembler.DefineTable defines = new ShaderSourceAssembler.DefineTable();
+		addDefines(defines);
 
-	private String processSourceIncludes(ResourceManager resourceManager, String source) {
-		final Matcher m = PATTERN.matcher(source);
+		if (!sourceFingerprint.equals(sourceFingerprint(defines))) {
+			forceReload();
+			return true;
+		}
 
-		while (m.find()) {
-			// allow quoted arguments to #include for nicer IDE support
-			final String id = StringUtils.replace(m.group(1), "\"", "");
+		return false;
+	}
 
-			if (INCLUDED.contains(id)) {
-				source = StringUtils.replace(source, m.group(0), "");
-			} else {
-				INCLUDED.add(id);
-				final String src = processSourceIncludes(resourceManager, loadShaderSource(resourceManager, new ResourceLocation(id)));
-				source = StringUtils.replace(source, m.group(0), src, 1);
-			}
+	private boolean dependsOnAny(Set<ResourceLocation> changedFiles) {
+		if (changedFiles.isEmpty()) {
+			return false;
 		}
 
-		return source;
-	}
+		for (final ResourceLocation id : sourceFiles) {
+			if (changedFiles.contains(id)) {
+				return true;
+			}
+		}
 
-	/**
-	 * Call after render / resource refresh to force shader reload.
-	 */
-	@Override
-	public final void forceReload() {
-		needsLoad = true;
-		source = null;
+		return false;
 	}
 
 	@Override
@@ -375,9 +437,23 @@ public class GlShader implements Shader {
 
 	@Override
 	public boolean containsUniformSpec(String type, String name) {
-		final String regex = "(?m)^\\s*uniform\\s+" + type + "\\s+" + name + "\\s*;";
-		final Pattern pattern = Pattern.compile(regex);
-		return pattern.matcher(getSource()).find();
+		UniformDeclarations result = uniformDeclarations;
+
+		if (result == null) {
+			result = UniformDeclarations.parse(getSource());
+			uniformDeclarations = result;
+		}
+
+		return result.contains(type, name);
+	}
+
+	@Override
+	public String source() {
+		try {
+			return getSource();
+		} catch (final Exception e) {
+			return null;
+		}
 	}
 
 	@Override
@@ -20,12 +20,19 @@
 
 package grondag.canvas.shader;
 
+import java.util.Set;
+
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 
+import net.minecraft.client.Minecraft;
 import net.minecraft.resources.ResourceLocation;
 
 import grondag.canvas.CanvasMod;
 import grondag.canvas.config.Configurator;
+import grondag.canvas.pipeline.Pipeline;
+import grondag.canvas.pipeline.config.ProgramConfig;
 import grondag.canvas.varia.GFX;
 
 public enum GlShaderManager {
@@ -74,10 +81,50 @@ public enum GlShaderManager {
 		}
 	}
 
-	public void reload() {
+	/**
+	 * Re-reads shader files and reloads only the shaders built from files
+	 * or configuration that changed. All shaders reload when shader debug
+	 * output is on, because the debug folder is cleared here.
+	 *
+	 * @return shader files whose content changed, for program reload
+	 */
+	public Set<ResourceLocation> reload() {
 		GlShader.forceReloadErrors();
 		GlShader.clearDebugSource();
-		fragmentShaders.values().forEach(s -> s.forceReload());
-		vertexShaders.values().forEach(s -> s.forceReload());
+		final Set<ResourceLocation> changedFiles = ShaderSourceAssembler.reload(Minecraft.getInstance().getResourceManager());
+		ProgramBinaries.reload();
+		fragmentShaders.values().forEach(s -> s.reloadIfChanged(changedFiles));
+		vertexShaders.values().forEach(s -> s.reloadIfChanged(changedFiles));
+
+		if (Configurator.enableLifeCycleDebug) {
+			CanvasMod.LOG.info("Lifecycle Event: shader files changed: " + changedFiles.size());
+		}
+
+		return changedFiles;
+	}
+
+	/**
+	 * Starts assembling source for all material and process shaders of the active pipeline
+	 * on background threads, so only compilation is left for the render thread.
+	 * Call after pipeline and shader reload.
+	 */
+	public void assembleSources() {
+		final ReferenceOpenHashSet<Shader> shaders = new ReferenceOpenHashSet<>();
+
+		for (final ProgramConfig program : Pipeline.config().programs) {
+			shaders.add(getOrCreateVertexShader(program.vertexSource, ProgramType.PROCESS));
+			shaders.add(getOrCreateFragmentShader(program.fragmentSource, ProgramType.PROCESS));
+		}
+
+		GlMaterialProgramManager.INSTANCE.collectShaders(shaders);
+		final ObjectArrayList<GlShader> glShaders = new ObjectArrayList<>(shaders.size());
+
+		for (final Shader shader : shaders) {
+			if (shader instanceof GlShader glShader) {
+				glShaders.add(glShader);
+			}
+		}
+
+		ShaderSourceAssembler.assemble(glShaders);
 	}
 }
@@ -0,0 +1,129 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.shader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Generates the GLSL that calls the material sub-shader matching
+ * {@code cv_programId} when a material program includes more than one.
+ *
+ * <p>Output is a block of statements indented one tab, ready to replace
+ * the vertex or fragment start marker in the pipeline source.
+ */
+final class MaterialDispatch {
+	static final String ID_VARIABLE = "cv_programId";
+
+	enum Form {
+		/** One case per sub-shader. Compilers can lower it to a jump table. */
+		SWITCH,
+		/**
+		 * Nested comparisons that reach any sub-shader in log2(n) steps, for
+		 * drivers that handle switch statements badly. Sub-shaders without an
+		 * entry point are left out because there is nothing to call.
+		 */
+		BRANCH_TREE
+	}
+
+	private MaterialDispatch() { }
+
+	/**
+	 * @param ids sub-shader indexes, in the order their cases should appear in a switch
+	 * @param calls statement that starts the sub-shader at the same position in {@code ids},
+	 * or null if the sub-shader has no entry point
+	 */
+	static String generate(Form form, int[] ids, String[] calls) {
+		assert ids.length == calls.length;
+		return form == Form.SWITCH ? generateSwitch(ids, calls) : generateBranchTree(ids, calls);
+	}
+
+	private static String generateSwitch(int[] ids, String[] calls) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("\tswitch (").append(ID_VARIABLE).append(") {\n");
+
+		for (int i = 0; i < ids.length; ++i) {
+			sb.append("\tcase ").append(ids[i]).append(": ");
+
+			if (calls[i] != null) {
+				sb.append(calls[i]).append(' ');
+			}
+
+			sb.append("break;\n");
+		}
+
+		sb.append("\tdefault: break;\n");
+		sb.append("\t}\n");
+		return sb.toString();
+	}
+
+	private static String generateBranchTree(int[] ids, String[] calls) {
+		final Integer[] order = new Integer[ids.length];
+		int count = 0;
+
+		for (int i = 0; i < ids.length; ++i) {
+			if (calls[i] != null) {
+				order[count++] = i;
+			}
+		}
+
+		if (count == 0) {
+			return "\t// NOOP\n";
+		}
+
+		final Integer[] entries = Arrays.copyOf(order, count);
+		Arrays.sort(entries, Comparator.comparingInt(i -> ids[i]));
+
+		final int[] sortedIds = new int[count];
+		final String[] sortedCalls = new String[count];
+
+		for (int i = 0; i < count; ++i) {
+			sortedIds[i] = ids[entries[i]];
+			sortedCalls[i] = calls[entries[i]];
+		}
+
+		final StringBuilder sb = new StringBuilder();
+		appendBranch(sb, sortedIds, sortedCalls, 0, count, 1);
+		return sb.toString();
+	}
+
+	/** Covers entries from start (inclusive) to end (exclusive) of arrays sorted by id. */
+	private static void appendBranch(StringBuilder sb, int[] ids, String[] calls, int start, int end, int depth) {
+		if (end - start == 1) {
+			indent(sb, depth).append("if (").append(ID_VARIABLE).append(" == ").append(ids[start]).append(") ").append(calls[start]).append('\n');
+			return;
+		}
+
+		final int mid = (start + end) >>> 1;
+		indent(sb, depth).append("if (").append(ID_VARIABLE).append(" < ").append(ids[mid]).append(") {\n");
+		appendBranch(sb, ids, calls, start, mid, depth + 1);
+		indent(sb, depth).append("} else {\n");
+		appendBranch(sb, ids, calls, mid, end, depth + 1);
+		indent(sb, depth).append("}\n");
+	}
+
+	private static StringBuilder indent(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; ++i) {
+			sb.append('\t');
+		}
+
+		return sb;
+	}
+}
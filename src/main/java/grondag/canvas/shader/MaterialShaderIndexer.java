@@ -75,11 +75,16 @@ public final class MaterialShaderIndexer {
 		return programType.ordinal() | ((long) fragmentShaderIndex << 16) | ((long) vertexShaderIndex << 32);
 	}
 
+	// synchronized with register because shader sources may be assembled off-thread
 	static int[] vertexIds(ProgramType programType) {
-		return programType.isDepth ? DEPTH_VERTEX_INDEXES.toIntArray() : VERTEX_INDEXES.toIntArray();
+		synchronized (INSTANCE) {
+			return programType.isDepth ? DEPTH_VERTEX_INDEXES.toIntArray() : VERTEX_INDEXES.toIntArray();
+		}
 	}
 
 	static int[] fragmentIds(ProgramType programType) {
-		return programType.isDepth ? DEPTH_FRAGMENT_INDEXES.toIntArray() : FRAGMENT_INDEXES.toIntArray();
+		synchronized (INSTANCE) {
+			return programType.isDepth ? DEPTH_FRAGMENT_INDEXES.toIntArray() : FRAGMENT_INDEXES.toIntArray();
+		}
 	}
 }
@@ -0,0 +1,175 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.shader;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.jetbrains.annotations.Nullable;
+import org.lwjgl.system.MemoryUtil;
+
+import net.minecraft.client.Minecraft;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.buffer.format.CanvasVertexFormat;
+import grondag.canvas.config.Configurator;
+import grondag.canvas.varia.CanvasGlHelper;
+import grondag.canvas.varia.GFX;
+
+/**
+ * Loads linked programs from {@link ProgramBinaryCache} and saves newly linked ones.
+ * The cache is opened on first use and keyed by the final shader sources, vertex
+ * attribute bindings and the driver identity.
+ */
+final class ProgramBinaries {
+	private static final long MAX_CACHE_BYTES = 128L << 20;
+
+	private static boolean isInitialized = false;
+	private static @Nullable ProgramBinaryCache cache = null;
+	private static String driverId;
+	private static boolean needsStoreWarning = true;
+
+	private ProgramBinaries() { }
+
+	/** Call on pipeline or config reload so config changes take effect. */
+	static void reload() {
+		isInitialized = false;
+		cache = null;
+	}
+
+	private static @Nullable ProgramBinaryCache cache() {
+		if (!isInitialized) {
+			isInitialized = true;
+			cache = null;
+
+			if (Configurator.programBinaryCache && CanvasGlHelper.supportsProgramBinary()) {
+				final int[] formats = new int[GFX.getInteger(GFX.GL_NUM_PROGRAM_BINARY_FORMATS)];
+
+				// some drivers expose the API without any usable format
+				if (formats.length > 0) {
+					GFX.getIntegerv(GFX.GL_PROGRAM_BINARY_FORMATS, formats);
+					driverId = driverId(formats);
+					cache = new DiskProgramBinaryCache(cachePath(), driverId, MAX_CACHE_BYTES);
+				}
+			}
+		}
+
+		return cache;
+	}
+
+	@SuppressWarnings("resource")
+	private static Path cachePath() {
+		return Minecraft.getInstance().gameDirectory.toPath().normalize().resolve("canvas_program_cache");
+	}
+
+	private static String driverId(int[] formats) {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(GFX.getString(GFX.GL_VENDOR)).append('\n');
+		builder.append(GFX.getString(GFX.GL_RENDERER)).append('\n');
+		builder.append(GFX.getString(GFX.GL_VERSION)).append('\n');
+
+		for (final int format : formats) {
+			builder.append(format).append(' ');
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Null if the cache is disabled or sources can't be built, in which case
+	 * the program should be compiled and not stored.
+	 */
+	static @Nullable String key(Shader vertexShader, Shader fragmentShader, CanvasVertexFormat vertexFormat) {
+		// debug output is written when shaders compile, so always compile when it is wanted
+		if (Configurator.shaderDebug || cache() == null) {
+			return null;
+		}
+
+		final String vertexSource = vertexShader.source();
+		final String fragmentSource = fragmentShader.source();
+
+		if (vertexSource == null || fragmentSource == null) {
+			return null;
+		}
+
+		return ProgramBinaryCache.key(driverId, vertexSource, fragmentSource, vertexFormat.attributeKey());
+	}
+
+	/** Loads a cached binary into the program. Returns true if the program is now linked. */
+	static boolean load(int programId, String key) {
+		final ProgramBinaryCache.Binary binary = cache.load(key);
+
+		if (binary == null) {
+			return false;
+		}
+
+		final ByteBuffer buffer = MemoryUtil.memAlloc(binary.data().length);
+
+		try {
+			buffer.put(binary.data()).flip();
+			GFX.programBinary(programId, binary.format(), buffer);
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+
+		if (GFX.getProgramInfo(programId, GFX.GL_LINK_STATUS) == GFX.GL_FALSE) {
+			// normal after driver updates that keep the same version string
+			cache.invalidate(key);
+			return false;
+		}
+
+		return true;
+	}
+
+	/** Call before linking a program that will be stored. */
+	static void prepareToStore(int programId) {
+		GFX.programParameteri(programId, GFX.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GFX.GL_TRUE);
+	}
+
+	/** Saves the binary of a successfully linked program. */
+	static void store(int programId, String key) {
+		final int length = GFX.getProgramInfo(programId, GFX.GL_PROGRAM_BINARY_LENGTH);
+
+		if (length <= 0) {
+			return;
+		}
+
+		final ByteBuffer buffer = MemoryUtil.memAlloc(length);
+
+		try {
+			final int[] format = new int[1];
+			final int[] written = new int[1];
+			GFX.getProgramBinary(programId, written, format, buffer);
+
+			if (written[0] > 0) {
+				final byte[] data = new byte[written[0]];
+				buffer.get(0, data);
+
+				if (!cache.store(key, new ProgramBinaryCache.Binary(format[0], data)) && needsStoreWarning) {
+					CanvasMod.LOG.warn("Unable to save program binary to " + cachePath() + ". Programs will be compiled from source.");
+					needsStoreWarning = false;
+				}
+			}
+		} finally {
+			MemoryUtil.memFree(buffer);
+		}
+	}
+}
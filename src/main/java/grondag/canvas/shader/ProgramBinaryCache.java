@@ -0,0 +1,90 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.shader;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps linked program binaries between sessions so programs can skip compilation.
+ * Has no GL dependency. Entries may be dropped at any time, so callers must
+ * always be able to compile a program from source.
+ */
+public interface ProgramBinaryCache {
+	/**
+	 * @param format driver-specific binary format reported with the binary
+	 * @param data binary as retrieved from the driver
+	 */
+	record Binary(int format, byte[] data) { }
+
+	/** Null if there is no usable entry for the key. */
+	@Nullable Binary load(String key);
+
+	/** Returns false if the binary could not be saved. */
+	boolean store(String key, Binary binary);
+
+	/** Removes the entry for the key, for example because the driver rejected it. */
+	void invalidate(String key);
+
+	/** Removes all entries. */
+	void clear();
+
+	/**
+	 * Hex digest of the driver identity and every input that affects the linked binary.
+	 * Inputs are length-prefixed so different splits of the same text give different keys.
+	 */
+	static String key(String driverId, String... inputs) {
+		final MessageDigest digest;
+
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		update(digest, driverId);
+
+		for (final String input : inputs) {
+			update(digest, input);
+		}
+
+		final byte[] hash = digest.digest();
+		final StringBuilder builder = new StringBuilder(hash.length * 2);
+
+		for (final byte b : hash) {
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+			builder.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return builder.toString();
+	}
+
+	private static void update(MessageDigest digest, String input) {
+		final byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+		final int length = bytes.length;
+		digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+		digest.update(bytes);
+	}
+}
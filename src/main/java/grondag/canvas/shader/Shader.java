@@ -20,6 +20,8 @@
 
 package grondag.canvas.shader;
 
+import java.util.Set;
+
 import net.minecraft.resources.ResourceLocation;
 
 public interface Shader {
@@ -28,6 +30,15 @@ public interface Shader {
 	 */
 	void forceReload();
 
+	/**
+	 * Forces reload only if the shader's source would be different: a file it was built from
+	 * changed, or configuration it depends on did.
+	 *
+	 * @param changedFiles shader files whose content changed
+	 * @return Was the shader reloaded
+	 */
+	boolean reloadIfChanged(Set<ResourceLocation> changedFiles);
+
 	/**
 	 * Binds this shader.
 	 *
@@ -43,6 +54,11 @@ public interface Shader {
 	 */
 	boolean containsUniformSpec(String type, String name);
 
+	/**
+	 * @return The final source given to the compiler, or null if it can't be built
+	 */
+	String source();
+
 	/**
 	 * @return The shader source location, typically for debugging
 	 */
@@ -0,0 +1,347 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.shader;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.io.CharStreams;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.apache.commons.lang3.StringUtils;
+
+import net.minecraft.Util;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.ResourceManager;
+
+import io.vram.frex.api.config.ShaderConfig;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.pipeline.Pipeline;
+
+/**
+ * Builds shader source text. Shader files are read and split at their
+ * {@code #include} lines once per reload, so programs that share includes -
+ * which is nearly all of them - don't re-read or re-scan them.
+ *
+ * <p>Source for all shaders of the active pipeline can also be assembled ahead of
+ * time on background threads, leaving only compilation for the render thread.
+ *
+ * <p>Files read while combining a shader are recorded with the result. On reload
+ * every cached file is read again, and only shaders that read a file whose content
+ * changed need to be rebuilt.
+ */
+final class ShaderSourceAssembler {
+	private static final Pattern INCLUDE_PATTERN = Pattern.compile("^#include\\s+(\\\"*[\\w]+:[\\w/\\.]+)[ \\t]*.*", Pattern.MULTILINE);
+	private static final ConcurrentHashMap<ResourceLocation, ParsedSource> CACHE = new ConcurrentHashMap<>();
+	/** Files read by the combine running on this thread, if any. */
+	private static final ThreadLocal<ObjectOpenHashSet<ResourceLocation>> FILES_READ = new ThreadLocal<>();
+
+	private ShaderSourceAssembler() { }
+
+	/** Combined shader source and every file read to build it. */
+	record Combined(String text, ObjectOpenHashSet<ResourceLocation> files) { }
+
+	/**
+	 * Final shader source with what it depends on.
+	 *
+	 * @param files files read to build the source
+	 * @param fingerprint summary of configuration that affected the source
+	 */
+	record Assembled(String source, ObjectOpenHashSet<ResourceLocation> files, String fingerprint) { }
+
+	/**
+	 * Re-reads every cached file. Call when resources or pipeline change.
+	 *
+	 * @return ids of files whose content is different than before
+	 */
+	static Set<ResourceLocation> reload(ResourceManager resourceManager) {
+		final ObjectOpenHashSet<ResourceLocation> changed = new ObjectOpenHashSet<>();
+		final ObjectArrayList<ResourceLocation> ids = new ObjectArrayList<>(CACHE.keySet());
+
+		for (final ResourceLocation id : ids) {
+			final String text = load(resourceManager, id);
+			final ParsedSource prior = CACHE.get(id);
+
+			if (prior == null || !prior.text.equals(text)) {
+				changed.add(id);
+				CACHE.put(id, ParsedSource.parse(text));
+			}
+		}
+
+		return changed;
+	}
+
+	/** Runs the given source builder and records the files it reads. Safe to call off the render thread. */
+	static Combined combine(Supplier<String> builder) {
+		final ObjectOpenHashSet<ResourceLocation> files = new ObjectOpenHashSet<>();
+		final ObjectOpenHashSet<ResourceLocation> outerFiles = FILES_READ.get();
+		FILES_READ.set(files);
+
+		try {
+			return new Combined(builder.get(), files);
+		} finally {
+			FILES_READ.set(outerFiles);
+		}
+	}
+
+	/**
+	 * Starts assembling source for the given shaders on background threads.
+	 * Each shader takes its result when it loads, or builds its source itself if
+	 * it is reloaded first. Call on the render thread after pipeline and shader reload.
+	 */
+	static void assemble(List<GlShader> shaders) {
+		final Executor executor = Util.backgroundExecutor();
+		final int count = shaders.size();
+		final CompletableFuture<?>[] combined = new CompletableFuture<?>[count];
+
+		for (int i = 0; i < count; ++i) {
+			combined[i] = CompletableFuture.supplyAsync(shaders.get(i)::combine, executor);
+		}
+
+		// defines depend on compatibility flags set while combining any shader, so wait for all
+		final CompletableFuture<Void> allCombined = CompletableFuture.allOf(combined);
+
+		for (int i = 0; i < count; ++i) {
+			final GlShader shader = shaders.get(i);
+			final CompletableFuture<?> combinedSource = combined[i];
+			shader.setPendingSource(allCombined.thenApplyAsync(v -> shader.finishSource((Combined) combinedSource.join()), executor));
+		}
+	}
+
+	/** Source text of the given shader file, or empty string if it can't be found. */
+	static String source(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
+		return parsed(resourceManager, shaderSourceId).text;
+	}
+
+	/**
+	 * Replaces each {@code #include} line with the source it names, recursively.
+	 * Each file is included only at its first occurrence; later lines that include it are removed.
+	 */
+	static String expandIncludes(ResourceManager resourceManager, String source) {
+		final ParsedSource parsed = ParsedSource.parse(source);
+
+		if (parsed.includes.length == 0) {
+			return source;
+		}
+
+		final StringBuilder builder = new StringBuilder(source.length() * 4);
+		parsed.appendTo(builder, resourceManager, new HashSet<>());
+		return builder.toString();
+	}
+
+	private static ParsedSource parsed(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
+		final ObjectOpenHashSet<ResourceLocation> filesRead = FILES_READ.get();
+
+		if (filesRead != null) {
+			filesRead.add(shaderSourceId);
+		}
+
+		ParsedSource result = CACHE.get(shaderSourceId);
+
+		if (result == null) {
+			// not computeIfAbsent so the map isn't locked during resource I/O
+			result = ParsedSource.parse(load(resourceManager, shaderSourceId));
+			final ParsedSource prior = CACHE.putIfAbsent(shaderSourceId, result);
+
+			if (prior != null) {
+				result = prior;
+			}
+		}
+
+		return result;
+	}
+
+	private static String load(ResourceManager resourceManager, ResourceLocation shaderSourceId) {
+		String result;
+
+		try (InputStream inputStream = resourceManager.getResource(shaderSourceId).get().open()) {
+			try (Reader reader = new InputStreamReader(inputStream)) {
+				result = CharStreams.toString(reader);
+			}
+		} catch (final FileNotFoundException | NoSuchElementException e) {
+			result = Pipeline.config().configSource(shaderSourceId);
+
+			if (result == null) {
+				result = ShaderConfig.getShaderConfigSupplier(shaderSourceId).get();
+			}
+		} catch (final IOException e) {
+			CanvasMod.LOG.warn("Unable to load shader resource " + shaderSourceId.toString() + " due to exception.", e);
+			return "";
+		}
+
+		return result == null || result.isBlank() ? "" : PreReleaseShaderCompat.compatify(result, shaderSourceId);
+	}
+
+	/** Source text split at include lines. Has one more text segment than includes. */
+	private record ParsedSource(String text, String[] segments, ResourceLocation[] includes) {
+		private static final String[] NO_SEGMENTS = new String[0];
+		private static final ResourceLocation[] NO_INCLUDES = new ResourceLocation[0];
+
+		static ParsedSource parse(String text) {
+			final Matcher m = INCLUDE_PATTERN.matcher(text);
+
+			if (!m.find()) {
+				return new ParsedSource(text, NO_SEGMENTS, NO_INCLUDES);
+			}
+
+			final ArrayList<String> segments = new ArrayList<>();
+			final ArrayList<ResourceLocation> includes = new ArrayList<>();
+			int segmentStart = 0;
+
+			do {
+				segments.add(text.substring(segmentStart, m.start()));
+				// allow quoted arguments to #include for nicer IDE support
+				includes.add(new ResourceLocation(StringUtils.remove(m.group(1), '"')));
+				segmentStart = m.end();
+			} while (m.find());
+
+			segments.add(text.substring(segmentStart));
+			return new ParsedSource(text, segments.toArray(NO_SEGMENTS), includes.toArray(NO_INCLUDES));
+		}
+
+		void appendTo(StringBuilder builder, ResourceManager resourceManager, HashSet<ResourceLocation> included) {
+			if (includes.length == 0) {
+				builder.append(text);
+				return;
+			}
+
+			for (int i = 0; i < includes.length; ++i) {
+				builder.append(segments[i]);
+				final ResourceLocation id = includes[i];
+
+				if (included.add(id)) {
+					parsed(resourceManager, id).appendTo(builder, resourceManager, included);
+				}
+			}
+
+			builder.append(segments[includes.length]);
+		}
+	}
+
+	/**
+	 * Exact text replacements for {@code #define} directives, applied together in a single
+	 * pass over the source. Each pattern is a {@code #define} directive, optionally commented
+	 * out with a leading {@code //}, and is matched wherever it occurs like a plain string replace.
+	 * At most one pattern per define name.
+	 */
+	static final class DefineTable {
+		private static final String DEFINE = "#define";
+
+		private final Object2ObjectOpenHashMap<String, String[]> replacements = new Object2ObjectOpenHashMap<>();
+
+		DefineTable replace(String pattern, String replacement) {
+			final int defineIndex = pattern.indexOf(DEFINE);
+			assert defineIndex == 0 || (defineIndex == 2 && pattern.startsWith("//")) : "Define pattern must start with #define or //#define";
+			final String name = defineName(pattern, defineIndex);
+			final String[] prior = replacements.put(name, new String[] {pattern, replacement});
+			assert prior == null : "Duplicate define pattern for " + name;
+			return this;
+		}
+
+		String apply(String source) {
+			if (replacements.isEmpty()) {
+				return source;
+			}
+
+			StringBuilder builder = null;
+			int copied = 0;
+			int defineIndex = source.indexOf(DEFINE);
+
+			while (defineIndex != -1) {
+				final String[] entry = replacements.get(defineName(source, defineIndex));
+				int next = defineIndex + DEFINE.length();
+
+				if (entry != null) {
+					final String pattern = entry[0];
+					final int start = pattern.charAt(0) == '#' ? defineIndex : defineIndex - 2;
+
+					if (start >= copied && source.startsWith(pattern, start)) {
+						if (builder == null) {
+							builder = new StringBuilder(source.length() + 256);
+						}
+
+						builder.append(source, copied, start).append(entry[1]);
+						copied = start + pattern.length();
+						next = copied;
+					}
+				}
+
+				defineIndex = source.indexOf(DEFINE, next);
+			}
+
+			if (builder == null) {
+				return source;
+			}
+
+			builder.append(source, copied, source.length());
+			return builder.toString();
+		}
+
+		/** Describes all replacements in a stable order, to detect when they change. */
+		@Override
+		public String toString() {
+			final ObjectArrayList<String> names = new ObjectArrayList<>(replacements.keySet());
+			names.sort(null);
+			final StringBuilder builder = new StringBuilder();
+
+			for (final String name : names) {
+				final String[] entry = replacements.get(name);
+				builder.append(entry[0]).append(" -> ").append(entry[1]).append('\n');
+			}
+
+			return builder.toString();
+		}
+
+		/** Identifier following the #define at the given index, or empty string if none. */
+		private static String defineName(String source, int defineIndex) {
+			final int length = source.length();
+			int start = defineIndex + DEFINE.length();
+
+			while (start < length && (source.charAt(start) == ' ' || source.charAt(start) == '\t')) {
+				++start;
+			}
+
+			int end = start;
+
+			while (end < length && (Character.isLetterOrDigit(source.charAt(end)) || source.charAt(end) == '_')) {
+				++end;
+			}
+
+			return source.substring(start, end);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.shader;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+/**
+ * Uniform declarations of a shader source, found with a single scan so
+ * that checking for a uniform is a hash lookup instead of a source search.
+ *
+ * <p>Recognizes declarations of the form {@code uniform <type> <name>;}
+ * at the start of a line. Members of uniform blocks are not included.
+ */
+final class UniformDeclarations {
+	private static final Pattern DECLARATION_PATTERN = Pattern.compile("(?m)^\\s*uniform\\s+([^;{}\\n]+?)\\s+(\\w+)\\s*;");
+	/** Type arguments are regular expressions from a small fixed set. */
+	private static final ConcurrentHashMap<String, Pattern> TYPE_PATTERNS = new ConcurrentHashMap<>();
+
+	/** Declared types by uniform name. More than one only when a name is declared in alternate branches. */
+	private final Object2ObjectOpenHashMap<String, String[]> types = new Object2ObjectOpenHashMap<>();
+
+	private UniformDeclarations() { }
+
+	static UniformDeclarations parse(String source) {
+		final UniformDeclarations result = new UniformDeclarations();
+		final Matcher m = DECLARATION_PATTERN.matcher(source);
+
+		while (m.find()) {
+			final String type = m.group(1);
+			final String name = m.group(2);
+			final String[] prior = result.types.get(name);
+
+			if (prior == null) {
+				result.types.put(name, new String[] {type});
+			} else if (!Arrays.asList(prior).contains(type)) {
+				final String[] types = Arrays.copyOf(prior, prior.length + 1);
+				types[prior.length] = type;
+				result.types.put(name, types);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param type regular expression matching the declared type, may be a plain type name
+	 * @param name uniform name
+	 * @return true if a uniform with the name is declared with a matching type
+	 */
+	boolean contains(String type, String name) {
+		final String[] declaredTypes = types.get(name);
+
+		if (declaredTypes == null) {
+			return false;
+		}
+
+		for (final String declaredType : declaredTypes) {
+			if (declaredType.equals(type) || TYPE_PATTERNS.computeIfAbsent(type, Pattern::compile).matcher(declaredType).matches()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.shader.data;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+
+import io.vram.frex.api.math.FastMatrix3f;
+
+import grondag.canvas.buffer.util.GlBufferAllocator;
+import grondag.canvas.varia.GFX;
+
+/**
+ * Frame data shared by all programs, uploaded as a single std140 uniform
+ * block instead of as uniforms set on each program.
+ *
+ * <p>Member order must match the {@code _cvu_frame} block in canvas:shaders/internal/world.glsl.
+ * Anything that changes the source buffers must call {@link #markDirty()}.
+ */
+public final class FrameUniformBlock {
+	private FrameUniformBlock() { }
+
+	public static final String BLOCK_NAME = "_cvu_frame";
+	public static final int BINDING = 0;
+
+	private static final int MATRIX_OFFSET;
+	private static final int WORLD_OFFSET;
+	private static final int NORMAL_MATRIX_OFFSET;
+	private static final int WORLD_UINT_OFFSET;
+	private static final int FLAGS_OFFSET;
+	private static final int SIZE_BYTES;
+
+	static {
+		final Std140Layout layout = new Std140Layout();
+		MATRIX_OFFSET = layout.mat4Array(MatrixData.COUNT);
+		WORLD_OFFSET = layout.vec4Array(FloatData.FLOAT_VECTOR_COUNT);
+		NORMAL_MATRIX_OFFSET = layout.mat3();
+		WORLD_UINT_OFFSET = layout.scalarArray(IntData.UINT_COUNT);
+		FLAGS_OFFSET = layout.scalarArray(IntData.INT_LENGTH);
+		SIZE_BYTES = layout.sizeBytes();
+	}
+
+	private static final ByteBuffer DATA = BufferUtils.createByteBuffer(SIZE_BYTES);
+	private static final long DATA_ADDRESS = MemoryUtil.memAddress(DATA);
+	private static final FloatBuffer NORMAL_MATRIX = BufferUtils.createFloatBuffer(9);
+
+	private static int bufferId = 0;
+	private static boolean isDirty = true;
+
+	/** Call after changing any value in the block. Upload waits until a program is next activated. */
+	public static void markDirty() {
+		isDirty = true;
+	}
+
+	/** Points the program's frame block, if it has one, at the shared binding. Call after each link or binary load. */
+	public static void bindToProgram(int programId) {
+		final int blockIndex = GFX.getUniformBlockIndex(programId, BLOCK_NAME);
+
+		if (blockIndex != GFX.GL_INVALID_INDEX) {
+			GFX.uniformBlockBinding(programId, blockIndex, BINDING);
+		}
+	}
+
+	/** Uploads the block if it changed since the last upload. */
+	public static void uploadIfDirty() {
+		if (isDirty) {
+			upload();
+			isDirty = false;
+		}
+	}
+
+	private static void upload() {
+		assert RenderSystem.isOnRenderThread();
+
+		// both are vec4-aligned with no padding, so copy as is
+		MemoryUtil.memCopy(MemoryUtil.memAddress0(MatrixData.MATRIX_DATA), DATA_ADDRESS + MATRIX_OFFSET, MatrixData.COUNT * 64L);
+		MemoryUtil.memCopy(MemoryUtil.memAddress0(FloatData.FLOAT_VECTOR_DATA), DATA_ADDRESS + WORLD_OFFSET, FloatData.FLOAT_VECTOR_COUNT * 16L);
+
+		((FastMatrix3f) (Object) MatrixData.viewNormalMatrix).f_writeToBuffer(NORMAL_MATRIX);
+
+		for (int column = 0; column < 3; ++column) {
+			for (int row = 0; row < 3; ++row) {
+				DATA.putFloat(NORMAL_MATRIX_OFFSET + column * 16 + row * 4, NORMAL_MATRIX.get(column * 3 + row));
+			}
+		}
+
+		putScalarArray(WORLD_UINT_OFFSET, IntData.UINT_DATA, IntData.UINT_COUNT);
+		putScalarArray(FLAGS_OFFSET, IntData.INT_DATA, IntData.INT_LENGTH);
+
+		if (bufferId == 0) {
+			bufferId = GlBufferAllocator.claimBuffer(SIZE_BYTES);
+		}
+
+		GFX.bindBuffer(GFX.GL_UNIFORM_BUFFER, bufferId);
+		// orphans the prior contents so the upload doesn't wait on draws still reading them
+		GFX.bufferData(GFX.GL_UNIFORM_BUFFER, DATA, GFX.GL_STREAM_DRAW);
+		// rebound with each upload in case something else used the binding point
+		GFX.bindBufferBase(GFX.GL_UNIFORM_BUFFER, BINDING, bufferId);
+	}
+
+	private static void putScalarArray(int offset, IntBuffer source, int length) {
+		for (int i = 0; i < length; ++i) {
+			DATA.putInt(offset + i * 16, source.get(i));
+		}
+	}
+}
@@ -233,6 +233,7 @@ public class ShaderDataManager {
 		FLOAT_VECTOR_DATA.put(VEC_VANILLA_CLEAR_COLOR, r);
 		FLOAT_VECTOR_DATA.put(VEC_VANILLA_CLEAR_COLOR + 1, g);
 		FLOAT_VECTOR_DATA.put(VEC_VANILLA_CLEAR_COLOR + 2, b);
+		FrameUniformBlock.markDirty();
 	}
 
 	private static void computeEyeNumbers(ClientLevel world, LocalPlayer player) {
@@ -414,6 +415,7 @@ public class ShaderDataManager {
 		assert cameraEntity.getCommandSenderWorld() != null;
 		worldFlags = 0;
 		playerFlags = 0;
+		FrameUniformBlock.markDirty();
 
 		if (cameraEntity == null || cameraEntity.getCommandSenderWorld() == null) {
 			return;
@@ -635,12 +637,14 @@ public class ShaderDataManager {
 	public static void captureFogDistances() {
 		FLOAT_VECTOR_DATA.put(FOG_START, RenderSystem.getShaderFogStart());
 		FLOAT_VECTOR_DATA.put(FOG_END, RenderSystem.getShaderFogEnd());
+		FrameUniformBlock.markDirty();
 	}
 
 	public static void updateEmissiveColor(int color) {
 		FLOAT_VECTOR_DATA.put(EMISSIVE_COLOR_RED, ((color >> 24) & 0xFF) / 255f);
 		FLOAT_VECTOR_DATA.put(EMISSIVE_COLOR_GREEN, ((color >> 16) & 0xFF) / 255f);
 		FLOAT_VECTOR_DATA.put(EMISSIVE_COLOR_BLUE, (color & 0xFF) / 255f);
+		FrameUniformBlock.markDirty();
 	}
 
 	private static void putViewVector(int index, float yaw, float pitch, Vector3f storeTo) {
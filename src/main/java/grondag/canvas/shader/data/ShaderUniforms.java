@@ -42,16 +42,4 @@ public class ShaderUniforms {
 
 		program.uniformSampler("isamplerBuffer", "_cvu_materialInfo", UniformRefreshFrequency.ON_LOAD, u -> u.set(TextureData.MATERIAL_INFO - GL21.GL_TEXTURE0));
 	};
-
-	public static final Consumer<GlProgram> COMMON_UNIFORM_SETUP = program -> {
-		program.uniformArray4f("_cvu_world", UniformRefreshFrequency.PER_FRAME, u -> u.setExternal(FloatData.FLOAT_VECTOR_DATA), FloatData.FLOAT_VECTOR_COUNT);
-
-		program.uniformArrayui("_cvu_world_uint", UniformRefreshFrequency.PER_FRAME, u -> u.setExternal(IntData.UINT_DATA), IntData.UINT_COUNT);
-
-		program.uniformArrayui("_cvu_flags", UniformRefreshFrequency.PER_FRAME, u -> u.setExternal(IntData.INT_DATA), IntData.INT_LENGTH);
-
-		program.uniformMatrix4fArray("_cvu_matrix", UniformRefreshFrequency.PER_FRAME, u -> u.set(MatrixData.MATRIX_DATA));
-
-		program.uniformMatrix3f("_cvu_normal_model_matrix", UniformRefreshFrequency.PER_FRAME, u -> u.set(MatrixData.viewNormalMatrix));
-	};
 }
@@ -0,0 +1,94 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.shader.data;
+
+/**
+ * Computes byte offsets of uniform block members under std140 rules.
+ * Members must be added in the order they are declared in GLSL.
+ *
+ * <p>Array elements, including the columns of a matrix, are always aligned
+ * to 16 bytes, so scalar arrays take four times the space of a tightly packed array.
+ */
+public final class Std140Layout {
+	private static final int VEC4_BYTES = 16;
+
+	private int sizeBytes = 0;
+
+	/** Adds a float, int, uint or bool. Returns its byte offset. */
+	public int scalar() {
+		return add(4, 4);
+	}
+
+	public int vec2() {
+		return add(8, 8);
+	}
+
+	public int vec3() {
+		return add(VEC4_BYTES, 12);
+	}
+
+	public int vec4() {
+		return add(VEC4_BYTES, VEC4_BYTES);
+	}
+
+	/** Elements are 16 bytes apart regardless of scalar type. */
+	public int scalarArray(int length) {
+		return array(length);
+	}
+
+	public int vec4Array(int length) {
+		return array(length);
+	}
+
+	/** Column-major, stored as three vec4 columns. */
+	public int mat3() {
+		return array(3);
+	}
+
+	public int mat4() {
+		return array(4);
+	}
+
+	public int mat4Array(int length) {
+		return array(length * 4);
+	}
+
+	/** Size of the block, which ends on a 16-byte boundary. */
+	public int sizeBytes() {
+		return alignUp(sizeBytes, VEC4_BYTES);
+	}
+
+	/** Any array or matrix is a sequence of vec4-aligned slots. */
+	private int array(int slotCount) {
+		assert slotCount > 0;
+		// whole slots, so members following an array also start on a 16-byte boundary
+		return add(VEC4_BYTES, slotCount * VEC4_BYTES);
+	}
+
+	private int add(int alignBytes, int lengthBytes) {
+		final int result = alignUp(sizeBytes, alignBytes);
+		sizeBytes = result + lengthBytes;
+		return result;
+	}
+
+	private static int alignUp(int bytes, int alignBytes) {
+		return (bytes + alignBytes - 1) & -alignBytes;
+	}
+}
@@ -21,40 +21,44 @@
 package grondag.canvas.terrain.occlusion;
 
 import net.minecraft.client.Minecraft;
-import net.minecraft.core.BlockPos;
 import net.minecraft.world.phys.Vec3;
 
+import grondag.canvas.terrain.region.RenderRegion;
+import grondag.canvas.terrain.region.TranslucentSortBounds;
+
 public final class SortableVisibleRegionList extends VisibleRegionList {
-	private int sortPositionVersion;
-	private int lastSortPositionVersion;
-	private long lastCameraBlockPos = Long.MAX_VALUE;
-	private Vec3 lastSortPos = new Vec3(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+	/** Camera must move at least this far (squared) before regions are checked again. */
+	private static final double RESCAN_DISTANCE_SQ = 0.5 * 0.5;
+
+	/** Max resorts scheduled per pass for regions at {@link TranslucentSortBounds#MIN_RESORT_DISTANCE}. */
+	private static final int NEAR_RESORT_LIMIT = 64;
+
+	/** Max resorts scheduled per pass for all other regions. */
+	private static final int FAR_RESORT_LIMIT = 16;
+
+	private boolean isScanIncomplete;
+	private Vec3 lastScanPos = new Vec3(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
 
 	@Override
 	public void clear() {
 		super.clear();
-		lastSortPos = new Vec3(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
-		lastCameraBlockPos = Long.MAX_VALUE;
-	}
-
-	/**
-	 * Incremented when player moves enough to trigger translucency resort.
-	 */
-	public int sortPositionVersion() {
-		return sortPositionVersion;
-	}
-
-	public Vec3 lastSortPos() {
-		return lastSortPos;
+		lastScanPos = new Vec3(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE);
+		isScanIncomplete = false;
 	}
 
 	/**
-	 * Checks build regions for translucent resort need and schedules
-	 * up to 16 of them per pass. Nearer regions are checked first and
-	 * the sort position version isn't updated until all regions are handled.
+	 * Checks visible regions for translucent resort need and schedules them.
+	 * Each region tracks the camera position of its last sort and is resorted only after
+	 * the camera moves farther than a distance derived from the region's distance and the
+	 * angular size of its translucent bounds. Distant regions thus resort much less often.
+	 *
+	 * <p>Nearer regions are checked first. Regions at the minimum resort distance may schedule
+	 * up to {@link #NEAR_RESORT_LIMIT} resorts per pass and all others share a budget of
+	 * {@link #FAR_RESORT_LIMIT}. When a budget is exhausted, checking resumes next frame even
+	 * if the camera hasn't moved.
 	 *
 	 * <p>Regions that are non-translucent, already scheduled or already current
-	 * won't count against the limit.  Resorts are fast and happen off thread -
+	 * won't count against the limits.  Resorts are fast and happen off thread -
 	 * checking incrementally avoids overloading the GPU with buffer uploads.
 	 */
 	public void scheduleResort(Vec3 cameraPos) {
@@ -62,48 +66,55 @@ public final class SortableVisibleRegionList extends VisibleRegionList {
 		final double y = cameraPos.y;
 		final double z = cameraPos.z;
 
-		final long cameraBlockPos = BlockPos.asLong((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z));
-		boolean movedEnoughToInvalidateSort = false;
-
-		if (cameraBlockPos != lastCameraBlockPos) {
-			lastCameraBlockPos = cameraBlockPos;
-			movedEnoughToInvalidateSort = true;
-		} else {
-			// can move 1.0 or more diagonally within same block pos
-			final double sdx = x - lastSortPos.x;
-			final double sdy = y - lastSortPos.y;
-			final double sdz = z - lastSortPos.z;
-			movedEnoughToInvalidateSort = sdx * sdx + sdy * sdy + sdz * sdz >= 1.0D;
-		}
+		if (!isScanIncomplete) {
+			final double dx = x - lastScanPos.x;
+			final double dy = y - lastScanPos.y;
+			final double dz = z - lastScanPos.z;
 
-		if (movedEnoughToInvalidateSort) {
-			++sortPositionVersion;
-			lastSortPos = cameraPos;
+			if (dx * dx + dy * dy + dz * dz < RESCAN_DISTANCE_SQ) {
+				return;
+			}
 		}
 
-		final int positionVersion = sortPositionVersion;
-
-		if (positionVersion != lastSortPositionVersion) {
-			final Minecraft mc = Minecraft.getInstance();
-			mc.getProfiler().push("translucent_sort");
-			final int limit = visibleRegionCount;
-			int count = 0;
-			int i;
-
-			// PERF: probably a way to sort more distant regions less frequently
-			for (i = 0; i < limit; i++) {
-				if (visibleRegions[i].scheduleSort(positionVersion)) {
-					if (++count > 16) {
-						break;
-					}
-				}
+		lastScanPos = cameraPos;
+
+		final Minecraft mc = Minecraft.getInstance();
+		mc.getProfiler().push("translucent_sort");
+		final int limit = visibleRegionCount;
+		int nearCount = 0;
+		int farCount = 0;
+		boolean isIncomplete = false;
+
+		for (int i = 0; i < limit; i++) {
+			final RenderRegion region = visibleRegions[i];
+			final float resortDistance = region.translucentResortDistance(x, y, z);
+
+			if (resortDistance < 0) {
+				continue;
 			}
 
-			if (i == limit) {
-				lastSortPositionVersion = positionVersion;
+			final boolean isNear = resortDistance == TranslucentSortBounds.MIN_RESORT_DISTANCE;
+
+			if (isNear ? nearCount == NEAR_RESORT_LIMIT : farCount == FAR_RESORT_LIMIT) {
+				isIncomplete = true;
+
+				if (nearCount == NEAR_RESORT_LIMIT && farCount == FAR_RESORT_LIMIT) {
+					break;
+				} else {
+					continue;
+				}
 			}
 
-			mc.getProfiler().pop();
+			if (region.scheduleSort(x, y, z, resortDistance)) {
+				if (isNear) {
+					++nearCount;
+				} else {
+					++farCount;
+				}
+			}
 		}
+
+		isScanIncomplete = isIncomplete;
+		mc.getProfiler().pop();
 	}
 }
@@ -29,6 +29,7 @@ import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.phys.Vec3;
 
 import grondag.canvas.buffer.input.DrawableVertexCollector;
+import grondag.canvas.buffer.input.SortingVertexCollector;
 import grondag.canvas.buffer.input.VertexCollectorList;
 import grondag.canvas.material.state.TerrainRenderStates;
 import grondag.canvas.render.terrain.TerrainSectorMap.RegionRenderSector;
@@ -45,20 +46,27 @@ public class RegionBuildState {
 	@Nullable
 	int[] translucentState;
 
+	TranslucentSortBounds translucentBounds = TranslucentSortBounds.EMPTY;
+
 	public List<BlockEntity> getBlockEntities() {
 		return blockEntities;
 	}
 
 	/**
 	 * Persists data for translucency resort if needed, also performing initial sort.
+	 * Also captures translucent bounds used to schedule resorts.
 	 * Should be called after vertex collection is complete.
 	 */
-	public void prepareTranslucentIfNeeded(Vec3 sortPos, RegionRenderSector sector, VertexCollectorList collectors) {
+	public void prepareTranslucentIfNeeded(Vec3 sortPos, RegionRenderSector sector, RegionPosition origin, VertexCollectorList collectors) {
 		final DrawableVertexCollector buffer = collectors.getIfExists(TerrainRenderStates.TRANSLUCENT_TERRAIN);
 
 		if (buffer != null && !buffer.isEmpty()) {
 			buffer.sortTerrainQuads(sortPos, sector);
 			translucentState = buffer.saveState(translucentState);
+
+			if (buffer instanceof SortingVertexCollector sorter) {
+				translucentBounds = sorter.terrainSortBounds(sector, origin);
+			}
 		}
 	}
 
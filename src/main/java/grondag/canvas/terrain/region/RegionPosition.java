@@ -83,8 +83,10 @@ public class RegionPosition extends BlockPos {
 
 	private boolean isPotentiallyVisibleFromCamera;
 
-	/** See {@link #checkAndUpdateSortNeeded(int)}. */
-	private int sortPositionVersion = -1;
+	/** Camera position of the most recent translucency sort. See {@link #checkAndUpdateSortNeeded(double, double, double, float)}. */
+	private double lastSortX = Double.MAX_VALUE;
+	private double lastSortY = Double.MAX_VALUE;
+	private double lastSortZ = Double.MAX_VALUE;
 
 	/** The smallest cascade on which this region can potentially cast a shadow. */
 	private int shadowCascade;
@@ -267,19 +269,25 @@ public class RegionPosition extends BlockPos {
 	}
 
 	/**
-	 * Tracks the given sort counter and returns true when the input value was different.
+	 * Returns true and tracks the given camera position when the camera has moved
+	 * at least the given distance from the position last tracked.
 	 * Used to identify regions that require a translucency resort.
-	 * The sort version is incremented elsewhere based on camera movement.
+	 * The resort distance is computed elsewhere based on region distance and translucent bounds.
 	 *
 	 * <p>Here because it is nominally related to position even if not related
-	 * to other feature of this class. (It has to live somewhere.) Future optimizations
-	 * might make more use of region-specific position information.
+	 * to other feature of this class. (It has to live somewhere.)
 	 */
-	public boolean checkAndUpdateSortNeeded(int sortPositionVersion) {
-		if (this.sortPositionVersion == sortPositionVersion) {
+	public boolean checkAndUpdateSortNeeded(double cameraX, double cameraY, double cameraZ, float resortDistance) {
+		final double dx = cameraX - lastSortX;
+		final double dy = cameraY - lastSortY;
+		final double dz = cameraZ - lastSortZ;
+
+		if (dx * dx + dy * dy + dz * dz < resortDistance * resortDistance) {
 			return false;
 		} else {
-			this.sortPositionVersion = sortPositionVersion;
+			lastSortX = cameraX;
+			lastSortY = cameraY;
+			lastSortZ = cameraZ;
 			return true;
 		}
 	}
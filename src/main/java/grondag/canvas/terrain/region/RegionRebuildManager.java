@@ -129,6 +129,10 @@ public class RegionRebuildManager {
 		}
 	}
 
+	public int scheduledRegionCount() {
+		return regionsToRebuild.size();
+	}
+
 	/**
 	 * Iterates regions awaiting rebuild and rebuilds them on the calling
 	 * thread if they are urgent/near.  For non-urgent regions, necessary
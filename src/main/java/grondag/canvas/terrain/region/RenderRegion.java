@@ -213,22 +213,36 @@ public class RenderRegion implements TerrainExecutorTask {
 		markBuilt();
 	}
 
+	/**
+	 * Camera displacement since the last sort after which this region should be resorted,
+	 * or a negative value if the region has no translucency to sort.
+	 */
+	public float translucentResortDistance(double cameraX, double cameraY, double cameraZ) {
+		final RegionBuildState regionData = buildState.get();
+
+		if (regionData.translucentState == null) {
+			return -1;
+		}
+
+		return regionData.translucentBounds.resortDistance(cameraX - origin.getX(), cameraY - origin.getY(), cameraZ - origin.getZ());
+	}
+
 	/**
 	 * Schedules a resort of this region if all of the following are true.
 	 * 1) region has translucency
-	 * 2) region sort version doesn't match the input version
+	 * 2) camera has moved at least the resort distance since the last sort
 	 * 3) resort isn't already scheduled for this region
 	 *
-	 * <p>If a resort is already scheduled then the region sort version is
-	 * updated to match the input version.
+	 * <p>If a resort or rebuild is already scheduled then the region sort position is
+	 * updated to match the input position.
 	 *
-	 * @param sortPositionVersion The most recent position version counter - for comparision.
+	 * @param resortDistance Result of {@link #translucentResortDistance(double, double, double)}.
 	 * @return true if a resort was scheduled
 	 */
-	public boolean scheduleSort(int sortPositionVersion) {
+	public boolean scheduleSort(double cameraX, double cameraY, double cameraZ, float resortDistance) {
 		final RegionBuildState regionData = buildState.get();
 
-		if (!origin.checkAndUpdateSortNeeded(sortPositionVersion)) {
+		if (!origin.checkAndUpdateSortNeeded(cameraX, cameraY, cameraZ, resortDistance)) {
 			return false;
 		}
 
@@ -317,7 +331,7 @@ public class RenderRegion implements TerrainExecutorTask {
 						final UploadableRegion upload = collectors.toUploadableChunk(true, origin, worldRenderState);
 
 						if (upload != UploadableRegion.EMPTY_UPLOADABLE) {
-							renderRegionBuilder.scheduleUpload(() -> {
+							renderRegionBuilder.scheduleUpload(origin, upload.byteCount(), () -> {
 								if (ChunkRebuildCounters.ENABLED) {
 									ChunkRebuildCounters.startUpload();
 								}
@@ -354,7 +368,7 @@ public class RenderRegion implements TerrainExecutorTask {
 				final UploadableRegion solidUpload = collectors.toUploadableChunk(false, origin, worldRenderState);
 				final UploadableRegion translucentUpload = collectors.toUploadableChunk(true, origin, worldRenderState);
 
-				renderRegionBuilder.scheduleUpload(() -> {
+				renderRegionBuilder.scheduleUpload(origin, solidUpload.byteCount() + translucentUpload.byteCount(), () -> {
 					if (ChunkRebuildCounters.ENABLED) {
 						ChunkRebuildCounters.startUpload();
 					}
@@ -459,7 +473,7 @@ public class RenderRegion implements TerrainExecutorTask {
 			}
 		}
 
-		buildState.prepareTranslucentIfNeeded(worldRenderState.sectorManager.cameraPos(), renderSector, collectors);
+		buildState.prepareTranslucentIfNeeded(worldRenderState.sectorManager.cameraPos(), renderSector, origin, collectors);
 
 		if (ChunkRebuildCounters.ENABLED) {
 			ChunkRebuildCounters.completeChunk();
@@ -20,17 +20,27 @@
 
 package grondag.canvas.terrain.region;
 
+import java.util.Comparator;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.Queues;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 
+import io.vram.frex.api.config.FlawlessFrames;
+
 import grondag.canvas.apiimpl.rendercontext.CanvasTerrainRenderContext;
+import grondag.canvas.config.Configurator;
 import grondag.canvas.terrain.util.TerrainExecutor;
 
 public class RenderRegionBuilder {
-	private final Queue<Runnable> uploadQueue = Queues.newConcurrentLinkedQueue();
+	private final Queue<PendingUpload> uploadQueue = Queues.newConcurrentLinkedQueue();
+	/** Uploads taken from the queue but not yet run. Only accessed on the render thread. */
+	private final ObjectArrayList<PendingUpload> pendingUploads = new ObjectArrayList<>();
+	/** Avoids size() on the concurrent queue, which isn't constant time. */
+	private final AtomicInteger uploadBacklog = new AtomicInteger();
 	// for use by render thread rebuilds
 	CanvasTerrainRenderContext mainThreadContext = new CanvasTerrainRenderContext();
 
@@ -38,19 +48,55 @@ public class RenderRegionBuilder {
 		return String.format("not available");
 	}
 
-	public boolean upload() {
+	/**
+	 * Runs queued uploads nearest to the camera first until the per-frame
+	 * byte limit or the deadline is reached. At least one upload runs if any are waiting.
+	 * Sort is stable so uploads for the same region keep the order they were scheduled.
+	 */
+	public boolean upload(long deadlineNanos) {
 		assert RenderSystem.isOnRenderThread();
 
-		Runnable task = uploadQueue.poll();
+		final ObjectArrayList<PendingUpload> pending = pendingUploads;
+		PendingUpload next = uploadQueue.poll();
+
+		while (next != null) {
+			pending.add(next);
+			next = uploadQueue.poll();
+		}
+
+		final int limit = pending.size();
+
+		if (limit == 0) {
+			return false;
+		}
+
+		long byteLimit = (long) Configurator.terrainUploadMbPerFrame * 0x100000;
 
-		final boolean didRun = task != null;
+		if (FlawlessFrames.isActive()) {
+			deadlineNanos = Long.MAX_VALUE;
+			byteLimit = Long.MAX_VALUE;
+		}
 
-		while (task != null) {
-			task.run();
-			task = uploadQueue.poll();
+		if (limit > 1) {
+			pending.sort(DISTANCE_SORT);
 		}
 
-		return didRun;
+		long bytes = 0;
+		int count = 0;
+
+		do {
+			final PendingUpload upload = pending.get(count++);
+			bytes += upload.byteCount;
+			upload.task.run();
+		} while (count < limit && bytes + pending.get(count).byteCount <= byteLimit && System.nanoTime() < deadlineNanos);
+
+		pending.removeElements(0, count);
+		uploadBacklog.addAndGet(-count);
+		return true;
+	}
+
+	public int uploadBacklog() {
+		return uploadBacklog.get();
 	}
 
 	public void reset() {
@@ -58,11 +104,22 @@ public class RenderRegionBuilder {
 		mainThreadContext = new CanvasTerrainRenderContext();
 	}
 
-	public void scheduleUpload(Runnable task) {
-		uploadQueue.offer(task);
+	/**
+	 * @param origin region the upload is for, used to upload nearer regions first
+	 * @param byteCount bytes the task will send to the GPU, counted against the per-frame limit
+	 */
+	public void scheduleUpload(RegionPosition origin, int byteCount, Runnable task) {
+		uploadBacklog.incrementAndGet();
+		uploadQueue.offer(new PendingUpload(origin, byteCount, task));
 	}
 
 	public boolean isEmpty() {
-		return TerrainExecutor.INSTANCE.isEmpty() && uploadQueue.isEmpty();
+		return TerrainExecutor.INSTANCE.isEmpty() && uploadBacklog.get() == 0;
 	}
+
+	private record PendingUpload(RegionPosition origin, int byteCount, Runnable task) { }
+
+	private static final Comparator<PendingUpload> DISTANCE_SORT = (a, b) -> {
+		return Integer.compare(a.origin.squaredCameraChunkDistance(), b.origin.squaredCameraChunkDistance());
+	};
 }
@@ -0,0 +1,79 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package grondag.canvas.terrain.region;
+
+/**
+ * Sphere enclosing the translucent geometry of a region, relative to the region origin.
+ * Captured at build time and used to decide how often the region needs a translucency resort.
+ */
+public record TranslucentSortBounds(float centerX, float centerY, float centerZ, float radius) {
+	public static final TranslucentSortBounds EMPTY = new TranslucentSortBounds(8, 8, 8, 0);
+
+	/**
+	 * Camera displacement, in blocks, after which a region will always be resorted.
+	 * Regions that contain the camera or are very near use this distance.
+	 */
+	public static final float MIN_RESORT_DISTANCE = 1f;
+
+	/** Camera within this many blocks of the bounds uses {@link #MIN_RESORT_DISTANCE}. */
+	private static final float NEAR_PADDING = 2f;
+
+	/** Bounds smaller than this are treated as this size, to avoid extreme results for slivers. */
+	private static final float MIN_RADIUS = 0.5f;
+
+	/**
+	 * Angular size of the bounds multiplied by the resort distance. Chosen so that a full
+	 * 16x16x16 region sixteen blocks from the camera resorts after one block of movement.
+	 */
+	private static final float ANGULAR_TOLERANCE = (float) (2 * Math.sqrt(3 * 8 * 8) / 16);
+
+	/**
+	 * Estimates how far the camera can move from the position of the last sort before
+	 * any two quads in this region could plausibly swap order.
+	 *
+	 * <p>For two points separated by {@code s} and seen from distance {@code D}, moving the
+	 * camera by {@code d} changes the difference of their distances by about {@code s * d / D}.
+	 * The allowed displacement is therefore proportional to the inverse of the angular size
+	 * of the bounds, {@code 2r / D}, which makes distant or compact regions resort far less often.
+	 *
+	 * @param dx camera X position relative to the region origin
+	 * @param dy camera Y position relative to the region origin
+	 * @param dz camera Z position relative to the region origin
+	 * @return camera displacement in blocks that should trigger a resort
+	 */
+	public float resortDistance(double dx, double dy, double dz) {
+		dx -= centerX;
+		dy -= centerY;
+		dz -= centerZ;
+
+		final float radius = Math.max(MIN_RADIUS, this.radius);
+		final float dist = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+		if (dist <= radius + NEAR_PADDING) {
+			return MIN_RESORT_DISTANCE;
+		}
+
+		final float angularSize = 2 * radius / dist;
+
+		// first-order estimate above isn't meaningful once displacement approaches distance
+		return Math.max(MIN_RESORT_DISTANCE, Math.min(ANGULAR_TOLERANCE / angularSize, dist * 0.5f));
+	}
+}
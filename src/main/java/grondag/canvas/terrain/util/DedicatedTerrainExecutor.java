@@ -97,7 +97,7 @@ public class DedicatedTerrainExecutor extends AbstractExecutorService implements
 	}
 
 	private class Worker implements Runnable {
-		private CanvasTerrainRenderContext context = new CanvasTerrainRenderContext();
+		private volatile CanvasTerrainRenderContext context = new CanvasTerrainRenderContext();
 
 		@Override
 		public void run() {
@@ -20,6 +20,7 @@
 
 package grondag.canvas.terrain.util;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -40,6 +41,8 @@ import grondag.canvas.apiimpl.rendercontext.CanvasTerrainRenderContext;
  * and privileged tasks run in order of submission.
  */
 public class SharedTerrainExecutor extends AbstractExecutorService implements TerrainExecutor {
+	private final List<RenderWorker> renderWorkers = new ArrayList<>();
+
 	private final PriorityBlockingQueue<TerrainExecutorTask> renderQueue = new PriorityBlockingQueue<>(4096, new Comparator<TerrainExecutorTask>() {
 		@Override
 		public int compare(TerrainExecutorTask o1, TerrainExecutorTask o2) {
@@ -66,6 +69,7 @@ public class SharedTerrainExecutor extends AbstractExecutorService implements Te
 		assert poolSize >= 4;
 
 		final RenderWorker renderWorker = new RenderWorker();
+		renderWorkers.add(renderWorker);
 		final Thread rederThread = new Thread(renderWorker, "Canvas Render Thread");
 		rederThread.setDaemon(true);
 		rederThread.start();
@@ -79,6 +83,7 @@ public class SharedTerrainExecutor extends AbstractExecutorService implements Te
 
 		for (int i = 0; i < limit; i++) {
 			final RenderWorker w = ((i & 1) == 0) ? new RenderFirstWorker() : new ServerFirstWorker();
+			renderWorkers.add(w);
 
 			final Thread thread = new Thread(w, "Canvas Mixed Thread - " + i);
 			thread.setDaemon(true);
@@ -116,6 +121,11 @@ public class SharedTerrainExecutor extends AbstractExecutorService implements Te
 	@Override
 	public void clear() {
 		renderQueue.clear();
+
+		// contexts size their collectors for the terrain format in effect when created
+		for (final RenderWorker w : renderWorkers) {
+			w.context = new CanvasTerrainRenderContext();
+		}
 	}
 
 	@Override
@@ -124,7 +134,7 @@ public class SharedTerrainExecutor extends AbstractExecutorService implements Te
 	}
 
 	private class RenderWorker implements Runnable {
-		protected CanvasTerrainRenderContext context = new CanvasTerrainRenderContext();
+		protected volatile CanvasTerrainRenderContext context = new CanvasTerrainRenderContext();
 
 		@Override
 		public void run() {
@@ -34,7 +34,9 @@ import grondag.canvas.config.Configurator;
 public class CanvasGlHelper {
 	private static boolean supportsPersistentMapped = false;
 	private static boolean supportsKhrDebug = false;
+	private static boolean supportsMultiDrawIndirect = false;
 	private static boolean supportsArbConservativeDepth = false;
+	private static boolean supportsProgramBinary = false;
 
 	private static String maxGlVersion = "3.2";
 
@@ -42,6 +44,10 @@ public class CanvasGlHelper {
 		return supportsPersistentMapped;
 	}
 
+	public static boolean supportsMultiDrawIndirect() {
+		return supportsMultiDrawIndirect;
+	}
+
 	public static boolean supportsKhrDebug() {
 		return supportsKhrDebug;
 	}
@@ -50,6 +56,10 @@ public class CanvasGlHelper {
 		return supportsArbConservativeDepth;
 	}
 
+	public static boolean supportsProgramBinary() {
+		return supportsProgramBinary;
+	}
+
 	public static String maxGlVersion() {
 		return maxGlVersion;
 	}
@@ -62,7 +72,9 @@ public class CanvasGlHelper {
 		final GLCapabilities caps = GL.getCapabilities();
 		supportsPersistentMapped = caps.glBufferStorage != 0;
 		supportsKhrDebug = caps.GL_KHR_debug;
+		supportsMultiDrawIndirect = caps.glMultiDrawElementsIndirect != 0;
 		supportsArbConservativeDepth = caps.GL_ARB_conservative_depth;
+		supportsProgramBinary = caps.glProgramBinary != 0;
 		maxGlVersion = maxGlVersion(caps);
 
 		if (Configurator.logMachineInfo) {
@@ -82,7 +94,9 @@ public class CanvasGlHelper {
 		log.info(String.format(" OpenGL (Available): %s", maxGlVersion));
 		log.info(String.format(" glBufferStorage: %s", caps.glBufferStorage == 0 ? "N" : "Y"));
 		log.info(String.format(" KHR_debug: %s", supportsKhrDebug() ? "Y" : "N"));
+		log.info(String.format(" glMultiDrawElementsIndirect: %s", supportsMultiDrawIndirect ? "Y" : "N"));
 		log.info(String.format(" ARB_conservative_depth: %s", supportsArbConservativeDepth ? "Y" : "N"));
+		log.info(String.format(" glProgramBinary: %s", supportsProgramBinary ? "Y" : "N"));
 		log.info(" (This message can be disabled by configuring logMachineInfo = false.)");
 		log.info("========================================================================");
 	}
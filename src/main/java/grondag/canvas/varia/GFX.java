@@ -42,6 +42,9 @@ import grondag.canvas.config.Configurator;
 import grondag.canvas.pipeline.GlSymbolLookup;
 
 public class GFX extends GL46C {
+	/** Skips calls that would not change state. See {@link GlStateCache}. */
+	public static final GlStateCache STATE = new GlStateCache();
+
 	public static boolean checkError() {
 		return glGetError() == 0;
 	}
@@ -142,9 +145,22 @@ public class GFX extends GL46C {
 		return result;
 	}
 
+	public static int getUniformBlockIndex(int program, CharSequence uniformBlockName) {
+		final int result = glGetUniformBlockIndex(program, uniformBlockName);
+		assert logError(String.format("glGetUniformBlockIndex(%d, %s)", program, uniformBlockName));
+		return result;
+	}
+
+	public static void uniformBlockBinding(int program, int uniformBlockIndex, int uniformBlockBinding) {
+		glUniformBlockBinding(program, uniformBlockIndex, uniformBlockBinding);
+		assert logError(String.format("glUniformBlockBinding(%d, %d, %d)", program, uniformBlockIndex, uniformBlockBinding));
+	}
+
 	public static void cullFace(int mode) {
-		glCullFace(mode);
-		assert logError(String.format("glCullFace(%s)", GlSymbolLookup.reverseLookup(mode)));
+		if (STATE.cullFace(mode)) {
+			glCullFace(mode);
+			assert logError(String.format("glCullFace(%s)", GlSymbolLookup.reverseLookup(mode)));
+		}
 	}
 
 	public static void polygonOffset(float factor, float units) {
@@ -153,13 +169,17 @@ public class GFX extends GL46C {
 	}
 
 	public static void disable(int target) {
-		glDisable(target);
-		assert logError(String.format("glDisable(%s)", GlSymbolLookup.reverseLookup(target)));
+		if (STATE.disable(target)) {
+			glDisable(target);
+			assert logError(String.format("glDisable(%s)", GlSymbolLookup.reverseLookup(target)));
+		}
 	}
 
 	public static void enable(int target) {
-		glEnable(target);
-		assert logError(String.format("glEnable(%s)", GlSymbolLookup.reverseLookup(target)));
+		if (STATE.enable(target)) {
+			glEnable(target);
+			assert logError(String.format("glEnable(%s)", GlSymbolLookup.reverseLookup(target)));
+		}
 	}
 
 	public static void objectLabel(int target, int id, CharSequence label) {
@@ -170,8 +190,16 @@ public class GFX extends GL46C {
 	}
 
 	public static void bindBuffer(int target, int buffer) {
-		glBindBuffer(target, buffer);
-		assert logError(String.format("glBindBuffer(%s, %d)", GlSymbolLookup.reverseLookup(target), buffer));
+		if (STATE.bindBuffer(target, buffer)) {
+			glBindBuffer(target, buffer);
+			assert logError(String.format("glBindBuffer(%s, %d)", GlSymbolLookup.reverseLookup(target), buffer));
+		}
+	}
+
+	public static void bindBufferBase(int target, int index, int buffer) {
+		STATE.onBindBufferBase(target, buffer);
+		glBindBufferBase(target, index, buffer);
+		assert logError(String.format("glBindBufferBase(%s, %d, %d)", GlSymbolLookup.reverseLookup(target), index, buffer));
 	}
 
 	public static int genFramebuffer() {
@@ -187,11 +215,14 @@ public class GFX extends GL46C {
 	}
 
 	public static void bindFramebuffer(int target, int buffer) {
-		glBindFramebuffer(target, buffer);
-		assert logError(String.format("glBindFramebuffer(%s, %d)", GlSymbolLookup.reverseLookup(target), buffer));
+		if (STATE.bindFramebuffer(target, buffer)) {
+			glBindFramebuffer(target, buffer);
+			assert logError(String.format("glBindFramebuffer(%s, %d)", GlSymbolLookup.reverseLookup(target), buffer));
+		}
 	}
 
 	public static void deleteFramebuffer(int buffer) {
+		STATE.onDeleteFramebuffer(buffer);
 		glDeleteFramebuffers(buffer);
 		assert logError(String.format("glDeleteFramebuffers(%d)", buffer));
 	}
@@ -250,11 +281,13 @@ public class GFX extends GL46C {
 	}
 
 	public static void deleteVertexArray(int array) {
+		STATE.onDeleteVertexArray(array);
 		glDeleteVertexArrays(array);
 		assert logError(String.format("glDeleteVertexArrays(%d)", array));
 	}
 
 	public static void deleteBuffers(int buffer) {
+		STATE.onDeleteBuffer(buffer);
 		glDeleteBuffers(buffer);
 		assert logError(String.format("glDeleteBuffers(%d)", buffer));
 	}
@@ -275,23 +308,30 @@ public class GFX extends GL46C {
 	}
 
 	public static void bindVertexArray(int array) {
-		glBindVertexArray(array);
-		assert logError(String.format("glBindVertexArray(%d)", array));
+		if (STATE.bindVertexArray(array)) {
+			glBindVertexArray(array);
+			assert logError(String.format("glBindVertexArray(%d)", array));
+		}
 	}
 
 	public static void bindTexture(int target, int texture) {
-		glBindTexture(target, texture);
-		assert logError(String.format("glBindTexture(%s, %d)", GlSymbolLookup.reverseLookup(target), texture));
+		if (STATE.bindTexture(target, texture)) {
+			glBindTexture(target, texture);
+			assert logError(String.format("glBindTexture(%s, %d)", GlSymbolLookup.reverseLookup(target), texture));
+		}
 	}
 
 	public static void deleteTexture(int texture) {
+		STATE.onDeleteTexture(texture);
 		glDeleteTextures(texture);
 		assert logError(String.format("glDeleteTextures(%d)", texture));
 	}
 
 	public static void activeTexture(int texture) {
-		glActiveTexture(texture);
-		assert logError(String.format("glActiveTexture(%d)", texture));
+		if (STATE.activeTexture(texture)) {
+			glActiveTexture(texture);
+			assert logError(String.format("glActiveTexture(%d)", texture));
+		}
 	}
 
 	public static void texParameter(int target, int pname, int param) {
@@ -369,100 +409,60 @@ public class GFX extends GL46C {
 		}
 	}
 
-	private static boolean depthTest;
-
 	public static void disableDepthTest() {
-		if (depthTest) {
-			disable(GL_DEPTH_TEST);
-			depthTest = false;
-		}
+		disable(GL_DEPTH_TEST);
 	}
 
 	public static void enableDepthTest() {
-		if (!depthTest) {
-			enable(GL_DEPTH_TEST);
-			depthTest = true;
-		}
+		enable(GL_DEPTH_TEST);
 	}
 
-	private static int depthFunc = GL_LESS;
-
 	public static void depthFunc(int func) {
-		if (func != depthFunc) {
-			depthFunc = func;
+		if (STATE.depthFunc(func)) {
 			glDepthFunc(func);
 			assert logError("glDepthFunc");
 		}
 	}
 
-	private static boolean depthMask = true;
-
 	public static void depthMask(boolean mask) {
-		if (mask != depthMask) {
-			depthMask = mask;
+		if (STATE.depthMask(mask)) {
 			glDepthMask(mask);
 			assert logError("glDepthMask");
 		}
 	}
 
-	private static boolean blend = false;
-
 	public static void enableBlend() {
-		if (!blend) {
-			enable(GL_BLEND);
-			blend = true;
-		}
+		enable(GL_BLEND);
 	}
 
 	public static void disableBlend() {
-		if (blend) {
-			disable(GL_BLEND);
-			blend = false;
-		}
+		disable(GL_BLEND);
 	}
 
 	public static void defaultBlendFunc() {
 		blendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ZERO);
 	}
 
-	private static int _srcFactorRGB, _dstFactorRGB, _srcFactorAlpha, _dstFactorAlpha;
-
 	public static void blendFuncSeparate(int srcFactorRGB, int dstFactorRGB, int srcFactorAlpha, int dstFactorAlpha) {
-		if (srcFactorRGB != _srcFactorRGB || dstFactorRGB != _dstFactorRGB || srcFactorAlpha != _srcFactorAlpha || dstFactorAlpha != _dstFactorAlpha) {
-			_srcFactorRGB = srcFactorRGB;
-			_dstFactorRGB = dstFactorRGB;
-			_srcFactorAlpha = srcFactorAlpha;
-			_dstFactorAlpha = dstFactorAlpha;
+		if (STATE.blendFuncSeparate(srcFactorRGB, dstFactorRGB, srcFactorAlpha, dstFactorAlpha)) {
 			glBlendFuncSeparate(srcFactorRGB, dstFactorRGB, srcFactorAlpha, dstFactorAlpha);
+			assert logError("glBlendFuncSeparate");
 		}
-
-		assert logError("glBlendFuncSeparate");
 	}
 
 	public static void blendFunc(int srcFactor, int dstFactor) {
-		if (srcFactor != _srcFactorRGB || dstFactor != _dstFactorRGB) {
-			_srcFactorRGB = srcFactor;
-			_dstFactorRGB = dstFactor;
+		if (STATE.blendFunc(srcFactor, dstFactor)) {
 			glBlendFunc(srcFactor, dstFactor);
+			assert logError("glBlendFunc");
 		}
-
-		assert logError("glBlendFunc");
 	}
 
-	private static boolean cull = false;
-
 	public static void enableCull() {
-		if (!cull) {
-			enable(GL_CULL_FACE);
-			cull = true;
-		}
+		enable(GL_CULL_FACE);
 	}
 
 	public static void disableCull() {
-		if (cull) {
-			disable(GL_CULL_FACE);
-			cull = false;
-		}
+		disable(GL_CULL_FACE);
 	}
 
 	public static void backupProjectionMatrix() {
@@ -479,6 +479,7 @@ public class GFX extends GL46C {
 	}
 
 	public static void deleteProgram(int program) {
+		STATE.onDeleteProgram(program);
 		glDeleteProgram(program);
 		assert logError(String.format("glDeleteProgram(%d)", program));
 	}
@@ -494,7 +495,10 @@ public class GFX extends GL46C {
 	 */
 	public static void useProgram(int program) {
 		glGetError();
-		glUseProgram(program);
+
+		if (STATE.useProgram(program)) {
+			glUseProgram(program);
+		}
 	}
 
 	public static void linkProgram(int program) {
@@ -502,6 +506,24 @@ public class GFX extends GL46C {
 		assert logError(String.format("glLinkProgram(%d)", program));
 	}
 
+	public static void programParameteri(int program, int paramName, int value) {
+		glProgramParameteri(program, paramName, value);
+		assert logError(String.format("glProgramParameteri(%d, %s)", program, GlSymbolLookup.reverseLookup(paramName)));
+	}
+
+	/**
+	 * Caller must check link status because drivers can reject binaries.
+	 */
+	public static void programBinary(int program, int binaryFormat, ByteBuffer binary) {
+		glProgramBinary(program, binaryFormat, binary);
+		assert logError(String.format("glProgramBinary(%d)", program));
+	}
+
+	public static void getProgramBinary(int program, int[] length, int[] binaryFormat, ByteBuffer binary) {
+		glGetProgramBinary(program, length, binaryFormat, binary);
+		assert logError(String.format("glGetProgramBinary(%d)", program));
+	}
+
 	public static void uniform1fv(int location, FloatBuffer value) {
 		glUniform1fv(location, value);
 		assert logError(String.format("glUniform1fv(%d)", location));
@@ -599,19 +621,12 @@ public class GFX extends GL46C {
 				GlSymbolLookup.reverseLookup(mode), count, GlSymbolLookup.reverseLookup(type), indices, baseVertex));
 	}
 
-	private static boolean scissorTest = false;
 	public static void disableScissorTest() {
-		if (scissorTest) {
-			disable(GL_SCISSOR_TEST);
-			scissorTest = false;
-		}
+		disable(GL_SCISSOR_TEST);
 	}
 
 	public static void enableScissorTest() {
-		if (!scissorTest) {
-			enable(GL_SCISSOR_TEST);
-			scissorTest = true;
-		}
+		enable(GL_SCISSOR_TEST);
 	}
 
 	public static void scissor(int x, int y, int width, int height) {
@@ -620,8 +635,10 @@ public class GFX extends GL46C {
 	}
 
 	public static void blendEquation(int mode) {
-		glBlendEquation(mode);
-		assert logError(String.format("glDeleteProgram(%s)", GlSymbolLookup.reverseLookup(mode)));
+		if (STATE.blendEquation(mode)) {
+			glBlendEquation(mode);
+			assert logError(String.format("glBlendEquation(%s)", GlSymbolLookup.reverseLookup(mode)));
+		}
 	}
 
 	public static int getProgrami(int program, int pname) {
@@ -734,6 +751,11 @@ public class GFX extends GL46C {
 		return result;
 	}
 
+	public static void getIntegerv(int pname, int[] params) {
+		glGetIntegerv(pname, params);
+		assert logError("glGetIntegerv");
+	}
+
 	public static String getShaderInfoLog(int shader, int maxLength) {
 		final String result = glGetShaderInfoLog(shader, maxLength);
 		assert logError("glGetShaderInfoLog");
@@ -751,43 +773,24 @@ public class GFX extends GL46C {
 		assert logError("glPolygonMode");
 	}
 
-	private static boolean polygonOffset = false;
-
 	public static void enablePolygonOffset() {
-		if (!polygonOffset) {
-			enable(GL_POLYGON_OFFSET_FILL);
-			polygonOffset = true;
-		}
+		enable(GL_POLYGON_OFFSET_FILL);
 	}
 
 	public static void disablePolygonOffset() {
-		if (polygonOffset) {
-			disable(GL_POLYGON_OFFSET_FILL);
-			polygonOffset = false;
-		}
+		disable(GL_POLYGON_OFFSET_FILL);
 	}
 
-	private static boolean colorLogic = false;
-
 	public static void enableColorLogicOp() {
-		if (!colorLogic) {
-			enable(GL_COLOR_LOGIC_OP);
-			colorLogic = true;
-		}
+		enable(GL_COLOR_LOGIC_OP);
 	}
 
 	public static void disableColorLogicOp() {
-		if (colorLogic) {
-			disable(GL_COLOR_LOGIC_OP);
-			colorLogic = false;
-		}
+		disable(GL_COLOR_LOGIC_OP);
 	}
 
-	private static int logicOp = GL_COPY;
-
 	public static void logicOp(int op) {
-		if (op != logicOp) {
-			logicOp = op;
+		if (STATE.logicOp(op)) {
 			glLogicOp(op);
 			assert logError("glLogicOp");
 		}
@@ -909,6 +912,11 @@ public class GFX extends GL46C {
 		assert logError("glMultiDrawElementsBaseVertex");
 	}
 
+	public static void multiDrawElementsIndirect(int mode, int type, long indirectOffset, int drawCount, int stride) {
+		glMultiDrawElementsIndirect(mode, type, indirectOffset, drawCount, stride);
+		assert logError("glMultiDrawElementsIndirect");
+	}
+
 	public static void bufferSubData(int target, long offsetBytes, long sizeBytes, ByteBuffer data) {
 		nglBufferSubData(target, offsetBytes, sizeBytes, memAddress(data));
 		assert logError("nglBufferSubData");
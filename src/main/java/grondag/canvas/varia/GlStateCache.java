@@ -0,0 +1,421 @@
+/*
+ * This file is part of Canvas Renderer and is licensed to the project under
+ * terms that are compatible with the GNU Lesser General Public License.
+ * See the NOTICE file distributed with this work for additional information
+ * regarding copyright ownership and licensing.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package grondag.canvas.varia;
+
+import java.util.Arrays;
+
+/**
+ * Shadow of GL state that Canvas and vanilla change most often, used by
+ * {@link GFX} to skip calls that would not change anything.
+ *
+ * <p>Each state method records the requested value and returns true if the
+ * call must be issued to the driver. Values start unknown and become unknown
+ * again after {@link #invalidate()}, so the first call after that is always
+ * issued. This limits the damage from any code that changes GL state without
+ * going through {@link GFX} to the remainder of a frame.
+ *
+ * <p>Binding rules follow GL: the element array buffer belongs to the bound
+ * vertex array, {@code GL_FRAMEBUFFER} sets both draw and read bindings, and
+ * deleting a bound object reverts its binding to zero.
+ *
+ * <p>Issued and elided calls are counted by category for the debug overlay.
+ * Not thread-safe; render thread only.
+ */
+public final class GlStateCache {
+	public enum Category {
+		BLEND("blend"),
+		DEPTH("depth"),
+		CULL("cull"),
+		/** Capabilities other than blend, depth and cull, plus logic op. */
+		OTHER("other"),
+		PROGRAM("prog"),
+		VERTEX_ARRAY("vao"),
+		BUFFER("buf"),
+		FRAMEBUFFER("fbo"),
+		TEXTURE("tex");
+
+		private final String label;
+
+		Category(String label) {
+			this.label = label;
+		}
+	}
+
+	private static final Category[] CATEGORIES = Category.values();
+	private static final int UNKNOWN = -1;
+
+	private static final int CAP_BLEND = 0;
+	private static final int CAP_DEPTH_TEST = 1;
+	private static final int CAP_CULL_FACE = 2;
+	private static final int CAP_SCISSOR_TEST = 3;
+	private static final int CAP_POLYGON_OFFSET_FILL = 4;
+	private static final int CAP_COLOR_LOGIC_OP = 5;
+	private static final int CAP_COUNT = 6;
+
+	private static final int BUFFER_ARRAY = 0;
+	private static final int BUFFER_ELEMENT_ARRAY = 1;
+	private static final int BUFFER_COPY_READ = 2;
+	private static final int BUFFER_COPY_WRITE = 3;
+	private static final int BUFFER_PIXEL_PACK = 4;
+	private static final int BUFFER_PIXEL_UNPACK = 5;
+	private static final int BUFFER_TEXTURE = 6;
+	private static final int BUFFER_UNIFORM = 7;
+	private static final int BUFFER_DRAW_INDIRECT = 8;
+	private static final int BUFFER_TARGET_COUNT = 9;
+
+	private static final int TEXTURE_2D = 0;
+	private static final int TEXTURE_2D_ARRAY = 1;
+	private static final int TEXTURE_3D = 2;
+	private static final int TEXTURE_CUBE_MAP = 3;
+	private static final int TEXTURE_BUFFER = 4;
+	private static final int TEXTURE_2D_MULTISAMPLE = 5;
+	private static final int TEXTURE_TARGET_COUNT = 6;
+	/** Matches {@link grondag.canvas.render.CanvasTextureState}. Units above this are not tracked. */
+	static final int MAX_TEXTURE_UNITS = 64;
+
+	/** 0 or 1 when known. */
+	private final int[] capabilities = new int[CAP_COUNT];
+	private int depthFunc;
+	private int depthMask;
+	private int blendSrcRgb;
+	private int blendDstRgb;
+	private int blendSrcAlpha;
+	private int blendDstAlpha;
+	private int blendEquation;
+	private int cullFace;
+	private int logicOp;
+	private int program;
+	private int vertexArray;
+	private final int[] buffers = new int[BUFFER_TARGET_COUNT];
+	private int drawFramebuffer;
+	private int readFramebuffer;
+	/** Index of the active unit, not the GL enum. */
+	private int activeTextureUnit;
+	private final int[] textures = new int[MAX_TEXTURE_UNITS * TEXTURE_TARGET_COUNT];
+
+	private boolean elide = true;
+	private final int[] issued = new int[CATEGORIES.length];
+	private final int[] elided = new int[CATEGORIES.length];
+	private final int[] lastIssued = new int[CATEGORIES.length];
+	private final int[] lastElided = new int[CATEGORIES.length];
+
+	public GlStateCache() {
+		invalidate();
+	}
+
+	/** Forgets all state, so the next call for each is issued. */
+	public void invalidate() {
+		Arrays.fill(capabilities, UNKNOWN);
+		depthFunc = UNKNOWN;
+		depthMask = UNKNOWN;
+		blendSrcRgb = UNKNOWN;
+		blendDstRgb = UNKNOWN;
+		blendSrcAlpha = UNKNOWN;
+		blendDstAlpha = UNKNOWN;
+		blendEquation = UNKNOWN;
+		cullFace = UNKNOWN;
+		logicOp = UNKNOWN;
+		program = UNKNOWN;
+		vertexArray = UNKNOWN;
+		Arrays.fill(buffers, UNKNOWN);
+		drawFramebuffer = UNKNOWN;
+		readFramebuffer = UNKNOWN;
+		activeTextureUnit = UNKNOWN;
+		Arrays.fill(textures, UNKNOWN);
+	}
+
+	/** When false, every call is issued. State is still tracked so elision can resume at any time. */
+	public void setElisionEnabled(boolean elide) {
+		this.elide = elide;
+	}
+
+	/** Makes counts for the ending frame available to {@link #debugString()}, then starts a new frame with all state unknown. */
+	public void nextFrame() {
+		System.arraycopy(issued, 0, lastIssued, 0, issued.length);
+		System.arraycopy(elided, 0, lastElided, 0, elided.length);
+		Arrays.fill(issued, 0);
+		Arrays.fill(elided, 0);
+		invalidate();
+	}
+
+	public boolean enable(int cap) {
+		return setCapability(cap, 1);
+	}
+
+	public boolean disable(int cap) {
+		return setCapability(cap, 0);
+	}
+
+	private boolean setCapability(int cap, int value) {
+		final int index = capabilityIndex(cap);
+
+		if (index == UNKNOWN) {
+			return count(Category.OTHER, true);
+		}
+
+		final boolean changed = capabilities[index] != value;
+		capabilities[index] = value;
+		return count(capabilityCategory(index), changed);
+	}
+
+	public boolean depthFunc(int func) {
+		final boolean changed = depthFunc != func;
+		depthFunc = func;
+		return count(Category.DEPTH, changed);
+	}
+
+	public boolean depthMask(boolean mask) {
+		final int value = mask ? 1 : 0;
+		final boolean changed = depthMask != value;
+		depthMask = value;
+		return count(Category.DEPTH, changed);
+	}
+
+	/** Same as {@link #blendFuncSeparate(int, int, int, int)} with alpha factors matching color. */
+	public boolean blendFunc(int srcFactor, int dstFactor) {
+		return blendFuncSeparate(srcFactor, dstFactor, srcFactor, dstFactor);
+	}
+
+	public boolean blendFuncSeparate(int srcFactorRgb, int dstFactorRgb, int srcFactorAlpha, int dstFactorAlpha) {
+		final boolean changed = blendSrcRgb != srcFactorRgb || blendDstRgb != dstFactorRgb || blendSrcAlpha != srcFactorAlpha || blendDstAlpha != dstFactorAlpha;
+		blendSrcRgb = srcFactorRgb;
+		blendDstRgb = dstFactorRgb;
+		blendSrcAlpha = srcFactorAlpha;
+		blendDstAlpha = dstFactorAlpha;
+		return count(Category.BLEND, changed);
+	}
+
+	public boolean blendEquation(int mode) {
+		final boolean changed = blendEquation != mode;
+		blendEquation = mode;
+		return count(Category.BLEND, changed);
+	}
+
+	public boolean cullFace(int mode) {
+		final boolean changed = cullFace != mode;
+		cullFace = mode;
+		return count(Category.CULL, changed);
+	}
+
+	public boolean logicOp(int op) {
+		final boolean changed = logicOp != op;
+		logicOp = op;
+		return count(Category.OTHER, changed);
+	}
+
+	public boolean useProgram(int program) {
+		final boolean changed = this.program != program;
+		this.program = program;
+		return count(Category.PROGRAM, changed);
+	}
+
+	public void onDeleteProgram(int program) {
+		// a deleted program stays in use until replaced, but its name may be reused
+		if (this.program == program) {
+			this.program = UNKNOWN;
+		}
+	}
+
+	public boolean bindVertexArray(int array) {
+		final boolean changed = vertexArray != array;
+
+		if (changed) {
+			vertexArray = array;
+			// element array binding is part of vertex array state
+			buffers[BUFFER_ELEMENT_ARRAY] = UNKNOWN;
+		}
+
+		return count(Category.VERTEX_ARRAY, changed);
+	}
+
+	public void onDeleteVertexArray(int array) {
+		if (vertexArray == array) {
+			vertexArray = 0;
+			buffers[BUFFER_ELEMENT_ARRAY] = UNKNOWN;
+		}
+	}
+
+	public boolean bindBuffer(int target, int buffer) {
+		final int index = bufferTargetIndex(target);
+
+		if (index == UNKNOWN) {
+			return count(Category.BUFFER, true);
+		}
+
+		final boolean changed = buffers[index] != buffer;
+		buffers[index] = buffer;
+		return count(Category.BUFFER, changed);
+	}
+
+	/** Indexed binds are always issued but also change the generic binding for the target. */
+	public void onBindBufferBase(int target, int buffer) {
+		final int index = bufferTargetIndex(target);
+
+		if (index != UNKNOWN) {
+			buffers[index] = buffer;
+		}
+
+		count(Category.BUFFER, true);
+	}
+
+	public void onDeleteBuffer(int buffer) {
+		for (int i = 0; i < BUFFER_TARGET_COUNT; ++i) {
+			if (buffers[i] == buffer) {
+				buffers[i] = 0;
+			}
+		}
+	}
+
+	public boolean bindFramebuffer(int target, int framebuffer) {
+		final boolean changed;
+
+		if (target == GFX.GL_DRAW_FRAMEBUFFER) {
+			changed = drawFramebuffer != framebuffer;
+			drawFramebuffer = framebuffer;
+		} else if (target == GFX.GL_READ_FRAMEBUFFER) {
+			changed = readFramebuffer != framebuffer;
+			readFramebuffer = framebuffer;
+		} else {
+			assert target == GFX.GL_FRAMEBUFFER;
+			changed = drawFramebuffer != framebuffer || readFramebuffer != framebuffer;
+			drawFramebuffer = framebuffer;
+			readFramebuffer = framebuffer;
+		}
+
+		return count(Category.FRAMEBUFFER, changed);
+	}
+
+	public void onDeleteFramebuffer(int framebuffer) {
+		if (drawFramebuffer == framebuffer) {
+			drawFramebuffer = 0;
+		}
+
+		if (readFramebuffer == framebuffer) {
+			readFramebuffer = 0;
+		}
+	}
+
+	/** @param unit GL enum, starting with {@code GL_TEXTURE0} */
+	public boolean activeTexture(int unit) {
+		final int index = unit - GFX.GL_TEXTURE0;
+		final boolean changed = activeTextureUnit != index;
+		activeTextureUnit = index;
+		return count(Category.TEXTURE, changed);
+	}
+
+	public boolean bindTexture(int target, int texture) {
+		final int targetIndex = textureTargetIndex(target);
+
+		if (targetIndex == UNKNOWN || activeTextureUnit < 0 || activeTextureUnit >= MAX_TEXTURE_UNITS) {
+			return count(Category.TEXTURE, true);
+		}
+
+		final int index = activeTextureUnit * TEXTURE_TARGET_COUNT + targetIndex;
+		final boolean changed = textures[index] != texture;
+		textures[index] = texture;
+		return count(Category.TEXTURE, changed);
+	}
+
+	public void onDeleteTexture(int texture) {
+		for (int i = 0; i < textures.length; ++i) {
+			if (textures[i] == texture) {
+				textures[i] = 0;
+			}
+		}
+	}
+
+	int issuedLastFrame(Category category) {
+		return lastIssued[category.ordinal()];
+	}
+
+	int elidedLastFrame(Category category) {
+		return lastElided[category.ordinal()];
+	}
+
+	/** Issued and elided calls in the last full frame, by category. */
+	public String debugString() {
+		final StringBuilder sb = new StringBuilder("GL calls");
+
+		for (final Category category : CATEGORIES) {
+			final int i = category.ordinal();
+			sb.append(' ').append(category.label).append(':').append(lastIssued[i]).append('/').append(lastElided[i]);
+		}
+
+		return sb.toString();
+	}
+
+	private boolean count(Category category, boolean changed) {
+		if (changed || !elide) {
+			++issued[category.ordinal()];
+			return true;
+		} else {
+			++elided[category.ordinal()];
+			return false;
+		}
+	}
+
+	private static Category capabilityCategory(int index) {
+		return switch (index) {
+			case CAP_BLEND -> Category.BLEND;
+			case CAP_DEPTH_TEST -> Category.DEPTH;
+			case CAP_CULL_FACE -> Category.CULL;
+			default -> Category.OTHER;
+		};
+	}
+
+	private static int capabilityIndex(int cap) {
+		return switch (cap) {
+			case GFX.GL_BLEND -> CAP_BLEND;
+			case GFX.GL_DEPTH_TEST -> CAP_DEPTH_TEST;
+			case GFX.GL_CULL_FACE -> CAP_CULL_FACE;
+			case GFX.GL_SCISSOR_TEST -> CAP_SCISSOR_TEST;
+			case GFX.GL_POLYGON_OFFSET_FILL -> CAP_POLYGON_OFFSET_FILL;
+			case GFX.GL_COLOR_LOGIC_OP -> CAP_COLOR_LOGIC_OP;
+			default -> UNKNOWN;
+		};
+	}
+
+	private static int bufferTargetIndex(int target) {
+		return switch (target) {
+			case GFX.GL_ARRAY_BUFFER -> BUFFER_ARRAY;
+			case GFX.GL_ELEMENT_ARRAY_BUFFER -> BUFFER_ELEMENT_ARRAY;
+			case GFX.GL_COPY_READ_BUFFER -> BUFFER_COPY_READ;
+			case GFX.GL_COPY_WRITE_BUFFER -> BUFFER_COPY_WRITE;
+			case GFX.GL_PIXEL_PACK_BUFFER -> BUFFER_PIXEL_PACK;
+			case GFX.GL_PIXEL_UNPACK_BUFFER -> BUFFER_PIXEL_UNPACK;
+			case GFX.GL_TEXTURE_BUFFER -> BUFFER_TEXTURE;
+			case GFX.GL_UNIFORM_BUFFER -> BUFFER_UNIFORM;
+			case GFX.GL_DRAW_INDIRECT_BUFFER -> BUFFER_DRAW_INDIRECT;
+			default -> UNKNOWN;
+		};
+	}
+
+	private static int textureTargetIndex(int target) {
+		return switch (target) {
+			case GFX.GL_TEXTURE_2D -> TEXTURE_2D;
+			case GFX.GL_TEXTURE_2D_ARRAY -> TEXTURE_2D_ARRAY;
+			case GFX.GL_TEXTURE_3D -> TEXTURE_3D;
+			case GFX.GL_TEXTURE_CUBE_MAP -> TEXTURE_CUBE_MAP;
+			case GFX.GL_TEXTURE_BUFFER -> TEXTURE_BUFFER;
+			case GFX.GL_TEXTURE_2D_MULTISAMPLE -> TEXTURE_2D_MULTISAMPLE;
+			default -> UNKNOWN;
+		};
+	}
+}
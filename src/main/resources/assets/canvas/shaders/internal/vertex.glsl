@@ -13,6 +13,55 @@ vec4 in_tangent;
 
 uniform int[182] _cvu_sectors_int;
 
+// These are relative to the sector origin, which will be near the camera position
+vec3 _cv_sectorOrigin(int sectorId) {
+	int packedSector = _cvu_sectors_int[sectorId >> 1];
+	packedSector = (sectorId & 1) == 1 ? ((packedSector >> 16) & 0xFFFF) : (packedSector & 0xFFFF);
+	return vec3(((packedSector & 0xF) - 5) * 128, ((packedSector >> 4) & 0xF) * 128 - 64, (((packedSector >> 8) & 0xF) - 5) * 128);
+}
+
+#ifdef _CV_VERTEX_TERRAIN_COMPACT
+
+// See CompactTerrainVertex for bit layout
+in uvec4 in_compact;
+#define _CV_MATERIAL_ID int(in_compact.z >> 16)
+
+vec3 in_vertex;
+vec4 in_color;
+vec2 in_uv;
+ivec2 in_lightmap;
+
+void _cv_prepareForVertex() {
+	vec3 origin = _cv_sectorOrigin(int((in_compact.y >> 16) & 0x1FFu));
+	in_vertex = origin + vec3(in_compact.x & 0xFFFFu, in_compact.x >> 16, in_compact.y & 0xFFFFu) * (1.0 / 256.0) - 63;
+
+	in_color = vec4(
+		float(in_compact.z >> 11 & 0x1Fu) * (1.0 / 31.0),
+		float(in_compact.z >> 5 & 0x3Fu) * (1.0 / 63.0),
+		float(in_compact.z & 0x1Fu) * (1.0 / 31.0),
+		float(in_compact.y >> 29) * (1.0 / 7.0));
+
+	in_uv = vec2(in_compact.w & 0xFFu, in_compact.w >> 8 & 0xFFu) * (1.0 / 255.0);
+	in_lightmap = ivec2(in_compact.w >> 16 & 0xFu, in_compact.w >> 20 & 0xFu) << 4;
+	in_ao = float(in_compact.w >> 24 & 0xFu) * (1.0 / 15.0);
+
+	// octahedral
+	vec2 oct = vec2(in_compact.y >> 25 & 0xFu, in_compact.w >> 28) * (1.0 / 7.0) - 1.0;
+	vec3 normal = vec3(oct, 1.0 - abs(oct.x) - abs(oct.y));
+
+	if (normal.z < 0.0) {
+		normal.xy = (1.0 - abs(oct.yx)) * vec2(oct.x >= 0.0 ? 1.0 : -1.0, oct.y >= 0.0 ? 1.0 : -1.0);
+	}
+
+	in_normal = normalize(normal);
+
+	// Tangent isn't stored - any vector orthogonal to the normal will do for pipelines that accept this format
+	vec3 tangent = normalize(cross(abs(in_normal.y) > 0.9 ? vec3(0.0, 0.0, 1.0) : vec3(0.0, 1.0, 0.0), in_normal));
+	in_tangent = vec4(tangent, 1.0);
+}
+
+#else
+
 // High bits store sign for normal and tangent vector z components
 in ivec4 in_region;
 in ivec4 in_blockpos_ao;
@@ -28,11 +77,7 @@ vec3 in_vertex;
 
 void _cv_prepareForVertex() {
 	// Mask out the bits for vector signs
-	int packedSector = _cvu_sectors_int[(in_region.x & 0x1FFF) >> 1];
-	packedSector = (in_region.x & 1) == 1 ? ((packedSector >> 16) & 0xFFFF) : (packedSector & 0xFFFF);
-
-	// These are relative to the sector origin, which will be near the camera position
-	vec3 origin = vec3(((packedSector & 0xF) - 5) * 128, ((packedSector >> 4) & 0xF) * 128 - 64, (((packedSector >> 8) & 0xF) - 5) * 128);
+	vec3 origin = _cv_sectorOrigin(in_region.x & 0x1FFF);
 
 	// Add intra-sector block pos and fractional block pos
 	in_vertex = origin + in_region.yzw / 65535.0 + in_blockpos_ao.xyz - 63;
@@ -47,6 +92,7 @@ void _cv_prepareForVertex() {
 	in_ao = in_blockpos_ao.w * (1.0 / 255.0);
 }
 #endif
+#endif
 
 #ifdef _CV_VERTEX_DEFAULT
 in vec3 in_vertex;
@@ -87,18 +87,12 @@
 #define _CV_PLAYER_FLAGS_INDEX 1
 #define _CV_CONDITION_FLAGS_START 2
 
-// update each frame
-uniform vec4[32] _cvu_world;
-uniform uint[1] _cvu_world_uint;
-uniform uint[4] _cvu_flags;
-
 #define _CV_MODEL_TO_WORLD 0
 #define _CV_MODEL_TO_CAMERA 1
 
 // updated each invocation as needed
 uniform vec4[2] _cvu_model_origin;
 uniform int _cvu_model_origin_type;
-uniform mat3 _cvu_normal_model_matrix;
 uniform vec2 _cvu_fog_info;
 
 #define _CV_MAT_VIEW 0
@@ -123,7 +117,15 @@ uniform vec2 _cvu_fog_info;
 #define _CV_MAT_CLEAN_VIEW_PROJ_INVERSE 23
 #define _CV_MAT_CLEAN_VIEW_PROJ_LAST 24
 
-uniform mat4[25] _cvu_matrix;
+// updated each frame, shared by all programs
+// member order and sizes must match FrameUniformBlock
+layout(std140) uniform _cvu_frame {
+	mat4[25] _cvu_matrix;
+	vec4[32] _cvu_world;
+	mat3 _cvu_normal_model_matrix;
+	uint[1] _cvu_world_uint;
+	uint[4] _cvu_flags;
+};
 
 uniform mat4 _cvu_guiViewProjMatrix;
 
@@ -0,0 +1,115 @@
+package grondag.canvas.buffer.format;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Round-trips random vertices through the compact terrain format and checks the decoded
+ * values against the same vertex packed the way the full 28-byte format does it.
+ */
+class CompactTerrainVertexTest {
+	private static final int TEST_COUNT = 100000;
+
+	@Test
+	void test() {
+		final Random r = new Random();
+		r.setSeed(42);
+
+		final int[] compact = new int[CompactTerrainVertex.VERTEX_STRIDE_INTS];
+		final float[] decodedNormal = new float[3];
+
+		for (int n = 0; n < TEST_COUNT; ++n) {
+			// padded sector coordinates, including vertices that spill outside the region
+			final float x = r.nextFloat() * 255f;
+			final float y = r.nextFloat() * 255f;
+			final float z = r.nextFloat() * 255f;
+			final int sectorId = r.nextInt(364);
+			final int color = r.nextInt();
+			final int u = r.nextInt(0x10000);
+			final int v = r.nextInt(0x10000);
+			final int blockLight = r.nextInt(241);
+			final int skyLight = r.nextInt(241);
+			final int ao = r.nextInt(256);
+			final int material = r.nextInt(0x10000);
+			final int normal = randomPackedNormal(r);
+
+			CompactTerrainVertex.encodeVertex(compact, 0, x, y, z, sectorId, normal, color, u, v, blockLight, skyLight, ao, material);
+
+			// lossless fields
+			assert CompactTerrainVertex.sectorId(compact, 0) == sectorId;
+			assert CompactTerrainVertex.material(compact, 0) == material;
+
+			// full format stores 16 fractional bits, compact stores 8
+			assert Math.abs(CompactTerrainVertex.x(compact, 0) - fullPosition(x)) <= 1f / 512 + 1f / 0xFFFF;
+			assert Math.abs(CompactTerrainVertex.y(compact, 0) - fullPosition(y)) <= 1f / 512 + 1f / 0xFFFF;
+			assert Math.abs(CompactTerrainVertex.z(compact, 0) - fullPosition(z)) <= 1f / 512 + 1f / 0xFFFF;
+
+			// full format UV is normalized unsigned short
+			assert Math.abs(CompactTerrainVertex.u(compact, 0) - u / 65535f) <= 1f / 510 + 1e-6f;
+			assert Math.abs(CompactTerrainVertex.v(compact, 0) - v / 65535f) <= 1f / 510 + 1e-6f;
+
+			final int decodedColor = CompactTerrainVertex.color(compact, 0);
+			assert Math.abs((decodedColor & 0xFF) - (color & 0xFF)) <= 5;
+			assert Math.abs(((decodedColor >> 8) & 0xFF) - ((color >> 8) & 0xFF)) <= 3;
+			assert Math.abs(((decodedColor >> 16) & 0xFF) - ((color >> 16) & 0xFF)) <= 5;
+			assert Math.abs((decodedColor >>> 24) - (color >>> 24)) <= 19;
+
+			assert Math.abs(CompactTerrainVertex.blockLight(compact, 0) - blockLight) <= 8;
+			assert Math.abs(CompactTerrainVertex.skyLight(compact, 0) - skyLight) <= 8;
+			assert Math.abs(CompactTerrainVertex.ao(compact, 0) - ao / 255f) <= 1f / 30 + 1e-6f;
+
+			// full format normal is signed bytes, compact is octahedral with 15 levels per axis - good to about 17 degrees
+			final float nx = (byte) normal / 127f;
+			final float ny = (byte) (normal >> 8) / 127f;
+			final float nz = (byte) (normal >> 16) / 127f;
+			final float len = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			CompactTerrainVertex.normal(compact, 0, decodedNormal);
+			assert (nx * decodedNormal[0] + ny * decodedNormal[1] + nz * decodedNormal[2]) / len > 0.95f;
+		}
+	}
+
+	@Test
+	void axisAlignedNormalsAreExact() {
+		final int[] compact = new int[CompactTerrainVertex.VERTEX_STRIDE_INTS];
+		final float[] decodedNormal = new float[3];
+		final int[] normals = {127, 127 << 8, 127 << 16, 0x81, 0x81 << 8, 0x81 << 16};
+
+		for (final int normal : normals) {
+			CompactTerrainVertex.encodeVertex(compact, 0, 0, 0, 0, 0, normal, -1, 0, 0xFFFF, 240, 240, 255, 0);
+			CompactTerrainVertex.normal(compact, 0, decodedNormal);
+			assert decodedNormal[0] == Math.round((byte) normal / 127f);
+			assert decodedNormal[1] == Math.round((byte) (normal >> 8) / 127f);
+			assert decodedNormal[2] == Math.round((byte) (normal >> 16) / 127f);
+			assert CompactTerrainVertex.color(compact, 0) == -1;
+			assert CompactTerrainVertex.u(compact, 0) == 0f;
+			assert CompactTerrainVertex.v(compact, 0) == 1f;
+			assert CompactTerrainVertex.blockLight(compact, 0) == 240;
+			assert CompactTerrainVertex.ao(compact, 0) == 1f;
+		}
+	}
+
+	/** Same integer and fractional split used by the full terrain format. */
+	private static float fullPosition(float pos) {
+		final int posInt = (int) Math.floor(pos);
+		final int posFract = Math.round((pos - posInt) * 0xFFFF);
+		return posInt + posFract / 65535f;
+	}
+
+	private static int randomPackedNormal(Random r) {
+		float x = r.nextFloat() * 2 - 1;
+		float y = r.nextFloat() * 2 - 1;
+		float z = r.nextFloat() * 2 - 1;
+		final float len = (float) Math.sqrt(x * x + y * y + z * z);
+
+		if (len < 0.01f) {
+			return 127 << 8;
+		}
+
+		x /= len;
+		y /= len;
+		z /= len;
+
+		return (Math.round(x * 127) & 0xFF) | ((Math.round(y * 127) & 0xFF) << 8) | ((Math.round(z * 127) & 0xFF) << 16);
+	}
+}
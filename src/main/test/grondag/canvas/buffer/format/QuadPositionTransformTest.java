@@ -0,0 +1,101 @@
+package grondag.canvas.buffer.format;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the specialised identity and translate paths produce the same encoded
+ * terrain positions as a full affine transform, and reports relative timings.
+ */
+class QuadPositionTransformTest {
+	private static final int QUAD_COUNT = 1000000;
+
+	@Test
+	void test() {
+		final Random r = new Random();
+		r.setSeed(42);
+
+		final float[] source = new float[QUAD_COUNT * 12];
+
+		for (int i = 0; i < source.length; ++i) {
+			// model coordinates are usually multiples of 1/16 but not always
+			source[i] = r.nextBoolean() ? r.nextInt(17) / 16f : r.nextFloat() * 1.5f - 0.25f;
+		}
+
+		final QuadPositionTransform fast = new QuadPositionTransform();
+		final float[] a = new float[12];
+		final float[] b = new float[12];
+
+		for (int n = 0; n < QUAD_COUNT; ++n) {
+			// block position within region plus occasional random block offset
+			float tx = r.nextInt(16);
+			float ty = r.nextInt(16);
+			float tz = r.nextInt(16);
+
+			if (r.nextInt(4) == 0) {
+				tx += r.nextFloat() * 0.5f - 0.25f;
+				ty += r.nextFloat() * 0.2f - 0.2f;
+				tz += r.nextFloat() * 0.5f - 0.25f;
+			}
+
+			fast.set(1, 0, 0, 0, 1, 0, 0, 0, 1, tx, ty, tz);
+			assert fast.mode() == QuadPositionTransform.TRANSLATE || (tx == 0 && ty == 0 && tz == 0);
+
+			System.arraycopy(source, n * 12, a, 0, 12);
+			System.arraycopy(source, n * 12, b, 0, 12);
+			fast.transform(a);
+			transformGeneral(b, 1, 0, 0, 0, 1, 0, 0, 0, 1, tx, ty, tz);
+
+			for (int i = 0; i < 12; ++i) {
+				assert encode(a[i]) == encode(b[i]);
+			}
+		}
+
+		fast.set(1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0);
+		assert fast.mode() == QuadPositionTransform.IDENTITY;
+
+		fast.set(0, 0, 1, 0, 1, 0, -1, 0, 0, 0, 0, 0);
+		assert fast.mode() == QuadPositionTransform.GENERAL;
+
+		fast.set(1, 0, 0, 0, 1, 0, 0, 0, 1, 3, 4, 5);
+		long start = System.nanoTime();
+
+		for (int n = 0; n < QUAD_COUNT; ++n) {
+			System.arraycopy(source, n * 12, a, 0, 12);
+			fast.transform(a);
+		}
+
+		System.out.println("Translate duration:     " + (System.nanoTime() - start));
+
+		// rotation about y with a translate - not specialised
+		fast.set(0, 0, 1, 0, 1, 0, -1, 0, 0, 3, 4, 5);
+		start = System.nanoTime();
+
+		for (int n = 0; n < QUAD_COUNT; ++n) {
+			System.arraycopy(source, n * 12, b, 0, 12);
+			fast.transform(b);
+		}
+
+		System.out.println("General duration:       " + (System.nanoTime() - start));
+	}
+
+	/** Reference affine transform, same as the encoder used before specialisation. */
+	private static void transformGeneral(float[] xyz, float m00, float m01, float m02, float m10, float m11, float m12, float m20, float m21, float m22, float m30, float m31, float m32) {
+		for (int i = 0; i < 12; i += 3) {
+			final float x = xyz[i];
+			final float y = xyz[i + 1];
+			final float z = xyz[i + 2];
+			xyz[i] = m00 * x + m10 * y + m20 * z + m30;
+			xyz[i + 1] = m01 * x + m11 * y + m21 * z + m31;
+			xyz[i + 2] = m02 * x + m12 * y + m22 * z + m32;
+		}
+	}
+
+	/** Integer and fractional position components as written by the full terrain format. */
+	private static long encode(float pos) {
+		final int posInt = (int) Math.floor(pos);
+		final int posFract = Math.round((pos - posInt) * 0xFFFF);
+		return ((long) posInt << 32) | posFract;
+	}
+}
@@ -0,0 +1,67 @@
+package grondag.canvas.render.terrain.cluster;
+
+import org.junit.jupiter.api.Test;
+
+class SlabFreeListTest {
+	@Test
+	void test() {
+		final SlabFreeList list = new SlabFreeList(1024);
+
+		final int a = list.allocate(256);
+		final int b = list.allocate(256);
+		final int c = list.allocate(256);
+		assert a == 0 && b == 256 && c == 512;
+		assert list.usedVertexCount() == 768;
+		assert list.rangeCount() == 1;
+		assert list.strandedVertexCount() == 0;
+
+		// freeing the middle leaves a hole
+		list.free(b, 256);
+		assert list.rangeCount() == 2;
+		assert list.largestFreeVertexCount() == 256;
+		assert list.strandedVertexCount() == 256;
+
+		// too big for any single range even though enough is free
+		assert list.allocate(384) == -1;
+
+		list.free(c, 256);
+		assert list.rangeCount() == 1 : "hole should coalesce with tail";
+		assert list.largestFreeVertexCount() == 768;
+
+		final int d = list.allocate(128);
+		assert d == 256;
+		// best fit takes the exact-size hole rather than the larger tail
+		list.free(a, 256);
+		assert list.rangeCount() == 2;
+		assert list.allocate(256) == 0;
+
+		list.free(0, 256);
+		list.free(d, 128);
+		assert list.rangeCount() == 1;
+		assert list.freeVertexCount() == 1024;
+		assert list.strandedVertexCount() == 0;
+
+		// many small frees coalesce back to one range in any order
+		final int[] starts = new int[16];
+
+		for (int i = 0; i < 16; ++i) {
+			starts[i] = list.allocate(64);
+		}
+
+		assert list.allocate(4) == -1;
+
+		for (int i = 0; i < 16; i += 2) {
+			list.free(starts[i], 64);
+		}
+
+		assert list.rangeCount() == 8;
+		assert list.strandedVertexCount() == 7 * 64;
+
+		for (int i = 15; i > 0; i -= 2) {
+			list.free(starts[i], 64);
+		}
+
+		assert list.rangeCount() == 1;
+		assert list.freeVertexCount() == 1024;
+	}
+}
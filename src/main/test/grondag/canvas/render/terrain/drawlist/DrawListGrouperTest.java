@@ -0,0 +1,67 @@
+package grondag.canvas.render.terrain.drawlist;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+class DrawListGrouperTest {
+	@Test
+	void test() {
+		final DrawListGrouper<String> grouper = new DrawListGrouper<>();
+		grouper.add(7, "a");
+		grouper.add(3, "b");
+		grouper.add(7, "c");
+		assert grouper.groupCount() == 2;
+		assert grouper.key(0) == 7 && grouper.key(1) == 3 : "groups should be in first-seen order";
+		assert grouper.group(0).size() == 2 && grouper.group(0).get(1).equals("c");
+		assert grouper.group(1).size() == 1;
+
+		grouper.clear();
+		assert grouper.groupCount() == 0;
+		grouper.add(3, "d");
+		assert grouper.groupCount() == 1 && grouper.group(0).size() == 1 && grouper.group(0).get(0).equals("d");
+	}
+
+	@Test
+	void testSteadyStateAllocation() {
+		final var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		final DrawListGrouper<Integer> grouper = new DrawListGrouper<>();
+		final Integer[] values = new Integer[4096];
+
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = i;
+		}
+
+		// warm up so structures grow to fit and code is compiled
+		for (int pass = 0; pass < 200; ++pass) {
+			group(grouper, values);
+		}
+
+		final long threadId = Thread.currentThread().getId();
+		final long before = threadBean.getThreadAllocatedBytes(threadId);
+
+		for (int pass = 0; pass < 100; ++pass) {
+			group(grouper, values);
+		}
+
+		final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+		// allow for the bookkeeping of the measurement call itself
+		assert allocated < 1024 : "steady-state grouping allocated " + allocated + " bytes";
+	}
+
+	private static void group(DrawListGrouper<Integer> grouper, Integer[] values) {
+		for (int i = 0; i < values.length; ++i) {
+			grouper.add(i % 97, values[i]);
+		}
+
+		assert grouper.groupCount() == 97;
+		grouper.clear();
+	}
+}
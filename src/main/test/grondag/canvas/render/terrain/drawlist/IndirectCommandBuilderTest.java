@@ -0,0 +1,77 @@
+package grondag.canvas.render.terrain.drawlist;
+
+import static grondag.canvas.render.terrain.drawlist.IndirectCommandBuilder.COMMAND_INTS;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.buffer.input.FaceBucket;
+
+class IndirectCommandBuilderTest {
+	@Test
+	void test() {
+		final FaceBucket[] buckets = new FaceBucket[IndirectCommandBuilder.BUCKET_COUNT];
+
+		// 8 quads per face, shadow casting quads are the first 4
+		for (int i = 0; i < buckets.length; ++i) {
+			buckets[i] = new FaceBucket(i * 32, 32, i * 32, 16);
+		}
+
+		final IntArrayList records = new IntArrayList();
+		// slab 1 region first to check commands come out grouped by slab
+		int quads = IndirectCommandBuilder.appendRegion(records, 1, 1000, 224, 0b1000001, buckets, false);
+		assert quads == 16;
+		quads = IndirectCommandBuilder.appendRegion(records, 0, 0, 224, 0b1000011, buckets, false);
+		assert quads == 24;
+		quads = IndirectCommandBuilder.appendRegion(records, 1, 5000, 224, 0b1000000, buckets, true);
+		assert quads == 4;
+
+		final IndirectCommandBuilder builder = new IndirectCommandBuilder();
+		builder.build(records.elements(), 3, 2, true);
+		assert builder.commandCount() == 6;
+		assert builder.slabCommandStart(0) == 0 && builder.slabCommandCount(0) == 3;
+		assert builder.slabCommandStart(1) == 3 && builder.slabCommandCount(1) == 3;
+
+		final int[] c = builder.commands();
+		// slab 0: faces 0, 1 and unassigned
+		assertCommand(c, 0, 48, 0);
+		assertCommand(c, 1, 48, 32);
+		assertCommand(c, 2, 48, 192);
+		// slab 1: first region faces 0 and unassigned, then the shadow region
+		assertCommand(c, 3, 48, 1000);
+		assertCommand(c, 4, 48, 1192);
+		assertCommand(c, 5, 24, 5192);
+
+		// without culling each region is one draw
+		builder.build(records.elements(), 3, 2, false);
+		assert builder.commandCount() == 3;
+		assertCommand(builder.commands(), 0, 336, 0);
+		assertCommand(builder.commands(), 1, 336, 1000);
+		assertCommand(builder.commands(), 2, 336, 5000);
+	}
+
+	@Test
+	void testSplit() {
+		final IntArrayList records = new IntArrayList();
+		final int vertexCount = IndirectCommandBuilder.MAX_DRAW_VERTEX_COUNT * 2 + 400;
+		IndirectCommandBuilder.appendRegion(records, 0, 100, vertexCount, 0, null, false);
+
+		final IndirectCommandBuilder builder = new IndirectCommandBuilder();
+		builder.build(records.elements(), 1, 1, false);
+		assert builder.commandCount() == 3;
+
+		final int maxTris = IndirectCommandBuilder.MAX_DRAW_VERTEX_COUNT / 4 * 6;
+		assertCommand(builder.commands(), 0, maxTris, 100);
+		assertCommand(builder.commands(), 1, maxTris, 100 + IndirectCommandBuilder.MAX_DRAW_VERTEX_COUNT);
+		assertCommand(builder.commands(), 2, 600, 100 + IndirectCommandBuilder.MAX_DRAW_VERTEX_COUNT * 2);
+	}
+
+	private static void assertCommand(int[] commands, int index, int count, int baseVertex) {
+		final int i = index * COMMAND_INTS;
+		assert commands[i] == count : "count " + commands[i] + " at " + index;
+		assert commands[i + 1] == 1;
+		assert commands[i + 2] == 0;
+		assert commands[i + 3] == baseVertex : "base vertex " + commands[i + 3] + " at " + index;
+		assert commands[i + 4] == 0;
+	}
+}
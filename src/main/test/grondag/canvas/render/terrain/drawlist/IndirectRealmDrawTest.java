@@ -0,0 +1,190 @@
+package grondag.canvas.render.terrain.drawlist;
+
+import static grondag.canvas.render.terrain.drawlist.IndirectCommandBuilder.COMMAND_BYTES;
+import static grondag.canvas.render.terrain.drawlist.IndirectCommandBuilder.COMMAND_INTS;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.buffer.input.FaceBucket;
+import grondag.canvas.render.terrain.drawlist.IndirectRealmDraw.ClusterRecords;
+
+class IndirectRealmDrawTest {
+	@Test
+	void test() {
+		final RecordingTarget target = new RecordingTarget();
+		final IndirectRealmDraw<String> draw = new IndirectRealmDraw<>(target);
+
+		// both clusters use slab b, so its regions must end up in one draw
+		final ClusterRecords<String> near = new ClusterRecords<>();
+		assert near.add("b", 0, 400, 0, null, false, false) == 100;
+		assert near.add("a", 0, 800, 0, null, false, false) == 200;
+		final ClusterRecords<String> far = new ClusterRecords<>();
+		far.add("b", 4000, 400, 0, null, false, false);
+
+		draw.begin(false);
+		draw.add(near);
+		draw.add(far);
+		draw.end();
+		// stands in for the worker
+		draw.run(null);
+		draw.draw();
+
+		assert target.calls.equals(List.of("upload 3", "bind", "draw b 0 2", "draw a " + COMMAND_BYTES * 2 + " 1", "unbind")) : target.calls;
+		assert target.commands[3] == 0 && target.commands[COMMAND_INTS + 3] == 4000 : "slab b commands should hold both clusters";
+		assert target.commands[COMMAND_INTS * 2 + 3] == 0;
+
+		// commands are uploaded once per build, not once per frame
+		target.calls.clear();
+		draw.draw();
+		assert target.calls.equals(List.of("bind", "draw b 0 2", "draw a " + COMMAND_BYTES * 2 + " 1", "unbind")) : target.calls;
+
+		// builds on the render thread when no worker got to it
+		target.calls.clear();
+		near.clear();
+		near.add("a", 800, 400, 0, null, false, false);
+		draw.begin(false);
+		draw.add(near);
+		draw.end();
+		draw.draw();
+		assert target.calls.equals(List.of("upload 1", "bind", "draw a 0 1", "unbind")) : target.calls;
+
+		target.calls.clear();
+		draw.release();
+		assert target.calls.equals(List.of("release")) : target.calls;
+	}
+
+	@Test
+	void testSteadyStateAllocation() {
+		final var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		if (!threadBean.isThreadAllocatedMemorySupported()) {
+			return;
+		}
+
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		final CountingTarget target = new CountingTarget();
+		final IndirectRealmDraw<String> draw = new IndirectRealmDraw<>(target);
+		final String[] slabs = {"a", "b", "c", "d", "e", "f"};
+		final FaceBucket[] buckets = new FaceBucket[IndirectCommandBuilder.BUCKET_COUNT];
+
+		for (int i = 0; i < buckets.length; ++i) {
+			buckets[i] = new FaceBucket(i * 64, 64, i * 64, 32);
+		}
+
+		final ClusterRecords<String>[] clusters = newClusters(64);
+
+		// warm up so storage grows to fit and code is compiled
+		for (int pass = 0; pass < 200; ++pass) {
+			rebuild(draw, clusters, slabs, buckets, pass);
+		}
+
+		final long threadId = Thread.currentThread().getId();
+		final long before = threadBean.getThreadAllocatedBytes(threadId);
+
+		for (int pass = 0; pass < 100; ++pass) {
+			rebuild(draw, clusters, slabs, buckets, pass);
+		}
+
+		final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+		// allow for the bookkeeping of the measurement call itself
+		assert allocated < 1024 : "steady-state list rebuild allocated " + allocated + " bytes";
+		assert target.drawCount == 300 * slabs.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ClusterRecords<String>[] newClusters(int count) {
+		final ClusterRecords<String>[] result = new ClusterRecords[count];
+
+		for (int i = 0; i < count; ++i) {
+			result[i] = new ClusterRecords<>();
+		}
+
+		return result;
+	}
+
+	/** Refills every cluster, as cluster lists do when their regions change, then builds and draws the realm list. */
+	private static void rebuild(IndirectRealmDraw<String> draw, ClusterRecords<String>[] clusters, String[] slabs, FaceBucket[] buckets, int pass) {
+		draw.begin(true);
+
+		for (int c = 0; c < clusters.length; ++c) {
+			final ClusterRecords<String> cluster = clusters[c];
+			cluster.clear();
+
+			// vary face flags so commands change from pass to pass
+			for (int r = 0; r < 32; ++r) {
+				cluster.add(slabs[(c + r) % slabs.length], r * 448, 448, 0b1000000 | ((pass + r) & 0b111111), buckets, false, true);
+			}
+
+			draw.add(cluster);
+		}
+
+		draw.end();
+		draw.run(null);
+		draw.draw();
+	}
+
+	private static class CountingTarget implements IndirectDrawTarget<String> {
+		int drawCount;
+
+		@Override
+		public void upload(int[] commands, int byteCount) {
+			assert byteCount > 0;
+		}
+
+		@Override
+		public void bindCommands() {
+			// NOOP
+		}
+
+		@Override
+		public void drawSlab(String slab, long commandOffsetBytes, int commandCount) {
+			++drawCount;
+		}
+
+		@Override
+		public void unbindCommands() {
+			// NOOP
+		}
+
+		@Override
+		public void release() {
+			// NOOP
+		}
+	}
+
+	private static class RecordingTarget implements IndirectDrawTarget<String> {
+		final List<String> calls = new ArrayList<>();
+		int[] commands;
+
+		@Override
+		public void upload(int[] commands, int byteCount) {
+			this.commands = commands.clone();
+			calls.add("upload " + byteCount / COMMAND_BYTES);
+		}
+
+		@Override
+		public void bindCommands() {
+			calls.add("bind");
+		}
+
+		@Override
+		public void drawSlab(String slab, long commandOffsetBytes, int commandCount) {
+			calls.add("draw " + slab + " " + commandOffsetBytes + " " + commandCount);
+		}
+
+		@Override
+		public void unbindCommands() {
+			calls.add("unbind");
+		}
+
+		@Override
+		public void release() {
+			calls.add("release");
+		}
+	}
+}
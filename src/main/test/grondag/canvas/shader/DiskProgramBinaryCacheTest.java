@@ -0,0 +1,89 @@
+package grondag.canvas.shader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class DiskProgramBinaryCacheTest {
+	private static final String DRIVER = "vendor\nrenderer\n4.6\n1 ";
+
+	@Test
+	void testKey() {
+		final String key = ProgramBinaryCache.key(DRIVER, "vertex", "fragment");
+		assert key.equals(ProgramBinaryCache.key(DRIVER, "vertex", "fragment"));
+		assert key.length() == 64;
+		assert !key.equals(ProgramBinaryCache.key("other driver", "vertex", "fragment"));
+		assert !key.equals(ProgramBinaryCache.key(DRIVER, "vertex", "fragment2"));
+		assert !key.equals(ProgramBinaryCache.key(DRIVER, "vertexf", "ragment")) : "inputs must not be ambiguous";
+	}
+
+	@Test
+	void testRoundTrip() throws IOException {
+		final Path root = Files.createTempDirectory("canvas_program_cache");
+		final String key = ProgramBinaryCache.key(DRIVER, "a", "b");
+		final byte[] data = {1, 2, 3, 4, 5};
+
+		final DiskProgramBinaryCache cache = new DiskProgramBinaryCache(root, DRIVER, 1 << 20);
+		assert cache.load(key) == null;
+		assert cache.store(key, new ProgramBinaryCache.Binary(0x1234, data));
+
+		// entries persist across sessions
+		final DiskProgramBinaryCache reopened = new DiskProgramBinaryCache(root, DRIVER, 1 << 20);
+		final ProgramBinaryCache.Binary binary = reopened.load(key);
+		assert binary != null && binary.format() == 0x1234 && Arrays.equals(binary.data(), data);
+
+		reopened.invalidate(key);
+		assert reopened.load(key) == null;
+		assert reopened.entryCount() == 0 && reopened.totalBytes() == 0;
+	}
+
+	@Test
+	void testDriverChangeClears() throws IOException {
+		final Path root = Files.createTempDirectory("canvas_program_cache");
+		final String key = ProgramBinaryCache.key(DRIVER, "a", "b");
+		new DiskProgramBinaryCache(root, DRIVER, 1 << 20).store(key, new ProgramBinaryCache.Binary(1, new byte[] {1}));
+
+		final DiskProgramBinaryCache cache = new DiskProgramBinaryCache(root, "new driver", 1 << 20);
+		assert cache.entryCount() == 0;
+		assert cache.load(key) == null;
+	}
+
+	@Test
+	void testCorruptEntryIsDropped() throws IOException {
+		final Path root = Files.createTempDirectory("canvas_program_cache");
+		final String key = ProgramBinaryCache.key(DRIVER, "a", "b");
+		final DiskProgramBinaryCache cache = new DiskProgramBinaryCache(root, DRIVER, 1 << 20);
+		cache.store(key, new ProgramBinaryCache.Binary(1, new byte[100]));
+
+		final Path file = root.resolve(key + ".bin");
+		Files.write(file, Arrays.copyOf(Files.readAllBytes(file), 50));
+
+		final DiskProgramBinaryCache reopened = new DiskProgramBinaryCache(root, DRIVER, 1 << 20);
+		assert reopened.load(key) == null;
+		assert !Files.exists(file);
+	}
+
+	@Test
+	void testEvictsLeastRecentlyUsed() throws IOException {
+		final Path root = Files.createTempDirectory("canvas_program_cache");
+		// room for two entries of 100 bytes plus header
+		final DiskProgramBinaryCache cache = new DiskProgramBinaryCache(root, DRIVER, 250);
+		final String first = ProgramBinaryCache.key(DRIVER, "1");
+		final String second = ProgramBinaryCache.key(DRIVER, "2");
+		final String third = ProgramBinaryCache.key(DRIVER, "3");
+
+		cache.store(first, new ProgramBinaryCache.Binary(1, new byte[100]));
+		cache.store(second, new ProgramBinaryCache.Binary(1, new byte[100]));
+		Files.setLastModifiedTime(root.resolve(first + ".bin"), FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(root.resolve(second + ".bin"), FileTime.fromMillis(2000));
+		cache.store(third, new ProgramBinaryCache.Binary(1, new byte[100]));
+
+		assert cache.entryCount() == 2;
+		assert cache.load(first) == null;
+		assert cache.load(second) != null && cache.load(third) != null;
+	}
+}
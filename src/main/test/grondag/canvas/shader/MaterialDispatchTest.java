@@ -0,0 +1,56 @@
+package grondag.canvas.shader;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.shader.MaterialDispatch.Form;
+
+class MaterialDispatchTest {
+	private static final String SWITCH_GOLDEN = """
+				switch (cv_programId) {
+				case 7: frx_materialVertex7(); break;
+				case 2: break;
+				case 5: frx_materialVertex5(); break;
+				default: break;
+				}
+			""";
+
+	private static final String BRANCH_TREE_GOLDEN = """
+				if (cv_programId < 6) {
+					if (cv_programId < 3) {
+						if (cv_programId == 1) frx_materialFragment1();
+					} else {
+						if (cv_programId == 3) frx_startFragment3(compatData);
+					}
+				} else {
+					if (cv_programId < 9) {
+						if (cv_programId == 6) frx_materialFragment6();
+					} else {
+						if (cv_programId < 12) {
+							if (cv_programId == 9) frx_materialFragment9();
+						} else {
+							if (cv_programId == 12) frx_materialFragment12();
+						}
+					}
+				}
+			""";
+
+	@Test
+	void testSwitch() {
+		final int[] ids = {7, 2, 5};
+		final String[] calls = {"frx_materialVertex7();", null, "frx_materialVertex5();"};
+		assert MaterialDispatch.generate(Form.SWITCH, ids, calls).equals(SWITCH_GOLDEN);
+	}
+
+	@Test
+	void testBranchTree() {
+		final int[] ids = {9, 3, 12, 4, 1, 6};
+		final String[] calls = {"frx_materialFragment9();", "frx_startFragment3(compatData);", "frx_materialFragment12();", null, "frx_materialFragment1();", "frx_materialFragment6();"};
+		assert MaterialDispatch.generate(Form.BRANCH_TREE, ids, calls).equals(BRANCH_TREE_GOLDEN);
+	}
+
+	@Test
+	void testBranchTreeWithoutEntryPoints() {
+		assert MaterialDispatch.generate(Form.BRANCH_TREE, new int[] {1, 2}, new String[] {null, null}).equals("\t// NOOP\n");
+		assert MaterialDispatch.generate(Form.BRANCH_TREE, new int[] {1, 2}, new String[] {null, "frx_materialVertex2();"}).equals("\tif (cv_programId == 2) frx_materialVertex2();\n");
+	}
+}
@@ -0,0 +1,37 @@
+package grondag.canvas.shader;
+
+import org.junit.jupiter.api.Test;
+
+class UniformDeclarationsTest {
+	private static final String SOURCE = """
+			#version 330
+			uniform sampler2D frxs_baseColor;
+			  uniform vec4[32] _cvu_world;
+			uniform mat4 [25]  _cvu_matrix ;
+			// uniform float commented;
+			layout(std140) uniform _cvu_frame {
+				vec4 blockMember;
+			};
+			#ifdef SHADOW
+			uniform sampler2DArrayShadow frxs_shadow;
+			#else
+			uniform sampler2DArray frxs_shadow;
+			#endif
+			""";
+
+	@Test
+	void testContains() {
+		final UniformDeclarations declarations = UniformDeclarations.parse(SOURCE);
+		assert declarations.contains("sampler2D", "frxs_baseColor");
+		assert !declarations.contains("sampler2DArray", "frxs_baseColor");
+		assert declarations.contains("vec4\\s*\\[\\s*[0-9]+\\s*]", "_cvu_world");
+		assert !declarations.contains("vec4", "_cvu_world");
+		assert declarations.contains("mat4\\s*\\[\\s*[0-9]+\\s*]", "_cvu_matrix");
+		assert !declarations.contains("float", "commented");
+		assert !declarations.contains("vec4", "blockMember");
+		assert !declarations.contains("vec4", "_cvu_frame");
+		assert declarations.contains("sampler2DArrayShadow", "frxs_shadow");
+		assert declarations.contains("sampler2DArray", "frxs_shadow");
+		assert !declarations.contains("sampler2D", "missing");
+	}
+}
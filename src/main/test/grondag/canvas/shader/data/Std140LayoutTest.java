@@ -0,0 +1,49 @@
+package grondag.canvas.shader.data;
+
+import org.junit.jupiter.api.Test;
+
+class Std140LayoutTest {
+	@Test
+	void testScalarsAndVectors() {
+		final Std140Layout layout = new Std140Layout();
+		assert layout.scalar() == 0;
+		// vec2 aligns to 8
+		assert layout.vec2() == 8;
+		// vec3 aligns to 16 but is only 12 bytes
+		assert layout.vec3() == 16;
+		// so a scalar can fill the remaining slot
+		assert layout.scalar() == 28;
+		assert layout.scalar() == 32;
+		assert layout.vec4() == 48;
+		assert layout.sizeBytes() == 64;
+	}
+
+	@Test
+	void testArraysAndMatrices() {
+		final Std140Layout layout = new Std140Layout();
+		assert layout.scalar() == 0;
+		// arrays align to 16 and every element takes a full slot
+		assert layout.scalarArray(3) == 16;
+		// the member after an array starts on a new slot
+		assert layout.scalar() == 64;
+		// mat3 is three vec4 columns
+		assert layout.mat3() == 80;
+		assert layout.vec2() == 128;
+		assert layout.mat4Array(2) == 144;
+		assert layout.vec4Array(2) == 272;
+		assert layout.scalar() == 304;
+		assert layout.sizeBytes() == 320;
+	}
+
+	@Test
+	void testFrameBlock() {
+		// matches the _cvu_frame block in world.glsl
+		final Std140Layout layout = new Std140Layout();
+		assert layout.mat4Array(25) == 0;
+		assert layout.vec4Array(32) == 1600;
+		assert layout.mat3() == 2112;
+		assert layout.scalarArray(1) == 2160;
+		assert layout.scalarArray(4) == 2176;
+		assert layout.sizeBytes() == 2240;
+	}
+}
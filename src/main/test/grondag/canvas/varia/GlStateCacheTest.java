@@ -0,0 +1,280 @@
+package grondag.canvas.varia;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.varia.GlStateCache.Category;
+
+class GlStateCacheTest {
+	private enum Op {
+		ENABLE, DISABLE, DEPTH_FUNC, DEPTH_MASK, BLEND_FUNC, BLEND_FUNC_SEPARATE, BLEND_EQUATION, CULL_FACE, LOGIC_OP,
+		USE_PROGRAM, DELETE_PROGRAM, BIND_VERTEX_ARRAY, DELETE_VERTEX_ARRAY, BIND_BUFFER, BIND_BUFFER_BASE, DELETE_BUFFER,
+		BIND_FRAMEBUFFER, DELETE_FRAMEBUFFER, ACTIVE_TEXTURE, BIND_TEXTURE, DELETE_TEXTURE
+	}
+
+	private record Call(Op op, int a, int b, int c, int d) {
+		Call(Op op, int a) {
+			this(op, a, 0, 0, 0);
+		}
+
+		Call(Op op, int a, int b) {
+			this(op, a, b, 0, 0);
+		}
+	}
+
+	/** Effective GL state after a sequence of calls, following the same binding rules as the driver. */
+	private static class GlModel {
+		private final Map<String, Integer> state = new HashMap<>();
+
+		private void set(String key, int value) {
+			state.put(key, value);
+		}
+
+		private int get(String key) {
+			return state.getOrDefault(key, 0);
+		}
+
+		private void revert(String prefix, int object) {
+			state.replaceAll((k, v) -> k.startsWith(prefix) && v == object ? 0 : v);
+		}
+
+		void apply(Call c) {
+			switch (c.op) {
+				case ENABLE -> set("cap" + c.a, 1);
+				case DISABLE -> set("cap" + c.a, 0);
+				case DEPTH_FUNC -> set("depthFunc", c.a);
+				case DEPTH_MASK -> set("depthMask", c.a);
+				case BLEND_FUNC -> apply(new Call(Op.BLEND_FUNC_SEPARATE, c.a, c.b, c.a, c.b));
+				case BLEND_FUNC_SEPARATE -> {
+					set("blendSrcRgb", c.a);
+					set("blendDstRgb", c.b);
+					set("blendSrcAlpha", c.c);
+					set("blendDstAlpha", c.d);
+				}
+				case BLEND_EQUATION -> set("blendEquation", c.a);
+				case CULL_FACE -> set("cullFace", c.a);
+				case LOGIC_OP -> set("logicOp", c.a);
+				case USE_PROGRAM -> set("program", c.a);
+				// a deleted program stays current
+				case DELETE_PROGRAM -> { }
+				case BIND_VERTEX_ARRAY -> set("vao", c.a);
+				case DELETE_VERTEX_ARRAY -> {
+					if (get("vao") == c.a) {
+						set("vao", 0);
+					}
+				}
+				case BIND_BUFFER, BIND_BUFFER_BASE -> set(bufferKey(c.a), c.b);
+				case DELETE_BUFFER -> {
+					revert("buffer", c.a);
+
+					if (get(bufferKey(GFX.GL_ELEMENT_ARRAY_BUFFER)) == c.a) {
+						set(bufferKey(GFX.GL_ELEMENT_ARRAY_BUFFER), 0);
+					}
+				}
+				case BIND_FRAMEBUFFER -> {
+					if (c.a != GFX.GL_READ_FRAMEBUFFER) {
+						set("fboDraw", c.b);
+					}
+
+					if (c.a != GFX.GL_DRAW_FRAMEBUFFER) {
+						set("fboRead", c.b);
+					}
+				}
+				case DELETE_FRAMEBUFFER -> revert("fbo", c.a);
+				case ACTIVE_TEXTURE -> set("activeTexture", c.a - GFX.GL_TEXTURE0);
+				case BIND_TEXTURE -> set("texture" + get("activeTexture") + ":" + c.a, c.b);
+				case DELETE_TEXTURE -> revert("texture", c.a);
+			}
+		}
+
+		/** Element array binding belongs to the bound vertex array. */
+		private String bufferKey(int target) {
+			return target == GFX.GL_ELEMENT_ARRAY_BUFFER ? "vaoElement" + get("vao") : "buffer" + target;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof GlModel model && normalized().equals(model.normalized());
+		}
+
+		@Override
+		public int hashCode() {
+			return normalized().hashCode();
+		}
+
+		/** Unset and zero are the same thing. */
+		private Map<String, Integer> normalized() {
+			final Map<String, Integer> result = new HashMap<>(state);
+			result.values().removeIf(v -> v == 0);
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return normalized().toString();
+		}
+	}
+
+	/** Stand-in for {@link GFX}: asks the cache, and records only the calls that would reach the driver. */
+	private static class RecordingGfx {
+		final GlStateCache cache = new GlStateCache();
+		final GlModel issued = new GlModel();
+		final List<Call> issuedCalls = new ArrayList<>();
+
+		void call(Call c) {
+			final boolean issue = switch (c.op) {
+				case ENABLE -> cache.enable(c.a);
+				case DISABLE -> cache.disable(c.a);
+				case DEPTH_FUNC -> cache.depthFunc(c.a);
+				case DEPTH_MASK -> cache.depthMask(c.a != 0);
+				case BLEND_FUNC -> cache.blendFunc(c.a, c.b);
+				case BLEND_FUNC_SEPARATE -> cache.blendFuncSeparate(c.a, c.b, c.c, c.d);
+				case BLEND_EQUATION -> cache.blendEquation(c.a);
+				case CULL_FACE -> cache.cullFace(c.a);
+				case LOGIC_OP -> cache.logicOp(c.a);
+				case USE_PROGRAM -> cache.useProgram(c.a);
+				case DELETE_PROGRAM -> {
+					cache.onDeleteProgram(c.a);
+					yield true;
+				}
+				case BIND_VERTEX_ARRAY -> cache.bindVertexArray(c.a);
+				case DELETE_VERTEX_ARRAY -> {
+					cache.onDeleteVertexArray(c.a);
+					yield true;
+				}
+				case BIND_BUFFER -> cache.bindBuffer(c.a, c.b);
+				case BIND_BUFFER_BASE -> {
+					cache.onBindBufferBase(c.a, c.b);
+					yield true;
+				}
+				case DELETE_BUFFER -> {
+					cache.onDeleteBuffer(c.a);
+					yield true;
+				}
+				case BIND_FRAMEBUFFER -> cache.bindFramebuffer(c.a, c.b);
+				case DELETE_FRAMEBUFFER -> {
+					cache.onDeleteFramebuffer(c.a);
+					yield true;
+				}
+				case ACTIVE_TEXTURE -> cache.activeTexture(c.a);
+				case BIND_TEXTURE -> cache.bindTexture(c.a, c.b);
+				case DELETE_TEXTURE -> {
+					cache.onDeleteTexture(c.a);
+					yield true;
+				}
+			};
+
+			if (issue) {
+				issued.apply(c);
+				issuedCalls.add(c);
+			}
+		}
+	}
+
+	private static final int[] CAPS = {GFX.GL_BLEND, GFX.GL_DEPTH_TEST, GFX.GL_CULL_FACE, GFX.GL_SCISSOR_TEST, GFX.GL_STENCIL_TEST};
+	private static final int[] FACTORS = {GFX.GL_ONE, GFX.GL_ZERO, GFX.GL_SRC_ALPHA, GFX.GL_ONE_MINUS_SRC_ALPHA};
+	private static final int[] BUFFER_TARGETS = {GFX.GL_ARRAY_BUFFER, GFX.GL_ELEMENT_ARRAY_BUFFER, GFX.GL_COPY_READ_BUFFER, GFX.GL_UNIFORM_BUFFER};
+	private static final int[] FRAMEBUFFER_TARGETS = {GFX.GL_FRAMEBUFFER, GFX.GL_DRAW_FRAMEBUFFER, GFX.GL_READ_FRAMEBUFFER};
+	private static final int[] TEXTURE_TARGETS = {GFX.GL_TEXTURE_2D, GFX.GL_TEXTURE_2D_ARRAY};
+
+	private static Call randomCall(Random r) {
+		final Op op = Op.values()[r.nextInt(Op.values().length)];
+
+		return switch (op) {
+			case ENABLE, DISABLE -> new Call(op, CAPS[r.nextInt(CAPS.length)]);
+			case DEPTH_FUNC -> new Call(op, r.nextBoolean() ? GFX.GL_LESS : GFX.GL_LEQUAL);
+			case DEPTH_MASK -> new Call(op, r.nextInt(2));
+			case BLEND_FUNC -> new Call(op, FACTORS[r.nextInt(4)], FACTORS[r.nextInt(4)]);
+			case BLEND_FUNC_SEPARATE -> new Call(op, FACTORS[r.nextInt(4)], FACTORS[r.nextInt(4)], FACTORS[r.nextInt(4)], FACTORS[r.nextInt(4)]);
+			case BLEND_EQUATION -> new Call(op, r.nextBoolean() ? GFX.GL_FUNC_ADD : GFX.GL_MAX);
+			case CULL_FACE -> new Call(op, r.nextBoolean() ? GFX.GL_BACK : GFX.GL_FRONT);
+			case LOGIC_OP -> new Call(op, r.nextBoolean() ? GFX.GL_COPY : GFX.GL_OR_REVERSE);
+			case BIND_BUFFER, BIND_BUFFER_BASE -> new Call(op, BUFFER_TARGETS[r.nextInt(BUFFER_TARGETS.length)], r.nextInt(4));
+			case BIND_FRAMEBUFFER -> new Call(op, FRAMEBUFFER_TARGETS[r.nextInt(3)], r.nextInt(3));
+			case ACTIVE_TEXTURE -> new Call(op, GFX.GL_TEXTURE0 + r.nextInt(3));
+			case BIND_TEXTURE -> new Call(op, TEXTURE_TARGETS[r.nextInt(2)], r.nextInt(4));
+			case DELETE_PROGRAM, DELETE_VERTEX_ARRAY, DELETE_BUFFER, DELETE_FRAMEBUFFER, DELETE_TEXTURE -> new Call(op, 1 + r.nextInt(3));
+			default -> new Call(op, r.nextInt(4));
+		};
+	}
+
+	@Test
+	void testElisionPreservesState() {
+		final Random r = new Random(42);
+
+		for (int run = 0; run < 200; ++run) {
+			final RecordingGfx gfx = new RecordingGfx();
+			final GlModel expected = new GlModel();
+
+			for (int i = 0; i < 500; ++i) {
+				if (r.nextInt(100) == 0) {
+					gfx.cache.nextFrame();
+				}
+
+				if (r.nextInt(100) == 0) {
+					gfx.cache.setElisionEnabled(r.nextBoolean());
+				}
+
+				final Call c = randomCall(r);
+				expected.apply(c);
+				gfx.call(c);
+				assert expected.equals(gfx.issued) : "After " + c + " expected " + expected + " but driver has " + gfx.issued;
+			}
+		}
+	}
+
+	@Test
+	void testBlendFuncAfterSeparate() {
+		final RecordingGfx gfx = new RecordingGfx();
+		gfx.call(new Call(Op.BLEND_FUNC_SEPARATE, GFX.GL_SRC_ALPHA, GFX.GL_ONE_MINUS_SRC_ALPHA, GFX.GL_ONE, GFX.GL_ZERO));
+		gfx.call(new Call(Op.BLEND_FUNC, GFX.GL_SRC_ALPHA, GFX.GL_ONE_MINUS_SRC_ALPHA));
+		// color factors match, but alpha factors change
+		assert gfx.issuedCalls.size() == 2;
+		gfx.call(new Call(Op.BLEND_FUNC_SEPARATE, GFX.GL_SRC_ALPHA, GFX.GL_ONE_MINUS_SRC_ALPHA, GFX.GL_SRC_ALPHA, GFX.GL_ONE_MINUS_SRC_ALPHA));
+		assert gfx.issuedCalls.size() == 2;
+	}
+
+	@Test
+	void testElementBufferFollowsVertexArray() {
+		final RecordingGfx gfx = new RecordingGfx();
+		gfx.call(new Call(Op.BIND_VERTEX_ARRAY, 1));
+		gfx.call(new Call(Op.BIND_BUFFER, GFX.GL_ELEMENT_ARRAY_BUFFER, 5));
+		gfx.call(new Call(Op.BIND_VERTEX_ARRAY, 2));
+		gfx.call(new Call(Op.BIND_BUFFER, GFX.GL_ELEMENT_ARRAY_BUFFER, 5));
+		assert gfx.issuedCalls.size() == 4;
+		gfx.call(new Call(Op.BIND_BUFFER, GFX.GL_ELEMENT_ARRAY_BUFFER, 5));
+		assert gfx.issuedCalls.size() == 4;
+	}
+
+	@Test
+	void testCounts() {
+		final GlStateCache cache = new GlStateCache();
+		cache.enable(GFX.GL_BLEND);
+		cache.enable(GFX.GL_BLEND);
+		cache.blendFunc(GFX.GL_ONE, GFX.GL_ZERO);
+		cache.useProgram(3);
+		cache.useProgram(3);
+		cache.useProgram(3);
+		cache.nextFrame();
+
+		assert cache.issuedLastFrame(Category.BLEND) == 2;
+		assert cache.elidedLastFrame(Category.BLEND) == 1;
+		assert cache.issuedLastFrame(Category.PROGRAM) == 1;
+		assert cache.elidedLastFrame(Category.PROGRAM) == 2;
+		assert cache.issuedLastFrame(Category.DEPTH) == 0;
+
+		// state is unknown after a new frame starts
+		assert cache.useProgram(3);
+
+		cache.setElisionEnabled(false);
+		assert cache.useProgram(3);
+		cache.nextFrame();
+		assert cache.issuedLastFrame(Category.PROGRAM) == 2;
+		assert cache.elidedLastFrame(Category.PROGRAM) == 0;
+	}
+}